@@ -0,0 +1,123 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.ResponseBuilder;
+import jakarta.ws.rs.core.Variant;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of ExampleResource outside of any container: building the page its
+ * holder loads once (compiling the template, filling the slots and
+ * precompressing), filling the slots alone, the example() method for each
+ * Accept-Encoding, and the helpers that locate and read the page from the
+ * classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExampleResourceBenchmark {
+
+    @Param({"", "gzip, deflate, br"})
+    public String acceptEncoding;
+
+    private ExampleResource resource;
+    private String file;
+    private String html;
+    private PageTemplate template;
+    private Map<String, String> slots;
+    private final Request request = new UnconditionalRequest();
+
+    @Setup
+    public void setUp() {
+        resource = new ExampleResource();
+        file = resource.getPathHTML() + "example.html";
+        html = resource.getFile(file);
+        template = PageTemplate.compile(html);
+        // read once: the task ID may come from the ECS metadata endpoint
+        slots = Deployment.slots();
+    }
+
+    /**
+     * Paid once, at startup, when the static asset handler takes the page.
+     */
+    @Benchmark
+    public PrecompressedPage loadPage() {
+        return PrecompressedPage.of(PageTemplate.compile(html).render(slots));
+    }
+
+    @Benchmark
+    public byte[] render() {
+        return template.render(slots);
+    }
+
+    @Benchmark
+    public Response example() {
+        return resource.example(acceptEncoding, request);
+    }
+
+    @Benchmark
+    public String getPathHTML() {
+        return resource.getPathHTML();
+    }
+
+    @Benchmark
+    public String getFile() {
+        return resource.getFile(file);
+    }
+
+    /**
+     * Request without preconditions, as sent by a client with an empty cache.
+     */
+    private static final class UnconditionalRequest implements Request {
+
+        @Override
+        public String getMethod() {
+            return "GET";
+        }
+
+        @Override
+        public Variant selectVariant(List<Variant> variants) {
+            return variants.isEmpty() ? null : variants.get(0);
+        }
+
+        @Override
+        public ResponseBuilder evaluatePreconditions(EntityTag eTag) {
+            return null;
+        }
+
+        @Override
+        public ResponseBuilder evaluatePreconditions(Date lastModified) {
+            return null;
+        }
+
+        @Override
+        public ResponseBuilder evaluatePreconditions(Date lastModified, EntityTag eTag) {
+            return null;
+        }
+
+        @Override
+        public ResponseBuilder evaluatePreconditions() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time a request thread spends logging one access line, with four threads
+ * logging at once. println formats on the caller and writes under the lock
+ * of the stream, as System.out does. Log copies the event into its ring and
+ * leaves formatting and writing to its background thread, dropping events
+ * it cannot keep up with. Both write to a file under target so the console
+ * is not flooded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class LoggingBenchmark {
+
+    private PrintStream stream;
+    private Log log;
+
+    @Setup(Level.Trial)
+    public void open() throws FileNotFoundException {
+
+        new File("target").mkdirs();
+        stream = new PrintStream(new FileOutputStream("target/logging-benchmark-println.log"), true);
+        log = new Log(8192, new FileOutputStream("target/logging-benchmark-ring.log"), 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        stream.close();
+    }
+
+    @Benchmark
+    public void println() {
+        stream.println("{\"type\":\"access\",\"method\":\"GET\",\"path\":\"/\",\"status\":200,\"bytes\":1342,"
+                + "\"latency_ms\":" + (System.nanoTime() % 1000) / 1000.0 + "}");
+    }
+
+    @Benchmark
+    public void ring() {
+        log.record("GET", "/", 200, 1342, System.nanoTime() % 1000000);
+    }
+}
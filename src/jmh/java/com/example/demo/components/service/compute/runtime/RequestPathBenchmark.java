@@ -0,0 +1,91 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end requests against a server started in the benchmark JVM with
+ * Main.startServer(). The path parameter compares the Jersey resources with
+ * the StaticAssetHandler. Clients keep their connections alive, so the
+ * numbers reflect request handling rather than connection setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(4)
+@Fork(1)
+public class RequestPathBenchmark {
+
+    private static final String BASE_URI = "http://localhost:18090/";
+
+    @Param({"jersey", "handler"})
+    public String path;
+
+    @Param({"identity", "gzip"})
+    public String encoding;
+
+    private HttpServer server;
+    private URL page;
+    private URL asset;
+
+    @Setup(Level.Trial)
+    public void startServer() throws IOException {
+
+        server = new Main().startServer(URI.create(BASE_URI), "handler".equals(path));
+        page = new URL(BASE_URI);
+        asset = StaticAssets.names().isEmpty()
+                ? page
+                : new URL(BASE_URI + "assets/" + StaticAssets.names().iterator().next());
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() {
+        server.shutdownNow();
+    }
+
+    @Benchmark
+    public long page() throws IOException {
+        return get(page);
+    }
+
+    @Benchmark
+    public long asset() throws IOException {
+        return get(asset);
+    }
+
+    private long get(URL url) throws IOException {
+
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        if (!"identity".equals(encoding)) {
+            connection.setRequestProperty("Accept-Encoding", encoding);
+        }
+        long bytes = 0;
+        final byte[] buffer = new byte[16384];
+        try (InputStream in = connection.getInputStream()) {
+            for (int read; (read = in.read(buffer)) > 0; ) bytes += read;
+        }
+        return bytes;
+    }
+}
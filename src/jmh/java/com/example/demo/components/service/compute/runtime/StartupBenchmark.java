@@ -0,0 +1,88 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time from launching a new JVM running Main until /health/ready answers
+ * 200, the moment the load balancer can send traffic to a task. The
+ * resources parameter compares classpath scanning with explicit
+ * registration. The AppCDS archive needs the packaged jar and is measured
+ * with the Docker image instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StartupBenchmark {
+
+    private static final int PORT = 18095;
+
+    @Param({"scan", "explicit"})
+    public String resources;
+
+    private Process process;
+
+    @Benchmark
+    public long timeToReady() throws Exception {
+
+        final long start = System.nanoTime();
+        process = new ProcessBuilder(
+                        System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                        "-cp",
+                        System.getProperty("java.class.path"),
+                        "-Djersey.config.test.container.port=" + PORT,
+                        "-D" + Main.CLASSPATH_SCAN + "=" + "scan".equals(resources),
+                        "-D" + Main.WARMUP_REQUESTS + "=1",
+                        Main.class.getName())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+
+        final URL ready = new URL(
+                "http://" + InetAddress.getLocalHost().getHostName() + ":" + PORT + HealthHandler.READY);
+        while (!isReady(ready)) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Service exited with code " + process.exitValue());
+            }
+            Thread.sleep(5);
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    @TearDown(Level.Invocation)
+    public void stopService() throws InterruptedException {
+        process.destroyForcibly().waitFor();
+    }
+
+    private static boolean isReady(URL url) {
+
+        try {
+            final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(100);
+            connection.setReadTimeout(1000);
+            return connection.getResponseCode() == 200;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/* (C)2023 */
+package com.example.demo.components.service;
+
+import software.amazon.awscdk.services.ecr.assets.Platform;
+import software.amazon.awscdk.services.ecs.CpuArchitecture;
+
+/**
+ * CPU architecture the tasks of a stage run on. The task definitions, the
+ * CodeDeploy task definition template and the container images all follow
+ * it. Graviton (ARM64) tasks cost less per vCPU and GiB than x86_64 ones
+ * for the same work.
+ */
+public enum Architecture {
+    X86_64(CpuArchitecture.X86_64, Platform.LINUX_AMD64),
+    ARM64(CpuArchitecture.ARM64, Platform.LINUX_ARM64);
+
+    private final CpuArchitecture cpuArchitecture;
+    private final Platform platform;
+
+    Architecture(CpuArchitecture cpuArchitecture, Platform platform) {
+        this.cpuArchitecture = cpuArchitecture;
+        this.platform = platform;
+    }
+
+    /**
+     * @return the architecture of the ECS runtime platform
+     */
+    public CpuArchitecture getCpuArchitecture() {
+        return cpuArchitecture;
+    }
+
+    /**
+     * @return the platform the container images are built for
+     */
+    public Platform getPlatform() {
+        return platform;
+    }
+}
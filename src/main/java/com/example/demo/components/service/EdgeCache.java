@@ -0,0 +1,119 @@
+/* (C)2023 */
+package com.example.demo.components.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import software.amazon.awscdk.Duration;
+import software.amazon.awscdk.services.cloudfront.PriceClass;
+
+/**
+ * CloudFront distribution in front of the production listener of the
+ * {@link Service} stack. The edge caches what the runtime marks cacheable
+ * with Cache-Control, for as long as it says: content-hashed assets for a
+ * year, pages for a minute, health and async responses not at all. The
+ * cache key is the path and query string, plus the encoding the viewer
+ * accepts, so the edge compresses once per encoding.
+ *
+ * New asset versions get new paths, so they never collide with cached ones.
+ * Paths that keep their name, such as the pages, are invalidated by a
+ * CodeDeploy AfterAllowTraffic hook once production traffic reaches green.
+ * The test listener is never an origin, so green is always tested uncached.
+ *
+ * <pre>
+ * ServiceOptions.builder()
+ *         .edgeCache(EdgeCache.builder().invalidationPaths("/", "/index.html").build())
+ *         .build();
+ * </pre>
+ */
+public final class EdgeCache {
+
+    /**
+     * Longest time CloudFront keeps an object; Cache-Control of the origin
+     * can only shorten it.
+     */
+    static final Duration MAX_TTL = Duration.days(365);
+
+    private final PriceClass priceClass;
+    private final List<String> invalidationPaths;
+
+    private EdgeCache(Builder builder) {
+
+        this.priceClass = builder.priceClass;
+        this.invalidationPaths = new ArrayList<>(builder.invalidationPaths);
+        for (String path : invalidationPaths) {
+            if (!path.startsWith("/")) {
+                throw new IllegalArgumentException("invalidation paths must start with /, was " + path);
+            }
+        }
+    }
+
+    /**
+     * @return the cache used when a stage enables one without settings
+     */
+    public static EdgeCache defaults() {
+        return builder().build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return edge locations the distribution is served from
+     */
+    public PriceClass getPriceClass() {
+        return priceClass;
+    }
+
+    /**
+     * @return paths invalidated after each deployment; empty when the
+     * deployment does not invalidate
+     */
+    public List<String> getInvalidationPaths() {
+        return invalidationPaths;
+    }
+
+    /**
+     * @return configuration of the invalidation hook function, in the
+     * environment variables EdgeInvalidationHook reads
+     */
+    Map<String, String> toEnvironment(String distributionId) {
+
+        final Map<String, String> env = new HashMap<>();
+        env.put("DISTRIBUTION_ID", distributionId);
+        env.put("PATHS", String.join(",", invalidationPaths));
+        return env;
+    }
+
+    public static final class Builder {
+
+        private PriceClass priceClass = PriceClass.PRICE_CLASS_100;
+        private List<String> invalidationPaths = Arrays.asList("/*");
+
+        private Builder() {}
+
+        /**
+         * Defaults to PRICE_CLASS_100, North America and Europe.
+         */
+        public Builder priceClass(PriceClass priceClass) {
+            this.priceClass = priceClass;
+            return this;
+        }
+
+        /**
+         * Defaults to /*. No paths turns the invalidation off, for services
+         * whose cacheable responses all have versioned paths.
+         */
+        public Builder invalidationPaths(String... invalidationPaths) {
+            this.invalidationPaths = Arrays.asList(invalidationPaths);
+            return this;
+        }
+
+        public EdgeCache build() {
+            return new EdgeCache(this);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/* (C)2023 */
+package com.example.demo.components.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import software.amazon.awscdk.Duration;
+
+/**
+ * Blue/green latency comparison run as the CodeDeploy AfterAllowTestTraffic
+ * hook of a stage. The same load is sent to the production listener (blue)
+ * and the test listener (green), and the deployment stops before green gets
+ * production traffic if its latency, throughput or error rate is worse than
+ * the budgets allow. See toolchain.loadtest.LatencyComparator.
+ *
+ * <pre>
+ * ServiceOptions.builder()
+ *         .latencyCheck(LatencyCheck.builder().rate(100).maxP99Ratio(1.3).build())
+ *         .build();
+ * </pre>
+ */
+public final class LatencyCheck {
+
+    /**
+     * Longest run the hook Lambda function can complete, leaving time to
+     * report the result.
+     */
+    static final Duration MAX_RUN_TIME = Duration.minutes(13);
+
+    private final int rate;
+    private final Duration duration;
+    private final Duration warmup;
+    private final List<String> paths;
+    private final double maxP50Ratio;
+    private final double maxP99Ratio;
+    private final double maxThroughputDrop;
+    private final double maxErrorRate;
+    private final double minLatencyDeltaMillis;
+
+    private LatencyCheck(Builder builder) {
+
+        this.rate = builder.rate;
+        this.duration = builder.duration;
+        this.warmup = builder.warmup;
+        this.paths = builder.paths.isEmpty() ? Arrays.asList("/") : new ArrayList<>(builder.paths);
+        this.maxP50Ratio = builder.maxP50Ratio;
+        this.maxP99Ratio = builder.maxP99Ratio;
+        this.maxThroughputDrop = builder.maxThroughputDrop;
+        this.maxErrorRate = builder.maxErrorRate;
+        this.minLatencyDeltaMillis = builder.minLatencyDeltaMillis;
+        if (rate <= 0) {
+            throw new IllegalArgumentException("rate must be positive, was " + rate);
+        }
+        if (getRunTime().toSeconds().doubleValue() > MAX_RUN_TIME.toSeconds().doubleValue()) {
+            throw new IllegalArgumentException("duration and warmup must not exceed " + MAX_RUN_TIME.toMinutes()
+                    + " minutes, was " + getRunTime().toSeconds() + " seconds");
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return warm-up plus measured time of one comparison
+     */
+    public Duration getRunTime() {
+        return Duration.seconds(duration.toSeconds().doubleValue() + warmup.toSeconds().doubleValue());
+    }
+
+    /**
+     * @return configuration of the hook function, in the environment
+     * variables ComparatorHook reads
+     */
+    Map<String, String> toEnvironment(String baselineUrl, String candidateUrl) {
+
+        final Map<String, String> env = new HashMap<>();
+        env.put("BASELINE_URL", baselineUrl);
+        env.put("CANDIDATE_URL", candidateUrl);
+        env.put("RATE", String.valueOf(rate));
+        env.put("DURATION_SECONDS", String.valueOf(duration.toSeconds().intValue()));
+        env.put("WARMUP_SECONDS", String.valueOf(warmup.toSeconds().intValue()));
+        env.put("PATHS", String.join(",", paths));
+        env.put("MAX_P50_RATIO", String.valueOf(maxP50Ratio));
+        env.put("MAX_P99_RATIO", String.valueOf(maxP99Ratio));
+        env.put("MAX_THROUGHPUT_DROP", String.valueOf(maxThroughputDrop));
+        env.put("MAX_ERROR_RATE", String.valueOf(maxErrorRate));
+        env.put("MIN_LATENCY_DELTA_MILLIS", String.valueOf(minLatencyDeltaMillis));
+        return env;
+    }
+
+    public static final class Builder {
+
+        private int rate = 50;
+        private Duration duration = Duration.seconds(60);
+        private Duration warmup = Duration.seconds(10);
+        private final List<String> paths = new ArrayList<>();
+        private double maxP50Ratio = 1.2;
+        private double maxP99Ratio = 1.5;
+        private double maxThroughputDrop = 0.1;
+        private double maxErrorRate = 0.01;
+        private double minLatencyDeltaMillis = 5;
+
+        private Builder() {}
+
+        /**
+         * Requests per second sent to each listener, 50 by default.
+         */
+        public Builder rate(int rate) {
+            this.rate = rate;
+            return this;
+        }
+
+        /**
+         * Measured time, 60 seconds by default.
+         */
+        public Builder duration(Duration duration) {
+            this.duration = duration;
+            return this;
+        }
+
+        /**
+         * Load applied before measuring, 10 seconds by default.
+         */
+        public Builder warmup(Duration warmup) {
+            this.warmup = warmup;
+            return this;
+        }
+
+        /**
+         * Adds a path to the request mix; / when none is added.
+         */
+        public Builder path(String path) {
+            this.paths.add(path);
+            return this;
+        }
+
+        /**
+         * Green p50 may be at most this many times the blue p50, 1.2 by
+         * default.
+         */
+        public Builder maxP50Ratio(double ratio) {
+            this.maxP50Ratio = ratio;
+            return this;
+        }
+
+        /**
+         * Green p99 may be at most this many times the blue p99, 1.5 by
+         * default.
+         */
+        public Builder maxP99Ratio(double ratio) {
+            this.maxP99Ratio = ratio;
+            return this;
+        }
+
+        /**
+         * Share of the blue throughput green may lose, 0.1 by default.
+         */
+        public Builder maxThroughputDrop(double drop) {
+            this.maxThroughputDrop = drop;
+            return this;
+        }
+
+        /**
+         * Share of green requests that may fail, 0.01 by default.
+         */
+        public Builder maxErrorRate(double rate) {
+            this.maxErrorRate = rate;
+            return this;
+        }
+
+        /**
+         * Latency differences up to this many milliseconds never fail the
+         * check, 5 by default.
+         */
+        public Builder minLatencyDeltaMillis(double millis) {
+            this.minLatencyDeltaMillis = millis;
+            return this;
+        }
+
+        public LatencyCheck build() {
+            return new LatencyCheck(this);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/* (C)2023 */
+package com.example.demo.components.service;
+
+import software.amazon.awscdk.Duration;
+
+/**
+ * How the load balancer of the {@link Service} stack spreads requests over
+ * the tasks of the blue and green target groups. Together with the health
+ * check and the drain time of {@link ServiceOptions}, these settings decide
+ * how fast a new task set takes its share of the traffic during a canary.
+ *
+ * <pre>
+ * ServiceOptions.builder()
+ *         .loadBalancing(LoadBalancing.builder().leastOutstandingRequests(true).build())
+ *         .build();
+ * </pre>
+ */
+public final class LoadBalancing {
+
+    /**
+     * Environment variable of the runtime keep-alive idle timeout (see
+     * runtime.keepalive.idle.seconds).
+     */
+    public static final String KEEPALIVE_IDLE_SECONDS = "RUNTIME_KEEPALIVE_IDLE_SECONDS";
+
+    /**
+     * Seconds the runtime keeps idle connections open beyond the idle
+     * timeout of the load balancer, so the load balancer always closes them
+     * first.
+     */
+    static final int KEEPALIVE_MARGIN_SECONDS = 15;
+
+    private static final int MIN_SLOW_START_SECONDS = 30;
+    private static final int MAX_SLOW_START_SECONDS = 900;
+    private static final int MAX_IDLE_TIMEOUT_SECONDS = 4000;
+
+    private final Duration slowStart;
+    private final boolean leastOutstandingRequests;
+    private final Duration idleTimeout;
+
+    private LoadBalancing(Builder builder) {
+
+        this.slowStart = builder.slowStart;
+        this.leastOutstandingRequests = builder.leastOutstandingRequests;
+        this.idleTimeout = builder.idleTimeout;
+        final int slowStartSeconds = getSlowStartSeconds();
+        if (slowStartSeconds != 0
+                && (slowStartSeconds < MIN_SLOW_START_SECONDS || slowStartSeconds > MAX_SLOW_START_SECONDS)) {
+            throw new IllegalArgumentException("slowStart must be 0 or between " + MIN_SLOW_START_SECONDS + " and "
+                    + MAX_SLOW_START_SECONDS + " seconds, was " + slowStartSeconds);
+        }
+        if (slowStartSeconds != 0 && leastOutstandingRequests) {
+            throw new IllegalArgumentException(
+                    "Target groups cannot combine slow start with least outstanding requests");
+        }
+        final int idleSeconds = getIdleTimeoutSeconds();
+        if (idleSeconds < 1 || idleSeconds > MAX_IDLE_TIMEOUT_SECONDS) {
+            throw new IllegalArgumentException(
+                    "idleTimeout must be between 1 and " + MAX_IDLE_TIMEOUT_SECONDS + " seconds, was " + idleSeconds);
+        }
+    }
+
+    /**
+     * @return the settings used when a stage sets none
+     */
+    public static LoadBalancing defaults() {
+        return builder().build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return time over which a new target ramps up to its full share of
+     * requests, giving its JIT time to warm up; 0 when off
+     */
+    public Duration getSlowStart() {
+        return slowStart;
+    }
+
+    public int getSlowStartSeconds() {
+        return slowStart.toSeconds().intValue();
+    }
+
+    /**
+     * @return whether requests go to the target with the fewest requests in
+     * flight instead of round robin
+     */
+    public boolean isLeastOutstandingRequests() {
+        return leastOutstandingRequests;
+    }
+
+    /**
+     * @return value of the load_balancing.algorithm.type target group
+     * attribute
+     */
+    public String getAlgorithm() {
+        return leastOutstandingRequests ? "least_outstanding_requests" : "round_robin";
+    }
+
+    /**
+     * @return time the load balancer keeps an idle connection open
+     */
+    public Duration getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public int getIdleTimeoutSeconds() {
+        return idleTimeout.toSeconds().intValue();
+    }
+
+    /**
+     * @return keep-alive idle timeout of the runtime, longer than the one of
+     * the load balancer, so the runtime never closes a connection the load
+     * balancer is about to reuse
+     */
+    public int getKeepAliveIdleSeconds() {
+        return getIdleTimeoutSeconds() + KEEPALIVE_MARGIN_SECONDS;
+    }
+
+    public static final class Builder {
+
+        private Duration slowStart = Duration.seconds(0);
+        private boolean leastOutstandingRequests = false;
+        private Duration idleTimeout = Duration.seconds(60);
+
+        private Builder() {}
+
+        /**
+         * Defaults to 0, off. Between 30 and 900 seconds otherwise.
+         */
+        public Builder slowStart(Duration slowStart) {
+            this.slowStart = slowStart;
+            return this;
+        }
+
+        /**
+         * Defaults to false, round robin. Cannot be combined with slow start.
+         */
+        public Builder leastOutstandingRequests(boolean leastOutstandingRequests) {
+            this.leastOutstandingRequests = leastOutstandingRequests;
+            return this;
+        }
+
+        /**
+         * Defaults to 60 seconds.
+         */
+        public Builder idleTimeout(Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        public LoadBalancing build() {
+            return new LoadBalancing(this);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/* (C)2023 */
+package com.example.demo.components.service;
+
+import software.amazon.awscdk.Duration;
+
+/**
+ * Thresholds of the CloudWatch alarms the {@link Service} stack creates on
+ * its target groups. An alarm going off while CodeDeploy shifts traffic
+ * stops the deployment and rolls it back to the blue task set.
+ *
+ * <pre>
+ * ServiceOptions.builder()
+ *         .rollbackAlarms(RollbackAlarms.builder().maxP99Latency(Duration.millis(250)).build())
+ *         .build();
+ * </pre>
+ */
+public final class RollbackAlarms {
+
+    private final Duration maxP99Latency;
+    private final int max5xx;
+    private final int maxUnhealthyHosts;
+    private final Duration period;
+    private final int evaluationPeriods;
+
+    private RollbackAlarms(Builder builder) {
+
+        this.maxP99Latency = builder.maxP99Latency;
+        this.max5xx = builder.max5xx;
+        this.maxUnhealthyHosts = builder.maxUnhealthyHosts;
+        this.period = builder.period;
+        this.evaluationPeriods = builder.evaluationPeriods;
+        if (maxP99Latency.toMilliseconds().doubleValue() <= 0) {
+            throw new IllegalArgumentException("maxP99Latency must be positive");
+        }
+        if (max5xx < 0 || maxUnhealthyHosts < 0) {
+            throw new IllegalArgumentException("max5xx and maxUnhealthyHosts must not be negative");
+        }
+        if (evaluationPeriods < 1) {
+            throw new IllegalArgumentException("evaluationPeriods must be at least 1, was " + evaluationPeriods);
+        }
+    }
+
+    /**
+     * @return the thresholds used when a stage sets none
+     */
+    public static RollbackAlarms defaults() {
+        return builder().build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return p99 of TargetResponseTime above which a target group alarms
+     */
+    public Duration getMaxP99Latency() {
+        return maxP99Latency;
+    }
+
+    /**
+     * @return 5xx responses from the targets per period above which a target
+     * group alarms
+     */
+    public int getMax5xx() {
+        return max5xx;
+    }
+
+    /**
+     * @return unhealthy targets above which a target group alarms
+     */
+    public int getMaxUnhealthyHosts() {
+        return maxUnhealthyHosts;
+    }
+
+    public Duration getPeriod() {
+        return period;
+    }
+
+    /**
+     * @return consecutive periods that must breach before an alarm goes off
+     */
+    public int getEvaluationPeriods() {
+        return evaluationPeriods;
+    }
+
+    public static final class Builder {
+
+        private Duration maxP99Latency = Duration.millis(500);
+        private int max5xx = 10;
+        private int maxUnhealthyHosts = 0;
+        private Duration period = Duration.minutes(1);
+        private int evaluationPeriods = 2;
+
+        private Builder() {}
+
+        /**
+         * Defaults to 500 milliseconds.
+         */
+        public Builder maxP99Latency(Duration maxP99Latency) {
+            this.maxP99Latency = maxP99Latency;
+            return this;
+        }
+
+        /**
+         * Defaults to 10 per period.
+         */
+        public Builder max5xx(int max5xx) {
+            this.max5xx = max5xx;
+            return this;
+        }
+
+        /**
+         * Defaults to 0, so a single unhealthy target alarms.
+         */
+        public Builder maxUnhealthyHosts(int maxUnhealthyHosts) {
+            this.maxUnhealthyHosts = maxUnhealthyHosts;
+            return this;
+        }
+
+        /**
+         * Defaults to 1 minute.
+         */
+        public Builder period(Duration period) {
+            this.period = period;
+            return this;
+        }
+
+        /**
+         * Defaults to 2.
+         */
+        public Builder evaluationPeriods(int evaluationPeriods) {
+            this.evaluationPeriods = evaluationPeriods;
+            return this;
+        }
+
+        public RollbackAlarms build() {
+            return new RollbackAlarms(this);
+        }
+    }
+}
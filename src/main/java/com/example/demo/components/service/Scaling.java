@@ -0,0 +1,231 @@
+/* (C)2023 */
+package com.example.demo.components.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import software.amazon.awscdk.Duration;
+
+/**
+ * Capacity of the {@link Service} stack: the range of tasks Application
+ * Auto Scaling keeps the service in, the target tracking policies that move
+ * it within that range and scheduled changes for known peaks.
+ *
+ * <pre>
+ * ServiceOptions.builder()
+ *         .scaling(Scaling.builder()
+ *                 .maxCapacity(20)
+ *                 .scheduled("WeekdayPeak", "cron(0 8 ? * MON-FRI *)", 6, 20)
+ *                 .build())
+ *         .build();
+ * </pre>
+ */
+public final class Scaling {
+
+    private final int minCapacity;
+    private final int maxCapacity;
+    private final int requestsPerTarget;
+    private final int cpuUtilization;
+    private final int memoryUtilization;
+    private final Duration scaleInCooldown;
+    private final Duration scaleOutCooldown;
+    private final List<ScheduledCapacity> scheduled;
+
+    private Scaling(Builder builder) {
+
+        this.minCapacity = builder.minCapacity;
+        this.maxCapacity = builder.maxCapacity;
+        this.requestsPerTarget = builder.requestsPerTarget;
+        this.cpuUtilization = builder.cpuUtilization;
+        this.memoryUtilization = builder.memoryUtilization;
+        this.scaleInCooldown = builder.scaleInCooldown;
+        this.scaleOutCooldown = builder.scaleOutCooldown;
+        this.scheduled = Collections.unmodifiableList(new ArrayList<>(builder.scheduled));
+        if (minCapacity < 1 || maxCapacity < minCapacity) {
+            throw new IllegalArgumentException(
+                    "capacity must satisfy 1 <= min <= max, was " + minCapacity + ".." + maxCapacity);
+        }
+        if (cpuUtilization > 100 || memoryUtilization > 100) {
+            throw new IllegalArgumentException("utilization targets are percentages, at most 100");
+        }
+    }
+
+    /**
+     * @return the scaling used when a stage sets none
+     */
+    public static Scaling defaults() {
+        return builder().build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int getMinCapacity() {
+        return minCapacity;
+    }
+
+    public int getMaxCapacity() {
+        return maxCapacity;
+    }
+
+    /**
+     * @return ALB requests per target per minute to track, 0 when requests
+     * do not drive scaling
+     */
+    public int getRequestsPerTarget() {
+        return requestsPerTarget;
+    }
+
+    /**
+     * @return average CPU utilization percent to track, 0 when CPU does not
+     * drive scaling
+     */
+    public int getCpuUtilization() {
+        return cpuUtilization;
+    }
+
+    /**
+     * @return average memory utilization percent to track, 0 when memory
+     * does not drive scaling
+     */
+    public int getMemoryUtilization() {
+        return memoryUtilization;
+    }
+
+    public Duration getScaleInCooldown() {
+        return scaleInCooldown;
+    }
+
+    public Duration getScaleOutCooldown() {
+        return scaleOutCooldown;
+    }
+
+    public List<ScheduledCapacity> getScheduled() {
+        return scheduled;
+    }
+
+    /**
+     * Capacity range applied from the time a schedule fires until another
+     * scheduled action changes it.
+     */
+    public static final class ScheduledCapacity {
+
+        private final String name;
+        private final String expression;
+        private final int minCapacity;
+        private final int maxCapacity;
+
+        private ScheduledCapacity(String name, String expression, int minCapacity, int maxCapacity) {
+            this.name = name;
+            this.expression = expression;
+            this.minCapacity = minCapacity;
+            this.maxCapacity = maxCapacity;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return an Application Auto Scaling schedule, such as
+         * cron(0 8 ? * MON-FRI *) or at(2023-11-24T06:00:00), in UTC
+         */
+        public String getExpression() {
+            return expression;
+        }
+
+        public int getMinCapacity() {
+            return minCapacity;
+        }
+
+        public int getMaxCapacity() {
+            return maxCapacity;
+        }
+    }
+
+    public static final class Builder {
+
+        private int minCapacity = 2;
+        private int maxCapacity = 10;
+        private int requestsPerTarget = 1000;
+        private int cpuUtilization = 70;
+        private int memoryUtilization = 0;
+        private Duration scaleInCooldown = Duration.minutes(5);
+        private Duration scaleOutCooldown = Duration.minutes(1);
+        private final List<ScheduledCapacity> scheduled = new ArrayList<>();
+
+        private Builder() {}
+
+        /**
+         * Defaults to 2.
+         */
+        public Builder minCapacity(int minCapacity) {
+            this.minCapacity = minCapacity;
+            return this;
+        }
+
+        /**
+         * Defaults to 10.
+         */
+        public Builder maxCapacity(int maxCapacity) {
+            this.maxCapacity = maxCapacity;
+            return this;
+        }
+
+        /**
+         * Defaults to 1000 requests per target per minute; 0 turns request
+         * based scaling off.
+         */
+        public Builder requestsPerTarget(int requestsPerTarget) {
+            this.requestsPerTarget = requestsPerTarget;
+            return this;
+        }
+
+        /**
+         * Defaults to 70 percent; 0 turns CPU based scaling off.
+         */
+        public Builder cpuUtilization(int cpuUtilization) {
+            this.cpuUtilization = cpuUtilization;
+            return this;
+        }
+
+        /**
+         * Off (0) by default.
+         */
+        public Builder memoryUtilization(int memoryUtilization) {
+            this.memoryUtilization = memoryUtilization;
+            return this;
+        }
+
+        /**
+         * Time after a scale-in before the next one, 5 minutes by default.
+         */
+        public Builder scaleInCooldown(Duration scaleInCooldown) {
+            this.scaleInCooldown = scaleInCooldown;
+            return this;
+        }
+
+        /**
+         * Time after a scale-out before the next one, 1 minute by default.
+         */
+        public Builder scaleOutCooldown(Duration scaleOutCooldown) {
+            this.scaleOutCooldown = scaleOutCooldown;
+            return this;
+        }
+
+        /**
+         * Adds a scheduled change of the capacity range.
+         *
+         * @param expression cron(...), rate(...) or at(...), in UTC
+         */
+        public Builder scheduled(String name, String expression, int minCapacity, int maxCapacity) {
+            this.scheduled.add(new ScheduledCapacity(name, expression, minCapacity, maxCapacity));
+            return this;
+        }
+
+        public Scaling build() {
+            return new Scaling(this);
+        }
+    }
+}
@@ -1,77 +1,171 @@
 /* (C)2023 */
 package com.example.demo.components.service;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import software.amazon.awscdk.ArnComponents;
+import software.amazon.awscdk.ArnFormat;
 import software.amazon.awscdk.CfnOutput;
 import software.amazon.awscdk.Duration;
+import software.amazon.awscdk.RemovalPolicy;
+import software.amazon.awscdk.Size;
 import software.amazon.awscdk.Stack;
 import software.amazon.awscdk.StackProps;
+import software.amazon.awscdk.services.applicationautoscaling.EnableScalingProps;
+import software.amazon.awscdk.services.applicationautoscaling.ScalingSchedule;
+import software.amazon.awscdk.services.applicationautoscaling.Schedule;
+import software.amazon.awscdk.services.cloudfront.AllowedMethods;
+import software.amazon.awscdk.services.cloudfront.BehaviorOptions;
+import software.amazon.awscdk.services.cloudfront.CacheCookieBehavior;
+import software.amazon.awscdk.services.cloudfront.CacheHeaderBehavior;
+import software.amazon.awscdk.services.cloudfront.CachePolicy;
+import software.amazon.awscdk.services.cloudfront.CacheQueryStringBehavior;
+import software.amazon.awscdk.services.cloudfront.Distribution;
+import software.amazon.awscdk.services.cloudfront.OriginProtocolPolicy;
+import software.amazon.awscdk.services.cloudfront.OriginRequestPolicy;
+import software.amazon.awscdk.services.cloudfront.ViewerProtocolPolicy;
+import software.amazon.awscdk.services.cloudfront.origins.LoadBalancerV2Origin;
+import software.amazon.awscdk.services.cloudfront.origins.LoadBalancerV2OriginProps;
+import software.amazon.awscdk.services.cloudwatch.Alarm;
+import software.amazon.awscdk.services.cloudwatch.ComparisonOperator;
+import software.amazon.awscdk.services.cloudwatch.IAlarm;
+import software.amazon.awscdk.services.cloudwatch.IMetric;
+import software.amazon.awscdk.services.cloudwatch.MetricOptions;
+import software.amazon.awscdk.services.cloudwatch.TreatMissingData;
+import software.amazon.awscdk.services.codedeploy.AutoRollbackConfig;
 import software.amazon.awscdk.services.codedeploy.EcsApplication;
 import software.amazon.awscdk.services.codedeploy.EcsBlueGreenDeploymentConfig;
 import software.amazon.awscdk.services.codedeploy.EcsDeploymentGroup;
 import software.amazon.awscdk.services.codedeploy.IEcsDeploymentConfig;
 import software.amazon.awscdk.services.ecr.assets.DockerImageAsset;
+import software.amazon.awscdk.services.ecs.AwsLogDriverMode;
+import software.amazon.awscdk.services.ecs.AwsLogDriverProps;
+import software.amazon.awscdk.services.ecs.CfnService;
 import software.amazon.awscdk.services.ecs.ContainerDefinitionOptions;
 import software.amazon.awscdk.services.ecs.ContainerImage;
+import software.amazon.awscdk.services.ecs.CpuUtilizationScalingProps;
 import software.amazon.awscdk.services.ecs.DeploymentController;
 import software.amazon.awscdk.services.ecs.DeploymentControllerType;
 import software.amazon.awscdk.services.ecs.FargateTaskDefinition;
+import software.amazon.awscdk.services.ecs.LogDriver;
+import software.amazon.awscdk.services.ecs.MemoryUtilizationScalingProps;
+import software.amazon.awscdk.services.ecs.OperatingSystemFamily;
 import software.amazon.awscdk.services.ecs.PortMapping;
 import software.amazon.awscdk.services.ecs.Protocol;
+import software.amazon.awscdk.services.ecs.RequestCountScalingProps;
+import software.amazon.awscdk.services.ecs.RuntimePlatform;
+import software.amazon.awscdk.services.ecs.ScalableTaskCount;
 import software.amazon.awscdk.services.ecs.patterns.ApplicationLoadBalancedFargateService;
 import software.amazon.awscdk.services.elasticloadbalancingv2.AddApplicationActionProps;
 import software.amazon.awscdk.services.elasticloadbalancingv2.ApplicationListener;
 import software.amazon.awscdk.services.elasticloadbalancingv2.ApplicationProtocol;
 import software.amazon.awscdk.services.elasticloadbalancingv2.ApplicationTargetGroup;
 import software.amazon.awscdk.services.elasticloadbalancingv2.BaseApplicationListenerProps;
+import software.amazon.awscdk.services.elasticloadbalancingv2.HttpCodeTarget;
 import software.amazon.awscdk.services.elasticloadbalancingv2.ListenerAction;
 import software.amazon.awscdk.services.elasticloadbalancingv2.TargetType;
 import software.amazon.awscdk.services.iam.IRole;
 import software.amazon.awscdk.services.iam.ManagedPolicy;
+import software.amazon.awscdk.services.iam.PolicyStatement;
 import software.amazon.awscdk.services.iam.Role;
 import software.amazon.awscdk.services.iam.ServicePrincipal;
+import software.amazon.awscdk.services.lambda.Code;
+import software.amazon.awscdk.services.lambda.Function;
+import software.amazon.awscdk.services.lambda.Runtime;
+import software.amazon.awscdk.services.logs.LogGroup;
+import software.amazon.awscdk.services.logs.RetentionDays;
 import software.constructs.Construct;
 
 public class Service extends Stack {
 
-    private static final String ECS_TASK_CPU = "1024";
-    private static final String ECS_TASK_MEMORY = "2048";
-    private static final Integer ECS_CONTAINER_MEMORY_RESERVATION = 256;
-    private static final Integer ECS_CONTAINER_MEMORY_LIMIT = 512;
     private static final Integer ECS_TASK_CONTAINER_PORT = 8080;
     private static final Integer ECS_TASK_CONTAINER_HOST_PORT = 8080;
+    private static final Integer ECS_LOG_MAX_BUFFER_MIB = 25;
+    private static final Integer HOOK_MEMORY_MIB = 1024;
+    // code of the hook functions: each gets only its own classes and libraries, which the compile phase copies
+    // into these directories (see pom.xml), so the assets change only when the hooks do
+    private static final String LATENCY_HOOK_CODE = "./target/hooks/latency";
+    private static final String EDGE_HOOK_CODE = "./target/hooks/edge";
+    private static final Integer EDGE_HOOK_MEMORY_MIB = 256;
+    private static final List<String> GREEN_IMAGE_EXCLUDES =
+            Arrays.asList("*", "!Dockerfile", "!modules.txt", "!lib", "!service-1.0-SNAPSHOT-runtime.jar");
 
     ApplicationTargetGroup tgGreen = null;
     ApplicationListener listenerGreen = null;
 
+    private final ServiceOptions options;
+    private final DockerImageAsset greenImage;
+    private final FargateTaskDefinition taskDefinition;
+    private final String containerName;
+    private final Map<String, String> lifecycleHooks = new LinkedHashMap<>();
+
     public Service(Construct scope, String id, IEcsDeploymentConfig deploymentConfig, StackProps props) {
+        this(scope, id, deploymentConfig, props, ServiceOptions.defaults());
+    }
+
+    public Service(
+            Construct scope,
+            String id,
+            IEcsDeploymentConfig deploymentConfig,
+            StackProps props,
+            ServiceOptions options) {
 
         super(scope, id, props);
+        this.options = options;
+        this.containerName = id;
 
         // uploading the green application to the ECR
         // maven default build dir is /target. Dockerfile is moved to /target so it can find the application jar (see
         // pom.xml)
-        DockerImageAsset.Builder.create(this, "GreenContainer" + id)
+        this.greenImage = DockerImageAsset.Builder.create(this, "GreenContainer" + id)
                 .directory("./target")
+                // the build context, and the asset hash, only cover what the image copies
+                .exclude(GREEN_IMAGE_EXCLUDES)
+                .platform(options.getArchitecture().getPlatform())
                 .build();
 
         // L3 ECS Pattern
         ApplicationLoadBalancedFargateService albService = ApplicationLoadBalancedFargateService.Builder.create(
                         this, "Service")
-                .desiredCount(2)
                 .serviceName(id)
                 .deploymentController(DeploymentController.builder()
                         .type(DeploymentControllerType.CODE_DEPLOY)
                         .build())
                 .taskDefinition(
-                        createECSTask(new HashMap<String, String>(), id, createTaskRole(id), createTaskExecutionRole(id)))
+                        createECSTask(
+                                createEnvironment(options),
+                                id,
+                                createTaskRole(id),
+                                createTaskExecutionRole(id)))
                 .loadBalancerName("Alb" + id)
                 .listenerPort(80)
                 .build();
+        this.taskDefinition = albService.getTaskDefinition();
 
+        configureTargetGroup(albService.getTargetGroup());
+        albService
+                .getLoadBalancer()
+                .setAttribute(
+                        "idle_timeout.timeout_seconds",
+                        String.valueOf(options.getLoadBalancing().getIdleTimeoutSeconds()));
         createGreenListener(albService, id);
+        configureScaling(albService, options.getScaling());
+        if (options.getLatencyCheck() != null) {
+            createLatencyCheckHook(albService, id, options.getLatencyCheck());
+        }
+        if (options.getEdgeCache() != null) {
+            createEdgeCache(albService, id, options.getEdgeCache());
+        }
+
+        // blue and green swap roles on every deployment, so both target groups are watched
+        final List<IAlarm> alarms = new ArrayList<>();
+        alarms.addAll(createRollbackAlarms(albService.getTargetGroup(), "Blue", options.getRollbackAlarms()));
+        alarms.addAll(createRollbackAlarms(tgGreen, "Green", options.getRollbackAlarms()));
 
         // configure AWS CodeDeploy Application and DeploymentGroup
         EcsApplication app = EcsApplication.Builder.create(this, "BlueGreenApplication")
@@ -91,6 +185,11 @@ public class Service extends Stack {
                         .terminationWaitTime(Duration.minutes(15))
                         .build())
                 .deploymentConfig(deploymentConfig)
+                .alarms(alarms)
+                .autoRollback(AutoRollbackConfig.builder()
+                        .failedDeployment(Boolean.TRUE)
+                        .deploymentInAlarm(Boolean.TRUE)
+                        .build())
                 .build();
 
         CfnOutput.Builder.create(this, "VPC")
@@ -131,33 +230,81 @@ public class Service extends Stack {
         taskDef = FargateTaskDefinition.Builder.create(this, "EcsTaskDef" + serviceName)
                 .taskRole(taskRole)
                 .executionRole(executionRole)
-                .cpu(Integer.parseInt(Service.ECS_TASK_CPU))
-                .memoryLimitMiB(Integer.parseInt(Service.ECS_TASK_MEMORY))
+                .cpu(options.getSizing().getCpu())
+                .memoryLimitMiB(options.getSizing().getMemoryMiB())
                 .family(serviceName)
+                .runtimePlatform(RuntimePlatform.builder()
+                        .cpuArchitecture(options.getArchitecture().getCpuArchitecture())
+                        .operatingSystemFamily(OperatingSystemFamily.LINUX)
+                        .build())
                 .build();
 
         taskDef.addContainer(
                 "App" + serviceName,
                 ContainerDefinitionOptions.builder()
                         .containerName(serviceName)
-                        .memoryReservationMiB(ECS_CONTAINER_MEMORY_RESERVATION)
-                        .memoryLimitMiB(ECS_CONTAINER_MEMORY_LIMIT)
+                        .memoryReservationMiB(options.getSizing().getContainerMemoryReservationMiB())
+                        .memoryLimitMiB(options.getSizing().getContainerMemoryMiB())
                         .image(ContainerImage.fromDockerImageAsset(
                                 DockerImageAsset.Builder.create(this, "BlueContainer" + serviceName)
                                         .directory(getPathDockerfile())
+                                        .platform(options.getArchitecture().getPlatform())
                                         .build()))
                         .essential(Boolean.TRUE)
+                        .stopTimeout(options.getDrainTime())
                         .portMappings(Arrays.asList(PortMapping.builder()
                                 .containerPort(Service.ECS_TASK_CONTAINER_PORT)
                                 .hostPort(Service.ECS_TASK_CONTAINER_HOST_PORT)
                                 .protocol(Protocol.TCP)
                                 .build()))
                         .environment(env)
+                        .logging(LogDriver.awsLogs(AwsLogDriverProps.builder()
+                                .logGroup(LogGroup.Builder.create(this, "LogGroup" + serviceName)
+                                        .logGroupName("/ecs/" + serviceName)
+                                        .retention(RetentionDays.ONE_MONTH)
+                                        .removalPolicy(RemovalPolicy.DESTROY)
+                                        .build())
+                                .streamPrefix(serviceName)
+                                // a full buffer drops log lines instead of blocking the application
+                                .mode(AwsLogDriverMode.NON_BLOCKING)
+                                .maxBufferSize(Size.mebibytes(ECS_LOG_MAX_BUFFER_MIB))
+                                .build()))
                         .build());
 
         return taskDef;
     }
 
+    /**
+     * @return task definition of the blue task set, the shape CodeDeploy
+     * deploys green with
+     */
+    public FargateTaskDefinition getTaskDefinition() {
+        return taskDefinition;
+    }
+
+    /**
+     * @return image of the green application, deployed by CodeDeploy
+     */
+    public DockerImageAsset getGreenImage() {
+        return greenImage;
+    }
+
+    /**
+     * @return name of the application container, the one behind the load
+     * balancer
+     */
+    public String getContainerName() {
+        return containerName;
+    }
+
+    /**
+     * @return Lambda functions CodeDeploy runs during a deployment, by
+     * lifecycle event, in the order of the events
+     */
+    public Map<String, String> getLifecycleHooks() {
+        return Collections.unmodifiableMap(lifecycleHooks);
+    }
+
     /**
      * The Dockerfile of the blue version of the application is inside
      * a directory relative to this classpath (./compute/runtime-bootstrap)
@@ -179,6 +326,7 @@ public class Service extends Stack {
     Role createTaskRole(final String id) {
 
         return Role.Builder.create(this, "EcsTaskRole" + id)
+                .roleName(id + "-task")
                 .assumedBy(ServicePrincipal.Builder.create("ecs-tasks.amazonaws.com")
                         .build())
                 .managedPolicies(Arrays.asList(
@@ -221,6 +369,308 @@ public class Service extends Stack {
                 .build();
     }
 
+    /**
+     * @return environment of the application container: the JVM options of
+     * the task size, a keep-alive timeout outlasting the idle timeout of
+     * the load balancer, a drain window and in-flight timeout that fit in
+     * the container stop timeout, and whether the runtime sheds load
+     */
+    private static Map<String, String> createEnvironment(ServiceOptions options) {
+
+        final Map<String, String> env = new HashMap<>(options.getSizing().getEnvironment());
+        env.put(
+                LoadBalancing.KEEPALIVE_IDLE_SECONDS,
+                String.valueOf(options.getLoadBalancing().getKeepAliveIdleSeconds()));
+        env.put(ServiceOptions.DRAIN_SECONDS, String.valueOf(options.getDrainSeconds()));
+        env.put(ServiceOptions.DRAIN_TIMEOUT_SECONDS, String.valueOf(options.getDrainTimeoutSeconds()));
+        env.put(ServiceOptions.ADMISSION, String.valueOf(options.isLoadShedding()));
+        return env;
+    }
+
+    /**
+     * Applies the same health check, draining and routing to the blue and
+     * green target groups, so a deployment does not change how traffic
+     * reaches the tasks.
+     */
+    private void configureTargetGroup(ApplicationTargetGroup tg) {
+
+        final LoadBalancing loadBalancing = options.getLoadBalancing();
+        tg.configureHealthCheck(options.getHealthCheck());
+        tg.setAttribute(
+                "deregistration_delay.timeout_seconds",
+                String.valueOf(options.getDrainTime().toSeconds().intValue()));
+        tg.setAttribute("load_balancing.algorithm.type", loadBalancing.getAlgorithm());
+        if (loadBalancing.getSlowStartSeconds() > 0) {
+            tg.setAttribute("slow_start.duration_seconds", String.valueOf(loadBalancing.getSlowStartSeconds()));
+        }
+    }
+
+    /**
+     * Registers the ECS service with Application Auto Scaling. Scaling acts
+     * on the service, not on a task set, so it carries over to the
+     * replacement task set of a CodeDeploy deployment, which starts at the
+     * current desired count. Request counts are tracked on both target
+     * groups because production traffic moves between them: the idle one
+     * reports no requests, and target tracking only scales in when every
+     * policy agrees.
+     */
+    private void configureScaling(ApplicationLoadBalancedFargateService albService, Scaling scaling) {
+
+        // the desired count comes from auto scaling from now on; leaving it in the template would reset the
+        // service to the minimum on every stack update
+        ((CfnService) albService.getService().getNode().getDefaultChild())
+                .addPropertyDeletionOverride("DesiredCount");
+
+        final ScalableTaskCount count = albService
+                .getService()
+                .autoScaleTaskCount(EnableScalingProps.builder()
+                        .minCapacity(scaling.getMinCapacity())
+                        .maxCapacity(scaling.getMaxCapacity())
+                        .build());
+
+        if (scaling.getRequestsPerTarget() > 0) {
+            count.scaleOnRequestCount(
+                    "RequestsBlue",
+                    RequestCountScalingProps.builder()
+                            .requestsPerTarget(scaling.getRequestsPerTarget())
+                            .targetGroup(albService.getTargetGroup())
+                            .scaleInCooldown(scaling.getScaleInCooldown())
+                            .scaleOutCooldown(scaling.getScaleOutCooldown())
+                            .build());
+            count.scaleOnRequestCount(
+                    "RequestsGreen",
+                    RequestCountScalingProps.builder()
+                            .requestsPerTarget(scaling.getRequestsPerTarget())
+                            .targetGroup(tgGreen)
+                            .scaleInCooldown(scaling.getScaleInCooldown())
+                            .scaleOutCooldown(scaling.getScaleOutCooldown())
+                            .build());
+        }
+        if (scaling.getCpuUtilization() > 0) {
+            count.scaleOnCpuUtilization(
+                    "Cpu",
+                    CpuUtilizationScalingProps.builder()
+                            .targetUtilizationPercent(scaling.getCpuUtilization())
+                            .scaleInCooldown(scaling.getScaleInCooldown())
+                            .scaleOutCooldown(scaling.getScaleOutCooldown())
+                            .build());
+        }
+        if (scaling.getMemoryUtilization() > 0) {
+            count.scaleOnMemoryUtilization(
+                    "Memory",
+                    MemoryUtilizationScalingProps.builder()
+                            .targetUtilizationPercent(scaling.getMemoryUtilization())
+                            .scaleInCooldown(scaling.getScaleInCooldown())
+                            .scaleOutCooldown(scaling.getScaleOutCooldown())
+                            .build());
+        }
+        for (Scaling.ScheduledCapacity scheduled : scaling.getScheduled()) {
+            count.scaleOnSchedule(
+                    scheduled.getName(),
+                    ScalingSchedule.builder()
+                            .schedule(Schedule.expression(scheduled.getExpression()))
+                            .minCapacity(scheduled.getMinCapacity())
+                            .maxCapacity(scheduled.getMaxCapacity())
+                            .build());
+        }
+    }
+
+    /**
+     * Creates the alarms that stop and roll back a deployment when the
+     * target group gets slow, answers 5xx or loses targets. Missing data,
+     * such as a target group without traffic, does not alarm.
+     */
+    private List<IAlarm> createRollbackAlarms(ApplicationTargetGroup tg, String name, RollbackAlarms thresholds) {
+
+        final MetricOptions p99 = MetricOptions.builder()
+                .statistic("p99")
+                .period(thresholds.getPeriod())
+                .build();
+        final MetricOptions sum = MetricOptions.builder()
+                .statistic("Sum")
+                .period(thresholds.getPeriod())
+                .build();
+        final MetricOptions max = MetricOptions.builder()
+                .statistic("Maximum")
+                .period(thresholds.getPeriod())
+                .build();
+
+        return Arrays.asList(
+                createRollbackAlarm(
+                        "P99Latency" + name,
+                        "p99 response time of the " + name.toLowerCase() + " targets",
+                        tg.metricTargetResponseTime(p99),
+                        // TargetResponseTime is reported in seconds
+                        thresholds.getMaxP99Latency().toMilliseconds().doubleValue() / 1000,
+                        thresholds),
+                createRollbackAlarm(
+                        "Target5xx" + name,
+                        "5xx responses of the " + name.toLowerCase() + " targets",
+                        tg.metricHttpCodeTarget(HttpCodeTarget.TARGET_5XX_COUNT, sum),
+                        thresholds.getMax5xx(),
+                        thresholds),
+                createRollbackAlarm(
+                        "UnhealthyHosts" + name,
+                        "Unhealthy " + name.toLowerCase() + " targets",
+                        tg.metricUnhealthyHostCount(max),
+                        thresholds.getMaxUnhealthyHosts(),
+                        thresholds));
+    }
+
+    private Alarm createRollbackAlarm(
+            String id, String description, IMetric metric, double threshold, RollbackAlarms thresholds) {
+
+        return Alarm.Builder.create(this, id)
+                .alarmDescription(description + " above " + threshold + "; rolls the deployment back")
+                .metric(metric)
+                .threshold(threshold)
+                .comparisonOperator(ComparisonOperator.GREATER_THAN_THRESHOLD)
+                .evaluationPeriods(thresholds.getEvaluationPeriods())
+                .datapointsToAlarm(thresholds.getEvaluationPeriods())
+                .treatMissingData(TreatMissingData.NOT_BREACHING)
+                .build();
+    }
+
+    /**
+     * @return name of the CodeDeploy hook function of a service. The
+     * AWSCodeDeployRoleForECS policy lets CodeDeploy invoke functions whose
+     * name starts with CodeDeployHook_.
+     */
+    public static String hookFunctionName(String id) {
+        return "CodeDeployHook_" + id;
+    }
+
+    /**
+     * Creates the Lambda function CodeDeploy runs after the test listener
+     * routes to green. It loads both listeners of the load balancer with
+     * ComparatorHook, from target/hooks/latency, and fails the
+     * deployment when green is slower than blue.
+     */
+    private Function createLatencyCheckHook(
+            ApplicationLoadBalancedFargateService albService, String id, LatencyCheck check) {
+
+        final String dns = albService.getLoadBalancer().getLoadBalancerDnsName();
+        final Function hook = Function.Builder.create(this, "LatencyCheckHook" + id)
+                .functionName(hookFunctionName(id))
+                .description("Compares green against blue before production traffic moves to green")
+                .runtime(Runtime.JAVA_17)
+                .handler("com.example.demo.toolchain.loadtest.ComparatorHook::handleRequest")
+                .code(Code.fromAsset(LATENCY_HOOK_CODE))
+                .memorySize(HOOK_MEMORY_MIB)
+                // the run plus time for outstanding responses and the status call
+                .timeout(Duration.seconds(check.getRunTime().toSeconds().doubleValue() + 90))
+                .environment(check.toEnvironment("http://" + dns + "/", "http://" + dns + ":8080/"))
+                .build();
+        hook.addToRolePolicy(PolicyStatement.Builder.create()
+                .actions(Arrays.asList("codedeploy:PutLifecycleEventHookExecutionStatus"))
+                .resources(Arrays.asList("*"))
+                .build());
+
+        CfnOutput.Builder.create(this, "LatencyCheckHook")
+                .description("CodeDeploy AfterAllowTestTraffic hook comparing green against blue")
+                .value(hook.getFunctionName())
+                .build();
+        lifecycleHooks.put("AfterAllowTestTraffic", hookFunctionName(id));
+        return hook;
+    }
+
+    /**
+     * Creates the CloudFront distribution in front of the production
+     * listener. Only port 80 is an origin, so requests to the test listener
+     * never go through the cache. The cache policy takes its TTLs from the
+     * Cache-Control of the runtime and keys on path, query string and
+     * accepted encoding; content-hashed asset paths version the long-lived
+     * entries, and the invalidation hook clears the rest after cutover.
+     */
+    private Distribution createEdgeCache(ApplicationLoadBalancedFargateService albService, String id, EdgeCache cache) {
+
+        final CachePolicy policy = CachePolicy.Builder.create(this, "EdgeCachePolicy" + id)
+                .comment("Honours the Cache-Control of " + id)
+                // responses without Cache-Control are not cached
+                .defaultTtl(Duration.seconds(0))
+                .minTtl(Duration.seconds(0))
+                .maxTtl(EdgeCache.MAX_TTL)
+                .queryStringBehavior(CacheQueryStringBehavior.all())
+                .headerBehavior(CacheHeaderBehavior.none())
+                .cookieBehavior(CacheCookieBehavior.none())
+                .enableAcceptEncodingGzip(Boolean.TRUE)
+                .enableAcceptEncodingBrotli(Boolean.TRUE)
+                .build();
+
+        final Distribution distribution = Distribution.Builder.create(this, "EdgeCache" + id)
+                .comment("Edge cache of " + id)
+                .priceClass(cache.getPriceClass())
+                .defaultBehavior(BehaviorOptions.builder()
+                        .origin(new LoadBalancerV2Origin(
+                                albService.getLoadBalancer(),
+                                LoadBalancerV2OriginProps.builder()
+                                        .protocolPolicy(OriginProtocolPolicy.HTTP_ONLY)
+                                        .httpPort(80)
+                                        .build()))
+                        .cachePolicy(policy)
+                        .originRequestPolicy(OriginRequestPolicy.ALL_VIEWER)
+                        .allowedMethods(AllowedMethods.ALLOW_ALL)
+                        .viewerProtocolPolicy(ViewerProtocolPolicy.REDIRECT_TO_HTTPS)
+                        .compress(Boolean.TRUE)
+                        .build())
+                .build();
+
+        CfnOutput.Builder.create(this, "EdgeURL")
+                .description("Application is acessible through the edge cache from this url")
+                .value("https://" + distribution.getDistributionDomainName())
+                .build();
+        CfnOutput.Builder.create(this, "EdgeDistribution")
+                .description("ID of the CloudFront distribution")
+                .value(distribution.getDistributionId())
+                .build();
+
+        if (!cache.getInvalidationPaths().isEmpty()) {
+            createEdgeInvalidationHook(distribution, id, cache);
+        }
+        return distribution;
+    }
+
+    /**
+     * Creates the Lambda function CodeDeploy runs once production traffic
+     * reaches green. It invalidates the distribution with
+     * EdgeInvalidationHook, from target/hooks/edge.
+     */
+    private Function createEdgeInvalidationHook(Distribution distribution, String id, EdgeCache cache) {
+
+        final Function hook = Function.Builder.create(this, "EdgeInvalidationHook" + id)
+                .functionName(hookFunctionName(id + "-Edge"))
+                .description("Invalidates the edge cache after production traffic moves to green")
+                .runtime(Runtime.JAVA_17)
+                .handler("com.example.demo.toolchain.codedeploy.EdgeInvalidationHook::handleRequest")
+                .code(Code.fromAsset(EDGE_HOOK_CODE))
+                .memorySize(EDGE_HOOK_MEMORY_MIB)
+                .timeout(Duration.seconds(60))
+                .environment(cache.toEnvironment(distribution.getDistributionId()))
+                .build();
+        hook.addToRolePolicy(PolicyStatement.Builder.create()
+                .actions(Arrays.asList("cloudfront:CreateInvalidation"))
+                .resources(Arrays.asList(Stack.of(this)
+                        .formatArn(ArnComponents.builder()
+                                .service("cloudfront")
+                                .region("")
+                                .resource("distribution")
+                                .resourceName(distribution.getDistributionId())
+                                .arnFormat(ArnFormat.SLASH_RESOURCE_NAME)
+                                .build())))
+                .build());
+        hook.addToRolePolicy(PolicyStatement.Builder.create()
+                .actions(Arrays.asList("codedeploy:PutLifecycleEventHookExecutionStatus"))
+                .resources(Arrays.asList("*"))
+                .build());
+
+        CfnOutput.Builder.create(this, "EdgeInvalidationHook")
+                .description("CodeDeploy AfterAllowTraffic hook invalidating the edge cache")
+                .value(hook.getFunctionName())
+                .build();
+        lifecycleHooks.put("AfterAllowTraffic", hookFunctionName(id + "-Edge"));
+        return hook;
+    }
+
     public void createGreenListener(ApplicationLoadBalancedFargateService albService, String id) {
 
         // create the green listener and target group
@@ -233,6 +683,7 @@ public class Service extends Stack {
                 .targetType(TargetType.IP)
                 .vpc(albService.getCluster().getVpc())
                 .build();
+        configureTargetGroup(tgGreen);
 
         ApplicationListener listenerGreen = albService
                 .getLoadBalancer()
@@ -0,0 +1,316 @@
+/* (C)2023 */
+package com.example.demo.components.service;
+
+import software.amazon.awscdk.Duration;
+import software.amazon.awscdk.services.elasticloadbalancingv2.HealthCheck;
+
+/**
+ * Per-stage settings of the {@link Service} stack. Every setting has a
+ * default, so stages only set what they need to change.
+ *
+ * <pre>
+ * ServiceOptions.builder()
+ *         .healthCheck(HealthCheck.builder().interval(Duration.seconds(5)).build())
+ *         .build();
+ * </pre>
+ */
+public final class ServiceOptions {
+
+    public static final String HEALTH_CHECK_PATH = "/health/ready";
+
+    /**
+     * Environment variables of the runtime drain window and in-flight
+     * timeout (see runtime.drain.seconds and runtime.drain.timeout.seconds).
+     */
+    public static final String DRAIN_SECONDS = "RUNTIME_DRAIN_SECONDS";
+
+    public static final String DRAIN_TIMEOUT_SECONDS = "RUNTIME_DRAIN_TIMEOUT_SECONDS";
+
+    /**
+     * Environment variable turning on the adaptive concurrency limit of the
+     * runtime (see runtime.admission).
+     */
+    public static final String ADMISSION = "RUNTIME_ADMISSION";
+
+    /**
+     * Longest container stop timeout Fargate accepts.
+     */
+    static final Duration MAX_DRAIN_TIME = Duration.seconds(120);
+
+    /**
+     * Seconds of the stop timeout kept for the runtime to close its
+     * listeners and flush its log once the in-flight timeout is over.
+     */
+    static final int STOP_MARGIN_SECONDS = 5;
+
+    /**
+     * Shortest drain time leaving at least one second each to the drain
+     * window and the in-flight timeout.
+     */
+    static final Duration MIN_DRAIN_TIME = Duration.seconds(STOP_MARGIN_SECONDS + 2);
+
+    private final HealthCheck healthCheck;
+    private final Duration drainTime;
+    private final LatencyCheck latencyCheck;
+    private final RollbackAlarms rollbackAlarms;
+    private final Scaling scaling;
+    private final Sizing sizing;
+    private final Architecture architecture;
+    private final LoadBalancing loadBalancing;
+    private final EdgeCache edgeCache;
+    private final boolean loadShedding;
+
+    private ServiceOptions(Builder builder) {
+        this.healthCheck = withDefaults(builder.healthCheck);
+        this.drainTime = builder.drainTime != null ? builder.drainTime : Duration.seconds(30);
+        this.latencyCheck = builder.latencyCheck;
+        this.rollbackAlarms = builder.rollbackAlarms != null ? builder.rollbackAlarms : RollbackAlarms.defaults();
+        this.scaling = builder.scaling != null ? builder.scaling : Scaling.defaults();
+        this.sizing = builder.sizing != null ? builder.sizing : Sizing.defaults();
+        this.architecture = builder.architecture != null ? builder.architecture : Architecture.X86_64;
+        this.loadBalancing = builder.loadBalancing != null ? builder.loadBalancing : LoadBalancing.defaults();
+        this.edgeCache = builder.edgeCache;
+        this.loadShedding = builder.loadShedding;
+        if (drainTime.toSeconds().doubleValue() > MAX_DRAIN_TIME.toSeconds().doubleValue()) {
+            throw new IllegalArgumentException("drainTime must not exceed " + MAX_DRAIN_TIME.toSeconds()
+                    + " seconds, was " + drainTime.toSeconds());
+        }
+        if (drainTime.toSeconds().doubleValue() < MIN_DRAIN_TIME.toSeconds().doubleValue()) {
+            throw new IllegalArgumentException("drainTime must cover the runtime drain window and in-flight timeout"
+                    + " and be at least " + MIN_DRAIN_TIME.toSeconds() + " seconds, was " + drainTime.toSeconds());
+        }
+    }
+
+    /**
+     * @return the options used when a stage sets none
+     */
+    public static ServiceOptions defaults() {
+        return builder().build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return health check of the blue and green target groups. The load
+     * balancer checks the readiness endpoint of the runtime, which only
+     * answers 200 once the task has warmed up.
+     */
+    public HealthCheck getHealthCheck() {
+        return healthCheck;
+    }
+
+    /**
+     * @return time a task gets to finish its requests when it stops. Used as
+     * the target group deregistration delay and as the container stop
+     * timeout. The drain window and in-flight timeout of the runtime are
+     * derived from it, so the task always stops before it is killed.
+     */
+    public Duration getDrainTime() {
+        return drainTime;
+    }
+
+    /**
+     * @return seconds the runtime keeps serving after SIGTERM while it
+     * reports not ready: two fifths of the drain time left after the stop
+     * margin, 10 of the default 30
+     */
+    public int getDrainSeconds() {
+        return Math.max(1, (drainTime.toSeconds().intValue() - STOP_MARGIN_SECONDS) * 2 / 5);
+    }
+
+    /**
+     * @return seconds the runtime waits for in-flight requests once its
+     * listeners are closed: the rest of the drain time, 15 of the default
+     * 30
+     */
+    public int getDrainTimeoutSeconds() {
+        return drainTime.toSeconds().intValue() - STOP_MARGIN_SECONDS - getDrainSeconds();
+    }
+
+    /**
+     * @return the blue/green latency comparison run before production
+     * traffic moves to green, or null when the stage does not run one
+     */
+    public LatencyCheck getLatencyCheck() {
+        return latencyCheck;
+    }
+
+    /**
+     * @return thresholds of the alarms that roll a deployment back
+     */
+    public RollbackAlarms getRollbackAlarms() {
+        return rollbackAlarms;
+    }
+
+    /**
+     * @return capacity range and scaling policies of the service
+     */
+    public Scaling getScaling() {
+        return scaling;
+    }
+
+    /**
+     * @return task and container sizes, and the JVM options derived from them
+     */
+    public Sizing getSizing() {
+        return sizing;
+    }
+
+    /**
+     * @return CPU architecture of the tasks and their images
+     */
+    public Architecture getArchitecture() {
+        return architecture;
+    }
+
+    /**
+     * @return routing algorithm, slow start and idle timeout of the load
+     * balancer
+     */
+    public LoadBalancing getLoadBalancing() {
+        return loadBalancing;
+    }
+
+    /**
+     * @return the CloudFront distribution in front of the load balancer, or
+     * null when clients reach the load balancer directly
+     */
+    public EdgeCache getEdgeCache() {
+        return edgeCache;
+    }
+
+    /**
+     * @return whether the runtime answers requests over its adaptive
+     * concurrency limit with a 503. Shed requests count towards the 5xx
+     * rollback alarm like any other 503.
+     */
+    public boolean isLoadShedding() {
+        return loadShedding;
+    }
+
+    private static HealthCheck withDefaults(HealthCheck custom) {
+
+        final HealthCheck check = custom != null ? custom : HealthCheck.builder().build();
+        return HealthCheck.builder()
+                .enabled(Boolean.TRUE)
+                .path(check.getPath() != null ? check.getPath() : HEALTH_CHECK_PATH)
+                .healthyHttpCodes(check.getHealthyHttpCodes() != null ? check.getHealthyHttpCodes() : "200")
+                .interval(check.getInterval() != null ? check.getInterval() : Duration.seconds(10))
+                .timeout(check.getTimeout() != null ? check.getTimeout() : Duration.seconds(5))
+                .healthyThresholdCount(
+                        check.getHealthyThresholdCount() != null ? check.getHealthyThresholdCount() : 2)
+                .unhealthyThresholdCount(
+                        check.getUnhealthyThresholdCount() != null ? check.getUnhealthyThresholdCount() : 2)
+                .build();
+    }
+
+    public static final class Builder {
+
+        private HealthCheck healthCheck;
+        private Duration drainTime;
+        private LatencyCheck latencyCheck;
+        private RollbackAlarms rollbackAlarms;
+        private Scaling scaling;
+        private Sizing sizing;
+        private Architecture architecture;
+        private LoadBalancing loadBalancing;
+        private EdgeCache edgeCache;
+        private boolean loadShedding = false;
+
+        private Builder() {}
+
+        /**
+         * Unset fields keep their defaults: path /health/ready, interval
+         * 10s, timeout 5s, 2 checks to become healthy or unhealthy.
+         */
+        public Builder healthCheck(HealthCheck healthCheck) {
+            this.healthCheck = healthCheck;
+            return this;
+        }
+
+        /**
+         * Defaults to 30 seconds, at least 7 and at most 120.
+         */
+        public Builder drainTime(Duration drainTime) {
+            this.drainTime = drainTime;
+            return this;
+        }
+
+        /**
+         * Compares green against blue before shifting production traffic.
+         * Off by default.
+         */
+        public Builder latencyCheck(LatencyCheck latencyCheck) {
+            this.latencyCheck = latencyCheck;
+            return this;
+        }
+
+        /**
+         * Defaults to {@link RollbackAlarms#defaults()}.
+         */
+        public Builder rollbackAlarms(RollbackAlarms rollbackAlarms) {
+            this.rollbackAlarms = rollbackAlarms;
+            return this;
+        }
+
+        /**
+         * Defaults to {@link Scaling#defaults()}: 2 to 10 tasks tracking
+         * 1000 requests per task per minute and 70% CPU.
+         */
+        public Builder scaling(Scaling scaling) {
+            this.scaling = scaling;
+            return this;
+        }
+
+        /**
+         * Defaults to {@link Sizing#defaults()}: 1 vCPU and 2 GiB.
+         */
+        public Builder sizing(Sizing sizing) {
+            this.sizing = sizing;
+            return this;
+        }
+
+        /**
+         * Defaults to X86_64.
+         */
+        public Builder architecture(Architecture architecture) {
+            this.architecture = architecture;
+            return this;
+        }
+
+        /**
+         * Defaults to {@link LoadBalancing#defaults()}: round robin, no slow
+         * start, 60 seconds idle timeout.
+         */
+        public Builder loadBalancing(LoadBalancing loadBalancing) {
+            this.loadBalancing = loadBalancing;
+            return this;
+        }
+
+        /**
+         * Puts a CloudFront distribution in front of the production
+         * listener. Off by default.
+         */
+        public Builder edgeCache(EdgeCache edgeCache) {
+            this.edgeCache = edgeCache;
+            return this;
+        }
+
+        /**
+         * Defaults to false. A canary shedding load during a latency spike
+         * answers 503s, which the 5xx rollback alarm counts; stages turning
+         * it on should raise {@link RollbackAlarms.Builder#max5xx(int)}
+         * above the rejections they accept.
+         */
+        public Builder loadShedding(boolean loadShedding) {
+            this.loadShedding = loadShedding;
+            return this;
+        }
+
+        public ServiceOptions build() {
+            return new ServiceOptions(this);
+        }
+    }
+}
@@ -0,0 +1,340 @@
+/* (C)2023 */
+package com.example.demo.components.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Sizing profile of the service: the Fargate task CPU and memory, the
+ * container memory limit and reservation, and the JVM options that make the
+ * runtime fit inside that limit. It is the only place these numbers are set:
+ * the task definition and the JVM read them from here, and the CodeDeploy
+ * taskdef.json is rendered from that task definition.
+ *
+ * The heap is what is left of the container limit once the JVM's native
+ * memory is budgeted: metaspace, code cache, direct buffers (Grizzly and the
+ * static asset handler), thread stacks, a fixed allowance for the JVM itself
+ * and the GC's own data structures, which grow with the heap. The JVM options
+ * cap each of those areas, so the estimate is an upper bound.
+ *
+ * <pre>
+ * ServiceOptions.builder().sizing(Sizing.builder().cpu(2048).memoryMiB(4096).build()).build();
+ * </pre>
+ */
+public final class Sizing {
+
+    /**
+     * Environment variable the runtime image passes to java.
+     */
+    public static final String JAVA_OPTS = "JAVA_OPTS";
+
+    /**
+     * Heaps from this size up use generational ZGC, whose pauses do not grow
+     * with the heap.
+     */
+    static final int ZGC_MIN_HEAP_MIB = 8192;
+
+    static final int MIN_HEAP_MIB = 128;
+    static final int THREAD_STACK_KIB = 512;
+    static final int MAX_THREADS = 128;
+    static final int JVM_OVERHEAD_MIB = 48;
+
+    private static final int[] FARGATE_CPU = {256, 512, 1024, 2048, 4096, 8192, 16384};
+
+    private final int cpu;
+    private final int memoryMiB;
+    private final int containerMemoryMiB;
+    private final int containerMemoryReservationMiB;
+
+    private Sizing(Builder builder) {
+
+        this.cpu = builder.cpu;
+        this.memoryMiB = builder.memoryMiB;
+        this.containerMemoryMiB = builder.containerMemoryMiB > 0 ? builder.containerMemoryMiB : memoryMiB;
+        this.containerMemoryReservationMiB = builder.containerMemoryReservationMiB > 0
+                ? builder.containerMemoryReservationMiB
+                : containerMemoryMiB;
+        if (Arrays.stream(FARGATE_CPU).noneMatch(value -> value == cpu)) {
+            throw new IllegalArgumentException("cpu must be one of " + Arrays.toString(FARGATE_CPU) + ", was " + cpu);
+        }
+        if (cpu == 256 && memoryMiB != 512 && memoryMiB != 1024 && memoryMiB != 2048) {
+            throw new IllegalArgumentException("memory for 256 cpu must be 512, 1024 or 2048 MiB, was " + memoryMiB);
+        }
+        if (memoryMiB < minMemoryMiB(cpu)
+                || memoryMiB > maxMemoryMiB(cpu)
+                || memoryMiB % memoryStepMiB(cpu) != 0) {
+            throw new IllegalArgumentException(String.format(
+                    "memory for %d cpu must be between %d and %d MiB in steps of %d, was %d",
+                    cpu, minMemoryMiB(cpu), maxMemoryMiB(cpu), memoryStepMiB(cpu), memoryMiB));
+        }
+        if (containerMemoryMiB > memoryMiB || containerMemoryReservationMiB > containerMemoryMiB) {
+            throw new IllegalArgumentException("container memory must satisfy reservation <= limit <= task memory");
+        }
+        if (getHeapMiB() < MIN_HEAP_MIB) {
+            throw new IllegalArgumentException("container memory " + containerMemoryMiB
+                    + " MiB leaves less than " + MIN_HEAP_MIB + " MiB of heap");
+        }
+    }
+
+    /**
+     * @return the profile used when a stage sets none: 1 vCPU, 2 GiB, all of
+     * it for the container
+     */
+    public static Sizing defaults() {
+        return builder().build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return task CPU units, 1024 per vCPU
+     */
+    public int getCpu() {
+        return cpu;
+    }
+
+    public int getMemoryMiB() {
+        return memoryMiB;
+    }
+
+    public int getContainerMemoryMiB() {
+        return containerMemoryMiB;
+    }
+
+    public int getContainerMemoryReservationMiB() {
+        return containerMemoryReservationMiB;
+    }
+
+    /**
+     * @return processors the JVM sizes its thread pools for, one per vCPU
+     */
+    public int getProcessors() {
+        return Math.max(1, cpu / 1024);
+    }
+
+    public int getMetaspaceMiB() {
+        return containerMemoryMiB <= 1024 ? 96 : 192;
+    }
+
+    public int getCodeCacheMiB() {
+        return containerMemoryMiB <= 1024 ? 48 : 96;
+    }
+
+    public int getDirectMemoryMiB() {
+        return Math.min(256, Math.max(32, containerMemoryMiB / 16));
+    }
+
+    public int getThreadStacksMiB() {
+        return MAX_THREADS * THREAD_STACK_KIB / 1024;
+    }
+
+    /**
+     * @return the garbage collector option for the heap and processors: the
+     * serial collector on a single vCPU, where concurrent GC threads would
+     * compete with the application, generational ZGC for large heaps and G1
+     * otherwise
+     */
+    public String getCollector() {
+
+        if (getProcessors() < 2) {
+            return "-XX:+UseSerialGC";
+        }
+        return heapBeforeCollector(10) >= ZGC_MIN_HEAP_MIB ? "-XX:+UseZGC -XX:+ZGenerational" : "-XX:+UseG1GC";
+    }
+
+    /**
+     * @return memory the collector needs outside the heap, as a percentage of
+     * the heap
+     */
+    int getCollectorOverheadPercent() {
+
+        final String collector = getCollector();
+        if (collector.contains("Serial")) return 2;
+        if (collector.contains("ZGC")) return 10;
+        return 8;
+    }
+
+    public int getHeapMiB() {
+        return heapBeforeCollector(getCollectorOverheadPercent());
+    }
+
+    private int heapBeforeCollector(int overheadPercent) {
+
+        final int nativeMiB = getMetaspaceMiB()
+                + getCodeCacheMiB()
+                + getDirectMemoryMiB()
+                + getThreadStacksMiB()
+                + JVM_OVERHEAD_MIB;
+        return (containerMemoryMiB - nativeMiB) * 100 / (100 + overheadPercent);
+    }
+
+    /**
+     * @return the largest memory the JVM can use with {@link #getJvmOptions()}:
+     * the heap plus every capped native area
+     */
+    public int getFootprintMiB() {
+
+        final int heap = getHeapMiB();
+        return heap
+                + (heap * getCollectorOverheadPercent() + 99) / 100
+                + getMetaspaceMiB()
+                + getCodeCacheMiB()
+                + getDirectMemoryMiB()
+                + getThreadStacksMiB()
+                + JVM_OVERHEAD_MIB;
+    }
+
+    /**
+     * @return the heap as a percentage of the container limit, rounded down
+     * to a tenth
+     */
+    String getRamPercentage() {
+        return String.format(Locale.ROOT, "%.1f", Math.floor(getHeapMiB() * 1000.0 / containerMemoryMiB) / 10);
+    }
+
+    /**
+     * The heap is given relative to the container limit the JVM detects, so
+     * it follows the limit if the task definition is edited by hand. The
+     * initial heap equals the maximum: the container has the memory anyway,
+     * and the heap never has to grow under load.
+     */
+    public List<String> getJvmOptions() {
+
+        final List<String> options = new ArrayList<>();
+        options.add("-XX:ActiveProcessorCount=" + getProcessors());
+        options.add("-XX:InitialRAMPercentage=" + getRamPercentage());
+        options.add("-XX:MaxRAMPercentage=" + getRamPercentage());
+        options.addAll(Arrays.asList(getCollector().split(" ")));
+        options.add("-XX:MaxMetaspaceSize=" + getMetaspaceMiB() + "m");
+        options.add("-XX:ReservedCodeCacheSize=" + getCodeCacheMiB() + "m");
+        options.add("-XX:MaxDirectMemorySize=" + getDirectMemoryMiB() + "m");
+        options.add("-Xss" + THREAD_STACK_KIB + "k");
+        // a task that ran out of memory is replaced instead of limping on
+        options.add("-XX:+ExitOnOutOfMemoryError");
+        return options;
+    }
+
+    /**
+     * @return the environment of the runtime container: the JVM options and
+     * a small number of malloc arenas, which otherwise grow with the threads
+     * and are not capped by any JVM option
+     */
+    public Map<String, String> getEnvironment() {
+
+        final Map<String, String> env = new LinkedHashMap<>();
+        env.put(JAVA_OPTS, String.join(" ", getJvmOptions()));
+        env.put("MALLOC_ARENA_MAX", "2");
+        return env;
+    }
+
+    private static int minMemoryMiB(int cpu) {
+        switch (cpu) {
+            case 256:
+                return 512;
+            case 512:
+                return 1024;
+            case 1024:
+                return 2048;
+            case 2048:
+                return 4096;
+            case 4096:
+                return 8192;
+            case 8192:
+                return 16384;
+            default:
+                return 32768;
+        }
+    }
+
+    private static int maxMemoryMiB(int cpu) {
+        switch (cpu) {
+            case 256:
+                return 2048;
+            case 512:
+                return 4096;
+            case 1024:
+                return 8192;
+            case 2048:
+                return 16384;
+            case 4096:
+                return 30720;
+            case 8192:
+                return 61440;
+            default:
+                return 122880;
+        }
+    }
+
+    /**
+     * @return the increment Fargate allows between the smallest and the
+     * largest memory for the CPU; 256 CPU is further limited to 512, 1024
+     * and 2048
+     */
+    private static int memoryStepMiB(int cpu) {
+        switch (cpu) {
+            case 256:
+                return 512;
+            case 8192:
+                return 4096;
+            case 16384:
+                return 8192;
+            default:
+                return 1024;
+        }
+    }
+
+    public static final class Builder {
+
+        private int cpu = 1024;
+        private int memoryMiB = 2048;
+        private int containerMemoryMiB = 0;
+        private int containerMemoryReservationMiB = 0;
+
+        private Builder() {}
+
+        /**
+         * Task CPU units, 1024 by default. Fargate accepts 256, 512, 1024,
+         * 2048, 4096, 8192 and 16384.
+         */
+        public Builder cpu(int cpu) {
+            this.cpu = cpu;
+            return this;
+        }
+
+        /**
+         * Task memory, 2048 MiB by default. Fargate allows 512, 1024 or 2048
+         * MiB for 256 CPU; for larger CPUs, memory between a minimum and a
+         * maximum in steps of 1024 MiB, 4096 for 8192 CPU and 8192 for 16384.
+         */
+        public Builder memoryMiB(int memoryMiB) {
+            this.memoryMiB = memoryMiB;
+            return this;
+        }
+
+        /**
+         * Hard limit of the container, the task memory by default.
+         */
+        public Builder containerMemoryMiB(int containerMemoryMiB) {
+            this.containerMemoryMiB = containerMemoryMiB;
+            return this;
+        }
+
+        /**
+         * Soft limit of the container, the hard limit by default.
+         */
+        public Builder containerMemoryReservationMiB(int containerMemoryReservationMiB) {
+            this.containerMemoryReservationMiB = containerMemoryReservationMiB;
+            return this;
+        }
+
+        public Sizing build() {
+            return new Sizing(this);
+        }
+    }
+}
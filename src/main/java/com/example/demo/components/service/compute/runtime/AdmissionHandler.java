@@ -0,0 +1,157 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+import org.glassfish.grizzly.http.util.HttpStatus;
+
+/**
+ * Grizzly handler that admits requests up to an adaptive
+ * {@link ConcurrencyLimit} and answers the rest with a 503 right away, so
+ * an overloaded task sheds load instead of queueing it until latency
+ * collapses. Off unless runtime.admission is true, which the Service stack
+ * sets for stages with load shedding.
+ *
+ * Requests over the limit may wait up to runtime.admission.max.wait.millis
+ * for a slot; by default they do not wait. A waiting request parks its
+ * worker thread in 100 microsecond steps, and that thread cannot serve the
+ * requests in flight meanwhile, so a long wait takes capacity away from
+ * the work that would free a slot. Keep it to a few milliseconds.
+ *
+ * /metrics and the health checks run in their own lane outside the limit,
+ * so monitoring and the load balancer still get answers when the task is
+ * overloaded. The limit and rejections are reported by {@link Metrics},
+ * and with a max wait the time requests over the limit spent retrying.
+ * That histogram starts once a request fails its first attempt, so it shows
+ * the retry wait, not time queued before the handler.
+ */
+final class AdmissionHandler extends HttpHandler {
+
+    /**
+     * When true, requests go through the handler; off by default.
+     */
+    static final String ENABLED = "runtime.admission";
+    static final String INITIAL_LIMIT = "runtime.admission.initial.limit";
+    static final String MIN_LIMIT = "runtime.admission.min.limit";
+    static final String MAX_LIMIT = "runtime.admission.max.limit";
+    static final String MAX_WAIT_MILLIS = "runtime.admission.max.wait.millis";
+
+    private static final byte[] OVERLOADED = "OVERLOADED".getBytes(StandardCharsets.US_ASCII);
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final HttpHandler next;
+    private final ConcurrencyLimit limit;
+    private final long maxWaitNanos;
+    private final LongAdder rejected = new LongAdder();
+    private final BucketHistogram retryWait = new BucketHistogram(Metrics.LATENCY_BOUNDS_NANOS, 1e9);
+
+    AdmissionHandler(HttpHandler next, ConcurrencyLimit limit, long maxWaitMillis) {
+        this.next = next;
+        this.limit = limit;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
+    static AdmissionHandler fromConfig(HttpHandler next) {
+
+        final AdmissionHandler handler = new AdmissionHandler(
+                next,
+                new ConcurrencyLimit(
+                        RuntimeConfig.getInt(INITIAL_LIMIT, 64),
+                        RuntimeConfig.getInt(MIN_LIMIT, 8),
+                        RuntimeConfig.getInt(MAX_LIMIT, 1024)),
+                RuntimeConfig.getInt(MAX_WAIT_MILLIS, 0));
+        Log.info("Admission: adaptive concurrency limit=" + handler.limit.getLimit() + ", max wait="
+                + TimeUnit.NANOSECONDS.toMillis(handler.maxWaitNanos) + "ms");
+        return handler;
+    }
+
+    @Override
+    public void service(Request request, Response response) throws Exception {
+
+        if (isPriority(request.getRequestURI())) {
+            next.service(request, response);
+            return;
+        }
+
+        if (!limit.tryAcquire() && !retry()) {
+            rejected.increment();
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE_503);
+            response.setHeader("Retry-After", "1");
+            response.setHeader("Cache-Control", "no-store");
+            response.setContentType("text/plain");
+            response.setContentLength(OVERLOADED.length);
+            response.getOutputStream().write(OVERLOADED);
+            return;
+        }
+        final long admitted = System.nanoTime();
+        // runs once the response is complete, also for suspended requests
+        request.addAfterServiceListener(done -> {
+            final long now = System.nanoTime();
+            limit.release(now - admitted, now);
+        });
+        next.service(request, response);
+    }
+
+    /**
+     * Retries a request over the limit until it gets a slot or the max
+     * wait is over, and records how long it retried either way.
+     */
+    private boolean retry() {
+
+        if (maxWaitNanos <= 0) {
+            return false;
+        }
+        final long start = System.nanoTime();
+        boolean acquired = false;
+        long now = start;
+        while (!acquired && now - start < maxWaitNanos) {
+            LockSupport.parkNanos(PARK_NANOS);
+            acquired = limit.tryAcquire();
+            now = System.nanoTime();
+        }
+        retryWait.record(now - start);
+        return acquired;
+    }
+
+    private static boolean isPriority(String path) {
+        return path.startsWith("/health/") || "/metrics".equals(path);
+    }
+
+    int getLimit() {
+        return limit.getLimit();
+    }
+
+    int getInFlight() {
+        return limit.getInFlight();
+    }
+
+    long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return true when requests over the limit retry before a 503
+     */
+    boolean isRetrying() {
+        return maxWaitNanos > 0;
+    }
+
+    BucketHistogram getRetryWait() {
+        return retryWait;
+    }
+
+    @Override
+    public void start() {
+        next.start();
+    }
+
+    @Override
+    public void destroy() {
+        next.destroy();
+    }
+}
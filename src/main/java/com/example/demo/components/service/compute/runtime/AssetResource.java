@@ -0,0 +1,34 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Serves the fingerprinted assets referenced by the pages as /assets/name.
+ */
+@Path("assets/{name}")
+public class AssetResource {
+
+    @GET
+    public Response asset(
+            @PathParam("name") String name,
+            @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding,
+            @Context Request request) {
+
+        final PrecompressedPage asset = StaticAssets.get(name);
+        if (asset == null) {
+            throw new NotFoundException();
+        }
+        return PageResponses.of(asset, acceptEncoding, request, StaticAssets.CACHE_IMMUTABLE)
+                .type(StaticAssets.contentType(name))
+                .build();
+    }
+}
@@ -0,0 +1,76 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import jakarta.inject.Singleton;
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Worked example of a resource that calls a slow downstream service. The
+ * call is simulated by a timer that completes after delay milliseconds,
+ * like a non-blocking HTTP client would.
+ *
+ * GET /async returns a CompletionStage and GET /async/suspended resumes an
+ * AsyncResponse; neither holds a Grizzly worker while waiting. GET
+ * /async/blocking sleeps on the worker instead, for comparison (see
+ * com.example.demo.toolchain.loadtest.AsyncLoadTest).
+ */
+@Singleton
+@Path("async")
+@Produces(MediaType.TEXT_PLAIN)
+public class AsyncExampleResource {
+
+    static final int MAX_DELAY_MILLIS = 10000;
+
+    @GET
+    public CompletionStage<Response> async(@QueryParam("delay") @DefaultValue("100") int delay) {
+
+        final AsyncExecutor async = AsyncExecutor.get();
+        return async.resume(downstream(delay).thenApplyAsync(AsyncExampleResource::render, async.executor()));
+    }
+
+    @GET
+    @Path("suspended")
+    public void suspended(@QueryParam("delay") @DefaultValue("100") int delay, @Suspended AsyncResponse response) {
+
+        final AsyncExecutor async = AsyncExecutor.get();
+        async.resume(response, downstream(delay).thenApplyAsync(AsyncExampleResource::render, async.executor()));
+    }
+
+    @GET
+    @Path("blocking")
+    public String blocking(@QueryParam("delay") @DefaultValue("100") int delay) throws InterruptedException {
+
+        Thread.sleep(clamp(delay));
+        return render(clamp(delay));
+    }
+
+    /**
+     * @return a stage completed with the delay once it has elapsed
+     */
+    private static CompletionStage<Integer> downstream(int delay) {
+
+        final int millis = clamp(delay);
+        final CompletableFuture<Integer> call = new CompletableFuture<>();
+        AsyncExecutor.get().scheduler().schedule(() -> call.complete(millis), millis, TimeUnit.MILLISECONDS);
+        return call;
+    }
+
+    private static String render(int delay) {
+        return "downstream answered in " + delay + " ms";
+    }
+
+    private static int clamp(int delay) {
+        return Math.max(0, Math.min(delay, MAX_DELAY_MILLIS));
+    }
+}
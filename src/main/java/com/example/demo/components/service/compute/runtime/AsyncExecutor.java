@@ -0,0 +1,198 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.core.Response;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Completes asynchronous requests off the Grizzly workers. A resource
+ * returns the CompletionStage built by {@link #resume(CompletionStage)} or
+ * {@link #supply(Supplier)}, or hands its AsyncResponse to
+ * {@link #resume(AsyncResponse, CompletionStage)}, and the worker is free
+ * while the request waits.
+ *
+ * Work runs on a bounded pool of runtime.async.threads threads with up to
+ * runtime.async.queue tasks waiting. A request that is not complete after
+ * runtime.async.timeout.millis, or whose work is rejected by the full pool,
+ * gets a 503 right away. Suspended requests, timeouts and rejections are
+ * reported by {@link Metrics}.
+ */
+final class AsyncExecutor {
+
+    static final String THREADS = "runtime.async.threads";
+    static final String QUEUE = "runtime.async.queue";
+    static final String TIMEOUT_MILLIS = "runtime.async.timeout.millis";
+
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService scheduler;
+    private final long timeoutMillis;
+    private final AtomicInteger suspended = new AtomicInteger();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    AsyncExecutor(int threads, int queue, long timeoutMillis) {
+
+        this.executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                60,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queue),
+                new WorkerPool.NamedThreadFactory("runtime-async-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        final ScheduledThreadPoolExecutor scheduler =
+                new ScheduledThreadPoolExecutor(1, new WorkerPool.NamedThreadFactory("runtime-async-timer-"));
+        scheduler.setRemoveOnCancelPolicy(true);
+        this.scheduler = scheduler;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    static AsyncExecutor get() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * @return the bounded pool that runs completion work
+     */
+    Executor executor() {
+        return executor;
+    }
+
+    /**
+     * @return a single-thread scheduler for timers. Tasks on it must be
+     * short; longer work belongs on {@link #executor()}.
+     */
+    ScheduledExecutorService scheduler() {
+        return scheduler;
+    }
+
+    long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Runs work on the completion executor and answers with its result.
+     */
+    <T> CompletionStage<Response> supply(Supplier<T> work) {
+
+        final CompletionStage<T> call;
+        try {
+            call = CompletableFuture.supplyAsync(work, executor);
+        } catch (RejectedExecutionException e) {
+            rejections.increment();
+            return CompletableFuture.completedFuture(unavailable());
+        }
+        return resume(call);
+    }
+
+    /**
+     * Answers with the result of a call, or with a 503 when the call does
+     * not complete before the timeout. A result that is a Response is sent
+     * as it is, any other result as the entity of a 200.
+     */
+    CompletionStage<Response> resume(CompletionStage<?> call) {
+
+        final CompletableFuture<Response> result = new CompletableFuture<>();
+        suspended.incrementAndGet();
+        result.whenComplete((response, error) -> suspended.decrementAndGet());
+
+        final ScheduledFuture<?> timeout = scheduler.schedule(
+                () -> {
+                    if (result.complete(unavailable())) timeouts.increment();
+                },
+                timeoutMillis,
+                TimeUnit.MILLISECONDS);
+        call.whenComplete((value, error) -> {
+            timeout.cancel(false);
+            if (error == null) {
+                result.complete(value instanceof Response ? (Response) value : Response.ok(value).build());
+            } else {
+                result.complete(failed(error));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Same as {@link #resume(CompletionStage)} for resources that take an
+     * AsyncResponse.
+     */
+    void resume(AsyncResponse response, CompletionStage<?> call) {
+        resume(call).thenAccept(response::resume);
+    }
+
+    int getSuspended() {
+        return suspended.get();
+    }
+
+    int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    long getRejections() {
+        return rejections.sum();
+    }
+
+    private Response failed(Throwable error) {
+
+        final Throwable cause = error instanceof CompletionException && error.getCause() != null
+                ? error.getCause()
+                : error;
+        if (cause instanceof RejectedExecutionException) {
+            rejections.increment();
+            return unavailable();
+        }
+        if (cause instanceof WebApplicationException) {
+            return ((WebApplicationException) cause).getResponse();
+        }
+        Log.error("AsyncExecutor::Request failed.", cause);
+        return Response.serverError().build();
+    }
+
+    private static Response unavailable() {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header("Retry-After", "1")
+                .header("Cache-Control", "no-store")
+                .build();
+    }
+
+    private static final class Holder {
+
+        private static final AsyncExecutor INSTANCE = create();
+
+        private static AsyncExecutor create() {
+
+            final AsyncExecutor async = new AsyncExecutor(
+                    RuntimeConfig.getInt(THREADS, 32),
+                    RuntimeConfig.getInt(QUEUE, 1024),
+                    RuntimeConfig.getInt(TIMEOUT_MILLIS, 2000));
+            Metrics.get().setAsyncExecutor(async);
+            Log.info("Async executor: threads=" + async.executor.getMaximumPoolSize() + ", queue="
+                    + async.executor.getQueue().remainingCapacity() + ", timeout=" + async.timeoutMillis + "ms");
+            return async;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram with fixed, preallocated buckets. Recording is lock-free: each
+ * bucket is a striped {@link LongAdder}, so concurrent requests rarely touch
+ * the same cache line. Buckets are written in the Prometheus text format,
+ * cumulative and with the +Inf bucket last.
+ */
+final class BucketHistogram {
+
+    private final long[] bounds;
+    private final String[] labels;
+    private final LongAdder[] buckets;
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * @param bounds upper bound of each bucket, in recorded units, ascending
+     * @param scale divisor that converts recorded units into reported units
+     */
+    BucketHistogram(long[] bounds, double scale) {
+
+        this.bounds = bounds.clone();
+        this.labels = new String[bounds.length];
+        this.buckets = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < bounds.length; i++) {
+            labels[i] = format(bounds[i] / scale);
+        }
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    void record(long value) {
+
+        int i = 0;
+        while (i < bounds.length && value > bounds[i]) i++;
+        buckets[i].increment();
+        sum.add(value);
+    }
+
+    long count() {
+        long count = 0;
+        for (LongAdder bucket : buckets) count += bucket.sum();
+        return count;
+    }
+
+    /**
+     * Appends the _bucket, _sum and _count series of this histogram.
+     *
+     * @param labels labels of the series without braces, possibly empty
+     */
+    void write(StringBuilder out, String name, String labels, double scale) {
+
+        final String prefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            cumulative += buckets[i].sum();
+            out.append(name)
+                    .append("_bucket{")
+                    .append(prefix)
+                    .append("le=\"")
+                    .append(i < this.labels.length ? this.labels[i] : "+Inf")
+                    .append("\"} ")
+                    .append(cumulative)
+                    .append('\n');
+        }
+        final String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(braces).append(' ').append(format(sum.sum() / scale)).append('\n');
+        out.append(name).append("_count").append(braces).append(' ').append(cumulative).append('\n');
+    }
+
+    static String format(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15
+                ? Long.toString((long) value)
+                : Double.toString(value);
+    }
+}
@@ -0,0 +1,117 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrency limit that adapts to measured latency, after the gradient
+ * algorithm of Netflix concurrency-limits. Latencies are averaged over
+ * windows of at least 100 ms and 10 requests. At the end of each window:
+ *
+ * the long-term latency moves towards the window average (exponential
+ * average over about 100 windows);
+ *
+ * gradient = tolerance * long-term latency / window latency, kept between
+ * 0.5 and 1, so the limit shrinks as soon as requests queue up and latency
+ * rises above the long-term average;
+ *
+ * new limit = limit * gradient + sqrt(limit), smoothed, so the limit keeps
+ * probing upwards while latency stays flat, but only while the service
+ * actually uses at least half of it.
+ */
+final class ConcurrencyLimit {
+
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double LONG_RTT_ALPHA = 2.0 / 101;
+    private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int WINDOW_SAMPLES = 10;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+
+    // window state, guarded by this
+    private double estimate;
+    private double longRtt = 0;
+    private long windowStart = 0;
+    private long windowRtt = 0;
+    private int windowSamples = 0;
+    private int windowMaxInFlight = 0;
+
+    ConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = minLimit;
+        this.maxLimit = Math.max(minLimit, maxLimit);
+        this.estimate = Math.max(minLimit, Math.min(initialLimit, this.maxLimit));
+        this.limit = (int) estimate;
+    }
+
+    /**
+     * @return true when the request may run. It must then call
+     * {@link #release(long, long)} once complete.
+     */
+    boolean tryAcquire() {
+
+        for (int current; (current = inFlight.get()) < limit; ) {
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param rttNanos time the request took once admitted
+     * @param now current System.nanoTime()
+     */
+    void release(long rttNanos, long now) {
+
+        final int running = inFlight.getAndDecrement();
+        synchronized (this) {
+            if (windowSamples == 0) {
+                windowStart = now;
+            }
+            windowRtt += rttNanos;
+            windowSamples++;
+            windowMaxInFlight = Math.max(windowMaxInFlight, running);
+            if (windowSamples >= WINDOW_SAMPLES && now - windowStart >= WINDOW_NANOS) {
+                update((double) windowRtt / windowSamples, windowMaxInFlight);
+                windowSamples = 0;
+                windowRtt = 0;
+                windowMaxInFlight = 0;
+            }
+        }
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    private void update(double shortRtt, int maxInFlight) {
+
+        if (longRtt == 0) {
+            longRtt = shortRtt;
+        } else {
+            longRtt += LONG_RTT_ALPHA * (shortRtt - longRtt);
+        }
+        // latency dropped for good: let the long-term average catch up
+        if (longRtt / shortRtt > 2) {
+            longRtt *= 0.95;
+        }
+
+        final double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+        if (gradient >= 1.0 && maxInFlight < estimate / 2) {
+            // the limit is not what holds the service back, do not grow it
+            return;
+        }
+        final double next = estimate * gradient + Math.sqrt(estimate);
+        estimate = Math.max(minLimit, Math.min(maxLimit, estimate * (1 - SMOOTHING) + next * SMOOTHING));
+        limit = (int) estimate;
+    }
+}
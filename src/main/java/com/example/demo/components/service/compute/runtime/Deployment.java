@@ -0,0 +1,80 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Identity of the running task, shown on the page so a response tells which
+ * task set served it. Values come from:
+ *
+ * color: runtime.deployment.color, green by default since this runtime is
+ * the green side of the blue/green deployment (blue runs nginx).
+ *
+ * version: runtime.version, otherwise the Implementation-Version of the jar.
+ *
+ * task: runtime.task.id, otherwise the task ID from the ECS task metadata
+ * endpoint, otherwise the host name.
+ */
+final class Deployment {
+
+    static final String COLOR = "runtime.deployment.color";
+    static final String VERSION = "runtime.version";
+    static final String TASK_ID = "runtime.task.id";
+
+    private static final Pattern TASK_ARN = Pattern.compile("\"TaskARN\"\\s*:\\s*\"[^\"]*/([^\"/]+)\"");
+
+    private Deployment() {}
+
+    /**
+     * @return the values of the color, version and task slots of the page
+     */
+    static Map<String, String> slots() {
+
+        final Map<String, String> slots = new HashMap<>();
+        slots.put("color", RuntimeConfig.get(COLOR, "green"));
+        slots.put("version", RuntimeConfig.get(VERSION, version()));
+        slots.put("task", RuntimeConfig.get(TASK_ID, taskId()));
+        return slots;
+    }
+
+    private static String version() {
+
+        final String version = Deployment.class.getPackage().getImplementationVersion();
+        return version != null ? version : "dev";
+    }
+
+    private static String taskId() {
+
+        final String metadata = System.getenv("ECS_CONTAINER_METADATA_URI_V4");
+        if (metadata != null) {
+            try {
+                final HttpURLConnection connection =
+                        (HttpURLConnection) new URL(metadata + "/task").openConnection();
+                connection.setConnectTimeout(500);
+                connection.setReadTimeout(500);
+                try (InputStream in = connection.getInputStream()) {
+                    final Matcher matcher = TASK_ARN.matcher(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                    if (matcher.find()) {
+                        return matcher.group(1);
+                    }
+                }
+            } catch (IOException ioe) {
+                Log.warn("Deployment::Cannot read task metadata. IOException:" + ioe.getMessage());
+            }
+        }
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (IOException ioe) {
+            return "unknown";
+        }
+    }
+}
@@ -1,10 +1,16 @@
 /* (C)2023 */
 package com.example.demo.components.service.compute.runtime;
 
+import jakarta.inject.Singleton;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
@@ -13,14 +19,22 @@ import java.util.stream.Collectors;
 
 /**
  * Example resource returns example.html directly at the root context.
+ * Jersey creates a single instance for the whole application.
+ *
+ * The page is a {@link PageTemplate} whose color, version and task slots
+ * are filled once from {@link Deployment}, so it shows which task set
+ * served it. The result is held as precompressed bytes (see
+ * {@link PrecompressedPage}), so requests only pick an encoding and
+ * validate the ETag. Images are served separately by {@link AssetResource}.
  */
+@Singleton
 @Path("/")
 public class ExampleResource {
 
-    private static String HTML = null;
+    public ExampleResource() {}
 
-    public ExampleResource() {
-        if (ExampleResource.HTML == null) ExampleResource.HTML = getFile(getPathHTML() + "example.html");
+    PrecompressedPage getPage() {
+        return Holder.PAGE;
     }
 
     public String getPathHTML() {
@@ -31,18 +45,21 @@ public class ExampleResource {
     }
 
     /**
-     * Method handling HTTP GET requests. The returned object will be sent
-     * to the client as "text/plain" media type.
+     * Method handling HTTP GET requests. The page is sent to the client as
+     * "text/html" using the best encoding the client accepts. Requests whose
+     * If-None-Match matches the ETag of that encoding get a 304 without body.
      *
-     * @return String that will be returned as a text/plain response.
+     * @return Response holding the cached bytes of the page.
      */
     @GET
     @Produces(MediaType.TEXT_HTML)
-    public String example() {
-        return ExampleResource.HTML;
+    public Response example(
+            @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding, @Context Request request) {
+        return PageResponses.of(Holder.PAGE, acceptEncoding, request, StaticAssets.CACHE_PAGE)
+                .build();
     }
 
-    private String getFile(String filename) {
+    String getFile(String filename) {
 
         try (InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(filename);
                 BufferedReader reader = new BufferedReader(new InputStreamReader(in))) {
@@ -50,12 +67,28 @@ public class ExampleResource {
             final String fileAsText = reader.lines().collect(Collectors.joining());
             return fileAsText;
         } catch (IOException ioe) {
-            System.out.println("ExampleResource::Cannot HTML file " + filename + ". IOException:" + ioe.getMessage());
-            ioe.printStackTrace();
+            Log.error("ExampleResource::Cannot HTML file " + filename + ". IOException:" + ioe.getMessage(), ioe);
             return "";
         }
     }
 
+    /**
+     * Loads the page the first time it is used. The JVM initializes the
+     * holder class once, safely across threads.
+     */
+    private static final class Holder {
+
+        private static final PrecompressedPage PAGE = load();
+
+        private static PrecompressedPage load() {
+
+            final ExampleResource resource = new ExampleResource();
+            final PageTemplate template =
+                    PageTemplate.compile(resource.getFile(resource.getPathHTML() + "example.html"));
+            return PrecompressedPage.of(template.render(Deployment.slots()));
+        }
+    }
+
     public static void main(String args[]) {
 
         ExampleResource e = new ExampleResource();
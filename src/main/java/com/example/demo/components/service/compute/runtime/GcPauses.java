@@ -0,0 +1,84 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Stop-the-world pauses of the collectors, from the notification each
+ * collector MXBean sends at the end of a collection. Collection time as
+ * reported by the MXBeans includes concurrent work; here only the beans
+ * that report pauses count. ZGC and Shenandoah report their concurrent
+ * cycles on separate beans whose names end in Cycles, which are skipped.
+ * Durations have the millisecond resolution of GcInfo.
+ */
+final class GcPauses {
+
+    private final Map<String, LongAdder> pauses = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> millis = new ConcurrentHashMap<>();
+
+    /**
+     * Listens to every collector of the JVM.
+     */
+    void register() {
+
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (!(gc instanceof NotificationEmitter) || !isPause(gc.getName())) {
+                continue;
+            }
+            ((NotificationEmitter) gc)
+                    .addNotificationListener(
+                            (notification, handback) -> record(GarbageCollectionNotificationInfo.from(
+                                    (CompositeData) notification.getUserData())),
+                            notification -> GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(
+                                    notification.getType()),
+                            null);
+        }
+    }
+
+    /**
+     * @return false for the beans of concurrent cycles: ZGC Cycles, ZGC
+     * Minor Cycles, ZGC Major Cycles, Shenandoah Cycles and the single ZGC
+     * bean of Java 11 to 16
+     */
+    static boolean isPause(String collector) {
+        return !collector.endsWith("Cycles") && !"ZGC".equals(collector);
+    }
+
+    void record(GarbageCollectionNotificationInfo info) {
+        record(info.getGcName(), info.getGcInfo().getDuration());
+    }
+
+    void record(String collector, long durationMillis) {
+        pauses.computeIfAbsent(collector, name -> new LongAdder()).increment();
+        millis.computeIfAbsent(collector, name -> new LongAdder()).add(durationMillis);
+    }
+
+    /**
+     * @return pauses so far, by collector
+     */
+    Map<String, Long> getPauses() {
+        return sums(pauses);
+    }
+
+    /**
+     * @return milliseconds paused so far, by collector
+     */
+    Map<String, Long> getMillis() {
+        return sums(millis);
+    }
+
+    private static Map<String, Long> sums(Map<String, LongAdder> adders) {
+
+        final Map<String, Long> sums = new TreeMap<>();
+        adders.forEach((name, adder) -> sums.put(name, adder.sum()));
+        return sums;
+    }
+}
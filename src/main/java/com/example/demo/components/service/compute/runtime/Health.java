@@ -0,0 +1,33 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+/**
+ * State behind the health endpoints served by {@link HealthHandler}.
+ *
+ * The service is live as long as it answers at all. It is ready once it
+ * has served its warm-up requests and until it starts draining, so the load
+ * balancer only routes traffic to tasks that can take it.
+ */
+final class Health {
+
+    private static volatile boolean warmedUp = false;
+    private static volatile boolean draining = false;
+
+    private Health() {}
+
+    static boolean isReady() {
+        return warmedUp && !draining;
+    }
+
+    static boolean isDraining() {
+        return draining;
+    }
+
+    static void warmedUp() {
+        warmedUp = true;
+    }
+
+    static void startDraining() {
+        draining = true;
+    }
+}
@@ -0,0 +1,67 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import java.nio.charset.StandardCharsets;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+import org.glassfish.grizzly.http.util.HttpStatus;
+
+/**
+ * Grizzly handler that answers the health checks before they reach Jersey,
+ * with bodies allocated once. Every other request is handed to the next
+ * handler.
+ *
+ * /health/live answers 200 while the process runs. /health/ready answers
+ * 200 when {@link Health#isReady()} and 503 otherwise.
+ */
+final class HealthHandler extends HttpHandler {
+
+    static final String LIVE = "/health/live";
+    static final String READY = "/health/ready";
+
+    private static final byte[] OK = "OK".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NOT_READY = "NOT READY".getBytes(StandardCharsets.US_ASCII);
+
+    private final HttpHandler next;
+
+    HealthHandler(HttpHandler next) {
+        this.next = next;
+    }
+
+    @Override
+    public void service(Request request, Response response) throws Exception {
+
+        final String path = request.getRequestURI();
+        if (LIVE.equals(path)) {
+            write(response, HttpStatus.OK_200, OK);
+        } else if (READY.equals(path)) {
+            if (Health.isReady()) {
+                write(response, HttpStatus.OK_200, OK);
+            } else {
+                write(response, HttpStatus.SERVICE_UNAVAILABLE_503, NOT_READY);
+            }
+        } else {
+            next.service(request, response);
+        }
+    }
+
+    private static void write(Response response, HttpStatus status, byte[] body) throws Exception {
+
+        response.setStatus(status);
+        response.setHeader("Cache-Control", "no-store");
+        response.setContentType("text/plain");
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    @Override
+    public void start() {
+        next.start();
+    }
+
+    @Override
+    public void destroy() {
+        next.destroy();
+    }
+}
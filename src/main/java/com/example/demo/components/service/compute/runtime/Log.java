@@ -0,0 +1,317 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous logging of the runtime. Callers copy their event into a
+ * preallocated ring buffer and return; a single background thread formats
+ * the events as JSON lines and writes them to stdout. Writing never blocks
+ * the caller: when the ring is full, because stdout backs up, the event is
+ * dropped and counted in log_dropped_total.
+ *
+ * Recording an access log event allocates nothing. Access events are
+ * sampled, one in runtime.access.log.sample, and server errors are always
+ * kept; runtime.access.log=false turns them off. runtime.log.buffer sets the
+ * number of events the ring holds.
+ */
+final class Log {
+
+    static final String ACCESS_LOG = "runtime.access.log";
+    static final String ACCESS_LOG_SAMPLE = "runtime.access.log.sample";
+    static final String BUFFER = "runtime.log.buffer";
+
+    static final String INFO = "INFO";
+    static final String WARN = "WARN";
+    static final String ERROR = "ERROR";
+
+    private static final int MESSAGE = 1;
+    private static final int ACCESS = 2;
+
+    private final Entry[] ring;
+    private final int mask;
+    private final boolean accessLog;
+    private final int sampleEvery;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private volatile long flushed = 0;
+    private final LongAdder dropped = new LongAdder();
+    private final OutputStream out;
+    private final Thread writer;
+
+    /**
+     * @param capacity events the ring holds, rounded up to a power of two
+     * @param sampleEvery keep one access event in this many, 0 for none
+     */
+    Log(int capacity, OutputStream out, int sampleEvery) {
+
+        final int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.ring = new Entry[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Entry();
+        }
+        this.mask = size - 1;
+        this.accessLog = sampleEvery > 0;
+        this.sampleEvery = Math.max(1, sampleEvery);
+        this.out = out;
+        this.writer = new Thread(this::drain, "runtime-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    static void info(String message) {
+        Holder.LOG.message(INFO, message, null);
+    }
+
+    static void warn(String message) {
+        Holder.LOG.message(WARN, message, null);
+    }
+
+    static void error(String message, Throwable error) {
+        Holder.LOG.message(ERROR, message, error);
+    }
+
+    static void access(String method, String path, int status, long bytes, long nanos) {
+        Holder.LOG.record(method, path, status, bytes, nanos);
+    }
+
+    /**
+     * Waits up to a second for the events logged so far to be written.
+     */
+    static void flush() {
+        Holder.LOG.await(TimeUnit.SECONDS.toNanos(1));
+    }
+
+    static long getDropped() {
+        return Holder.LOG.getDroppedEvents();
+    }
+
+    /**
+     * @return events dropped because the ring was full
+     */
+    long getDroppedEvents() {
+        return dropped.sum();
+    }
+
+    void message(String level, String text, Throwable error) {
+
+        final long sequence = claim();
+        if (sequence < 0) return;
+        final Entry entry = ring[(int) sequence & mask];
+        entry.type = MESSAGE;
+        entry.time = System.currentTimeMillis();
+        entry.level = level;
+        entry.text = text;
+        entry.error = error;
+        entry.ready = sequence + 1;
+    }
+
+    void record(String method, String path, int status, long bytes, long nanos) {
+
+        if (!accessLog
+                || (status < 500 && sampleEvery > 1 && ThreadLocalRandom.current().nextInt(sampleEvery) != 0)) {
+            return;
+        }
+        final long sequence = claim();
+        if (sequence < 0) return;
+        final Entry entry = ring[(int) sequence & mask];
+        entry.type = ACCESS;
+        entry.time = System.currentTimeMillis();
+        entry.method = method;
+        entry.text = path;
+        entry.status = status;
+        entry.bytes = bytes;
+        entry.nanos = nanos;
+        entry.ready = sequence + 1;
+    }
+
+    /**
+     * Waits until the events claimed so far are written and flushed, or the
+     * timeout elapses.
+     */
+    void await(long timeoutNanos) {
+
+        final long target = claimed.get();
+        final long deadline = System.nanoTime() + timeoutNanos;
+        while (flushed < target && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * @return the sequence of a free slot, or -1 when the ring is full
+     */
+    private long claim() {
+
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - written.get() >= ring.length) {
+                dropped.increment();
+                return -1;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        return sequence;
+    }
+
+    private void drain() {
+
+        final StringBuilder line = new StringBuilder(512);
+        long next = 0;
+        boolean pending = false;
+        while (true) {
+            final Entry entry = ring[(int) next & mask];
+            if (entry.ready != next + 1) {
+                if (pending && flushOut()) {
+                    pending = false;
+                    flushed = next;
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                continue;
+            }
+            line.setLength(0);
+            try {
+                format(entry, line);
+            } catch (RuntimeException e) {
+                // such as a Throwable whose printStackTrace throws; the
+                // writer is the only one, so it reports the event and goes on
+                line.setLength(0);
+                unformattable(entry, e, line);
+            } finally {
+                entry.clear();
+                written.lazySet(++next);
+            }
+            try {
+                out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+                pending = true;
+            } catch (IOException ignored) {
+                // stdout is gone, nothing left to report to
+            }
+        }
+    }
+
+    private boolean flushOut() {
+        try {
+            out.flush();
+            return true;
+        } catch (IOException ignored) {
+            return false;
+        }
+    }
+
+    private static void format(Entry entry, StringBuilder line) {
+
+        line.append("{\"time\":\"").append(Instant.ofEpochMilli(entry.time)).append('"');
+        if (entry.type == ACCESS) {
+            line.append(",\"type\":\"access\",\"method\":\"").append(entry.method).append("\",\"path\":");
+            quote(line, entry.text);
+            line.append(",\"status\":")
+                    .append(entry.status)
+                    .append(",\"bytes\":")
+                    .append(entry.bytes)
+                    .append(",\"latency_ms\":")
+                    .append(entry.nanos / 1000 / 1000.0);
+        } else {
+            line.append(",\"type\":\"app\",\"level\":\"").append(entry.level).append("\",\"message\":");
+            quote(line, entry.text);
+            if (entry.error != null) {
+                final StringWriter trace = new StringWriter();
+                entry.error.printStackTrace(new PrintWriter(trace));
+                line.append(",\"error\":");
+                quote(line, trace.toString());
+            }
+        }
+        line.append("}\n");
+    }
+
+    private static void unformattable(Entry entry, RuntimeException error, StringBuilder line) {
+
+        line.append("{\"time\":\"")
+                .append(Instant.ofEpochMilli(entry.time))
+                .append("\",\"type\":\"app\",\"level\":\"ERROR\",\"message\":");
+        quote(line, "Log event could not be formatted: " + error.getClass().getName());
+        line.append("}\n");
+    }
+
+    private static void quote(StringBuilder line, String value) {
+
+        line.append('"');
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    line.append('\\').append(c);
+                } else if (c == '\n') {
+                    line.append("\\n");
+                } else if (c == '\t') {
+                    line.append("\\t");
+                } else if (c < 0x20) {
+                    line.append(String.format("\\u%04x", (int) c));
+                } else {
+                    line.append(c);
+                }
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * Slot of the ring. Fields are written by the thread that claimed the
+     * slot and published to the writer by the volatile write of ready.
+     */
+    private static final class Entry {
+
+        private volatile long ready;
+        private int type;
+        private long time;
+        private String level;
+        private String text;
+        private Throwable error;
+        private String method;
+        private int status;
+        private long bytes;
+        private long nanos;
+
+        private void clear() {
+            level = null;
+            text = null;
+            error = null;
+            method = null;
+        }
+    }
+
+    private static final class Holder {
+
+        private static final Log LOG = new Log(
+                parse(RuntimeConfig.get(BUFFER, null), 8192),
+                new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 64 * 1024),
+                RuntimeConfig.getBoolean(ACCESS_LOG, true)
+                        ? parse(RuntimeConfig.get(ACCESS_LOG_SAMPLE, null), 1)
+                        : 0);
+
+        /**
+         * Parsed here rather than with RuntimeConfig.getInt, which logs
+         * invalid values and would need the log before it exists.
+         */
+        private static int parse(String value, int defaultValue) {
+            try {
+                return value == null ? defaultValue : Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+    }
+}
@@ -2,12 +2,24 @@
 package com.example.demo.components.service.compute.runtime;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.InetAddress;
 import java.net.URI;
 import java.net.UnknownHostException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.glassfish.grizzly.http.server.HttpHandler;
 import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.http2.Http2AddOn;
+import org.glassfish.grizzly.http2.Http2Configuration;
+import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpContainer;
 import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.server.ContainerFactory;
 import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.server.ServerProperties;
 
 /**
  * Jersey Example microservice implemented using a Grizzly HTTP server.
@@ -16,37 +28,156 @@ import org.glassfish.jersey.server.ResourceConfig;
  */
 public class Main {
 
+    /**
+     * When true, static assets are served by {@link StaticAssetHandler}
+     * and Jersey only handles dynamic routes.
+     */
+    static final String STATIC_HANDLER = "runtime.static.handler";
+
+    /**
+     * When true, the listener also speaks HTTP/2 over cleartext (h2c), both
+     * through the HTTP/1.1 Upgrade header and with prior knowledge.
+     */
+    static final String HTTP2 = "runtime.http2";
+
+    static final String HTTP2_MAX_STREAMS = "runtime.http2.max.streams";
+
+    /**
+     * Seconds an idle connection is kept open. The load balancer closes idle
+     * connections after 60 seconds by default; the server must wait longer,
+     * otherwise the load balancer may send a request on a connection the
+     * server has just closed and answer the client with a 502. The Service
+     * stack sets it from the idle timeout of its load balancer.
+     */
+    static final String KEEPALIVE_IDLE_SECONDS = "runtime.keepalive.idle.seconds";
+
+    /**
+     * Idle timeout when the setting is absent: the default idle timeout of
+     * the load balancer plus the margin the Service stack adds.
+     */
+    static final int DEFAULT_KEEPALIVE_IDLE_SECONDS = 75;
+
+    /**
+     * Requests served on a connection before the server closes it, -1 for
+     * no limit.
+     */
+    static final String KEEPALIVE_MAX_REQUESTS = "runtime.keepalive.max.requests";
+
+    /**
+     * Requests for the page served at startup before the service reports
+     * ready.
+     */
+    static final String WARMUP_REQUESTS = "runtime.warmup.requests";
+
+    /**
+     * How the service stops on SIGTERM: graceful (default) drains as
+     * described below, immediate drops in-flight requests.
+     */
+    static final String SHUTDOWN = "runtime.shutdown";
+
+    /**
+     * Seconds the service keeps serving after SIGTERM while /health/ready
+     * fails, so the load balancer stops routing to it before it closes its
+     * listeners. The Service stack derives it from ServiceOptions.drainTime.
+     */
+    static final String DRAIN_SECONDS = "runtime.drain.seconds";
+
+    /**
+     * Seconds to wait for in-flight requests once the listeners are closed.
+     * Drain and timeout together must stay below the container stop timeout;
+     * the Service stack derives both from ServiceOptions.drainTime, leaving
+     * a few seconds to close the listeners and flush the log.
+     */
+    static final String DRAIN_TIMEOUT_SECONDS = "runtime.drain.timeout.seconds";
+
+    /**
+     * When true, Jersey finds resources by scanning the classpath. Otherwise
+     * (default) they are registered explicitly, which starts faster.
+     */
+    static final String CLASSPATH_SCAN = "runtime.classpath.scan";
+
+    /**
+     * When true, the service starts, serves its warm-up requests and exits.
+     * The Docker build uses it to record the classes for the AppCDS archive.
+     */
+    static final String TRAINING_RUN = "runtime.training.run";
+
+    private WorkerPool workerPool = null;
+
     public Main() {}
 
     public static void main(String[] args) {
 
         try {
-            System.out.println("Running Java Version: " + System.getProperty("java.version"));
-            System.out.println("\"Example\" Service");
+            Log.info("Running Java Version: " + System.getProperty("java.version"));
+            Log.info("\"Example\" Service");
 
             HttpServer server = (new Main()).startServer();
+            if (RuntimeConfig.getBoolean(TRAINING_RUN, false)) {
+                Log.info("Training run finished.");
+                server.shutdownNow();
+                Log.flush();
+                System.exit(0);
+            }
 
-            System.out.println("Application started.\n"
+            Log.info("Application started.\n"
                     + "Try accessing " + Main.getBaseURI() + " in the browser.\n"
                     + "Hit ^C to stop the application...");
             Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
                 @Override
                 public void run() {
-                    server.shutdownNow();
+                    shutdown(server);
                 }
             }));
 
             Thread.currentThread().join();
 
         } catch (Exception e) {
-            e.printStackTrace();
-            System.out.println("Exception msg:" + e.getMessage());
+            Log.error("Exception msg:" + e.getMessage(), e);
+            Log.flush();
         } catch (Throwable t) {
-            t.printStackTrace();
-            System.out.println("Throwable msg:" + t.getMessage());
+            Log.error("Throwable msg:" + t.getMessage(), t);
+            Log.flush();
         }
     }
 
+    /**
+     * Stops the server. In graceful mode readiness fails first, the server
+     * keeps serving through the drain window, then stops accepting
+     * connections and waits for the requests still in flight.
+     */
+    static void shutdown(HttpServer server) {
+
+        if (!"graceful".equalsIgnoreCase(RuntimeConfig.get(SHUTDOWN, "graceful"))) {
+            Log.info("Shutdown: immediate. In-flight requests aborted: " + Metrics.get().getInFlight());
+            server.shutdownNow();
+            Log.flush();
+            return;
+        }
+        final int drainSeconds = RuntimeConfig.getInt(DRAIN_SECONDS, 10);
+        final int timeoutSeconds = RuntimeConfig.getInt(DRAIN_TIMEOUT_SECONDS, 15);
+        final long finishedBefore = Metrics.get().getFinished();
+        final long start = System.nanoTime();
+
+        Health.startDraining();
+        Log.info("Shutdown: draining for " + drainSeconds + "s, in-flight requests: "
+                + Metrics.get().getInFlight());
+        try {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(drainSeconds));
+            server.shutdown(timeoutSeconds, TimeUnit.SECONDS).get(timeoutSeconds + 1, TimeUnit.SECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            Log.warn("Shutdown: in-flight requests did not finish in " + timeoutSeconds + "s");
+        }
+        final int aborted = Metrics.get().getInFlight();
+        server.shutdownNow();
+        Log.info("Shutdown: completed " + (Metrics.get().getFinished() - finishedBefore)
+                + " requests, aborted " + aborted + " in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        Log.flush();
+    }
+
     /**
      * Creates a JSON HTTP Web Service using Grizzly and Jersey.
      *
@@ -54,10 +185,134 @@ public class Main {
      * @throws IOException
      */
     HttpServer startServer() throws IOException {
+        return startServer(Main.getBaseURI());
+    }
+
+    /**
+     * Starts the service at the given address, for tools that run it
+     * in-process such as the load generator.
+     */
+    public HttpServer startServer(URI uri) throws IOException {
+        return startServer(uri, RuntimeConfig.getBoolean(STATIC_HANDLER, false));
+    }
+
+    HttpServer startServer(URI uri, boolean staticHandler) throws IOException {
+
+        final StartupTimer timer = new StartupTimer();
+        final ResourceConfig rc = resourceConfig(RuntimeConfig.getBoolean(CLASSPATH_SCAN, false));
+        final WorkerPool pool = WorkerPool.fromConfig();
+        final HttpServer server = GrizzlyHttpServerFactory.createHttpServer(uri, false);
+
+        // requests go through health checks, admission, static assets when enabled, then Jersey
+        HttpHandler handler = ContainerFactory.createContainer(GrizzlyHttpContainer.class, rc);
+        timer.mark("jersey");
+        if (staticHandler) {
+            final StaticAssetHandler assets = new StaticAssetHandler(handler)
+                    .addAsset("/", "/", "text/html", StaticAssets.CACHE_PAGE, new ExampleResource().getPage());
+            for (String name : StaticAssets.names()) {
+                assets.addAsset(
+                        "/assets/" + name,
+                        "/assets/{name}",
+                        StaticAssets.contentType(name),
+                        StaticAssets.CACHE_IMMUTABLE,
+                        StaticAssets.get(name));
+            }
+            handler = assets;
+            Log.info("Static assets are served by " + StaticAssetHandler.class.getSimpleName());
+        }
+        if (RuntimeConfig.getBoolean(AdmissionHandler.ENABLED, false)) {
+            final AdmissionHandler admission = AdmissionHandler.fromConfig(handler);
+            Metrics.get().setAdmission(admission);
+            handler = admission;
+        }
+        server.getServerConfiguration().addHttpHandler(new HealthHandler(handler));
+
+        for (NetworkListener listener : server.getListeners()) {
+            configureListener(listener);
+        }
+        pool.apply(server);
+        Metrics.get().setWorkerPool(pool);
+        server.start();
+        this.workerPool = pool;
+        timer.mark("listener");
+
+        warmUp(uri, timer);
+        Log.info(timer.toString());
+        return server;
+    }
+
+    /**
+     * Resources and providers of the service. Registering them explicitly
+     * avoids scanning the classpath and the auto-discovery of features at
+     * startup; new resources must be added here.
+     */
+    static ResourceConfig resourceConfig(boolean scan) {
+
+        if (scan) {
+            return new ResourceConfig().packages(Main.class.getPackage().getName());
+        }
+        return new ResourceConfig()
+                .registerClasses(
+                        ExampleResource.class,
+                        AssetResource.class,
+                        AsyncExampleResource.class,
+                        MetricsResource.class,
+                        MetricsListener.class)
+                .property(ServerProperties.FEATURE_AUTODISCOVERY_DISABLE, Boolean.TRUE)
+                .property(ServerProperties.WADL_FEATURE_DISABLE, Boolean.TRUE);
+    }
+
+    /**
+     * Serves a few requests for the page through the full stack so classes
+     * are loaded and caches filled before the load balancer sends traffic.
+     * The service only reports ready once they succeed.
+     */
+    private void warmUp(URI uri, StartupTimer timer) {
+
+        final int requests = RuntimeConfig.getInt(WARMUP_REQUESTS, 20);
+        final long start = System.nanoTime();
+        final byte[] buffer = new byte[8192];
+        try {
+            for (int i = 0; i < requests; i++) {
+                final HttpURLConnection connection = (HttpURLConnection) uri.toURL().openConnection();
+                connection.setRequestProperty("Accept-Encoding", i % 2 == 0 ? "gzip" : "identity");
+                try (InputStream in = connection.getInputStream()) {
+                    while (in.read(buffer) > 0) {}
+                }
+                if (i == 0) {
+                    timer.mark("first-request");
+                }
+            }
+            timer.mark("warm-up");
+            Health.warmedUp();
+            Log.info("Warm-up: " + requests + " requests in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms. Ready.");
+        } catch (IOException ioe) {
+            Log.error("Warm-up failed. Service stays not ready. IOException:" + ioe.getMessage(), ioe);
+        }
+    }
+
+    static void configureListener(NetworkListener listener) {
+
+        final int idleSeconds = RuntimeConfig.getInt(KEEPALIVE_IDLE_SECONDS, DEFAULT_KEEPALIVE_IDLE_SECONDS);
+        final int maxRequests = RuntimeConfig.getInt(KEEPALIVE_MAX_REQUESTS, -1);
+        listener.getKeepAlive().setIdleTimeoutInSeconds(idleSeconds);
+        listener.getKeepAlive().setMaxRequestsCount(maxRequests);
+        Log.info("Keep-alive: idle timeout=" + idleSeconds + "s, max requests=" + maxRequests);
+
+        if (RuntimeConfig.getBoolean(HTTP2, false)) {
+            final int maxStreams = RuntimeConfig.getInt(HTTP2_MAX_STREAMS, 100);
+            listener.registerAddOn(new Http2AddOn(Http2Configuration.builder()
+                    .maxConcurrentStreams(maxStreams)
+                    .priorKnowledge(true)
+                    .pushEnabled(false)
+                    .build()));
+            Log.info("HTTP/2 (h2c) enabled: max concurrent streams=" + maxStreams);
+        }
+    }
 
-        final ResourceConfig rc =
-                new ResourceConfig().packages(this.getClass().getPackage().getName());
-        return GrizzlyHttpServerFactory.createHttpServer(Main.getBaseURI(), rc);
+    WorkerPool getWorkerPool() {
+        return workerPool;
     }
 
     static URI getBaseURI() throws UnknownHostException {
@@ -65,7 +320,7 @@ public class Main {
                 + InetAddress.getLocalHost()
                         .toString()
                         .substring(0, InetAddress.getLocalHost().toString().indexOf("/")) + ":" + getPort(8080) + "/";
-        System.out.println(addr);
+        Log.info(addr);
         return URI.create(addr);
     }
 
@@ -75,7 +330,7 @@ public class Main {
             try {
                 return Integer.parseInt(port);
             } catch (NumberFormatException e) {
-                System.out.println("Value of jersey.config.test.container.port property"
+                Log.warn("Value of jersey.config.test.container.port property"
                         + " is not a valid positive integer [" + port + "]."
                         + " Reverting to default [" + defaultPort + "].");
             }
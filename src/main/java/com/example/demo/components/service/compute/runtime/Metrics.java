@@ -0,0 +1,333 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the runtime, exposed by {@link MetricsResource} in the
+ * Prometheus text format. Requests are recorded per route into preallocated
+ * counters and histograms, so recording never locks or allocates; only
+ * scrapes build strings. JVM and worker pool figures are read at scrape
+ * time.
+ */
+final class Metrics {
+
+    private static final Metrics INSTANCE = new Metrics();
+    private static final Method TOTAL_THREAD_ALLOCATED_BYTES = totalThreadAllocatedBytes();
+
+    static final long[] LATENCY_BOUNDS_NANOS = {
+        TimeUnit.MICROSECONDS.toNanos(250),
+        TimeUnit.MICROSECONDS.toNanos(500),
+        TimeUnit.MILLISECONDS.toNanos(1),
+        TimeUnit.MILLISECONDS.toNanos(2),
+        TimeUnit.MILLISECONDS.toNanos(5),
+        TimeUnit.MILLISECONDS.toNanos(10),
+        TimeUnit.MILLISECONDS.toNanos(25),
+        TimeUnit.MILLISECONDS.toNanos(50),
+        TimeUnit.MILLISECONDS.toNanos(100),
+        TimeUnit.MILLISECONDS.toNanos(250),
+        TimeUnit.MILLISECONDS.toNanos(500),
+        TimeUnit.SECONDS.toNanos(1),
+        TimeUnit.SECONDS.toNanos(2),
+        TimeUnit.SECONDS.toNanos(5),
+        TimeUnit.SECONDS.toNanos(10)
+    };
+
+    private static final long[] SIZE_BOUNDS_BYTES = {
+        128, 512, 1024, 4 * 1024, 16 * 1024, 64 * 1024, 256 * 1024, 1024 * 1024, 4 * 1024 * 1024
+    };
+
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder finished = new LongAdder();
+    private volatile WorkerPool workerPool = null;
+    private volatile AsyncExecutor asyncExecutor = null;
+    private volatile AdmissionHandler admission = null;
+
+    // bytes allocated by the live threads at the last scrape, and by the
+    // threads that have finished since the service started
+    private Map<Long, Long> threadAllocated = new HashMap<>();
+    private long finishedThreadsAllocated = 0;
+    private final GcPauses gcPauses = new GcPauses();
+
+    private Metrics() {
+        gcPauses.register();
+    }
+
+    static Metrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param template the route as declared, such as /assets/{name}
+     * @return the metrics of the route, created on first use
+     */
+    Route route(String template) {
+        return routes.computeIfAbsent(template, Route::new);
+    }
+
+    void requestStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    void requestFinished() {
+        inFlight.decrementAndGet();
+        finished.increment();
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return requests finished since the service started
+     */
+    long getFinished() {
+        return finished.sum();
+    }
+
+    void setWorkerPool(WorkerPool workerPool) {
+        this.workerPool = workerPool;
+    }
+
+    void setAsyncExecutor(AsyncExecutor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    void setAdmission(AdmissionHandler admission) {
+        this.admission = admission;
+    }
+
+    String scrape() {
+
+        final StringBuilder out = new StringBuilder(8192);
+        final Map<String, Route> sorted = new TreeMap<>(routes);
+
+        header(out, "http_requests_total", "counter", "Requests served, by route and status class.");
+        for (Route route : sorted.values()) {
+            for (int i = 0; i < route.statuses.length; i++) {
+                final long count = route.statuses[i].sum();
+                if (count > 0) {
+                    out.append("http_requests_total{route=\"")
+                            .append(route.template)
+                            .append("\",status=\"")
+                            .append(i + 1)
+                            .append("xx\"} ")
+                            .append(count)
+                            .append('\n');
+                }
+            }
+        }
+        header(out, "http_request_duration_seconds", "histogram", "Time to serve a request, by route.");
+        for (Route route : sorted.values()) {
+            route.latency.write(out, "http_request_duration_seconds", route.label, 1e9);
+        }
+        header(out, "http_response_size_bytes", "histogram", "Size of response bodies, by route.");
+        for (Route route : sorted.values()) {
+            route.size.write(out, "http_response_size_bytes", route.label, 1);
+        }
+        gauge(out, "http_requests_in_flight", "Requests being served.", inFlight.get());
+
+        final WorkerPool pool = workerPool;
+        if (pool != null && pool.getPoolSize() >= 0) {
+            final String mode = "{mode=\"" + pool.getMode() + "\"}";
+            header(out, "worker_pool_threads", "gauge", "Threads owned by the worker pool.");
+            out.append("worker_pool_threads").append(mode).append(' ').append(pool.getPoolSize()).append('\n');
+            header(out, "worker_pool_active", "gauge", "Requests running on the worker pool.");
+            out.append("worker_pool_active").append(mode).append(' ').append(pool.getActiveCount()).append('\n');
+            header(out, "worker_pool_queued", "gauge", "Requests waiting for a worker thread.");
+            out.append("worker_pool_queued").append(mode).append(' ').append(pool.getQueueDepth()).append('\n');
+        }
+
+        final AsyncExecutor async = asyncExecutor;
+        if (async != null) {
+            gauge(out, "async_requests_suspended", "Asynchronous requests waiting for a result.", async.getSuspended());
+            gauge(out, "async_executor_active", "Tasks running on the async completion executor.",
+                    async.getActiveCount());
+            gauge(out, "async_executor_queued", "Tasks waiting for an async completion thread.",
+                    async.getQueueDepth());
+            counter(out, "async_timeouts_total", "Asynchronous requests answered 503 after the timeout.",
+                    async.getTimeouts());
+            counter(out, "async_rejected_total", "Asynchronous requests answered 503 because the executor was full.",
+                    async.getRejections());
+        }
+
+        final AdmissionHandler admission = this.admission;
+        if (admission != null) {
+            gauge(out, "admission_limit", "Current adaptive concurrency limit.", admission.getLimit());
+            gauge(out, "admission_in_flight", "Admitted requests being served.", admission.getInFlight());
+            counter(out, "admission_rejected_total", "Requests answered 503 because the limit was reached.",
+                    admission.getRejected());
+            if (admission.isRetrying()) {
+                header(out, "admission_retry_wait_seconds", "histogram",
+                        "Time requests over the limit retried for a slot, before admission or a 503.");
+                admission.getRetryWait().write(out, "admission_retry_wait_seconds", "", 1e9);
+            }
+        }
+
+        counter(out, "log_dropped_total", "Log events dropped because the log buffer was full.", Log.getDropped());
+
+        writeJvm(out);
+        return out.toString();
+    }
+
+    private void writeJvm(StringBuilder out) {
+
+        final MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        gauge(out, "jvm_heap_used_bytes", "Heap in use.", heap.getUsed());
+        gauge(out, "jvm_heap_committed_bytes", "Heap committed by the JVM.", heap.getCommitted());
+        gauge(out, "jvm_heap_max_bytes", "Largest heap the JVM may use.", heap.getMax());
+
+        header(out, "jvm_gc_collections_total", "counter", "Garbage collections, by collector.");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            out.append("jvm_gc_collections_total{gc=\"")
+                    .append(gc.getName())
+                    .append("\"} ")
+                    .append(Math.max(0, gc.getCollectionCount()))
+                    .append('\n');
+        }
+        header(
+                out,
+                "jvm_gc_collection_seconds_total",
+                "counter",
+                "Time collections took, by collector. Includes concurrent phases, so it is not pause time.");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            out.append("jvm_gc_collection_seconds_total{gc=\"")
+                    .append(gc.getName())
+                    .append("\"} ")
+                    .append(BucketHistogram.format(Math.max(0, gc.getCollectionTime()) / 1e3))
+                    .append('\n');
+        }
+        header(out, "jvm_gc_pauses_total", "counter", "Stop-the-world collector pauses, by collector.");
+        for (Map.Entry<String, Long> gc : gcPauses.getPauses().entrySet()) {
+            out.append("jvm_gc_pauses_total{gc=\"")
+                    .append(gc.getKey())
+                    .append("\"} ")
+                    .append(gc.getValue())
+                    .append('\n');
+        }
+        header(out, "jvm_gc_pause_seconds_total", "counter", "Time the application was stopped, by collector.");
+        for (Map.Entry<String, Long> gc : gcPauses.getMillis().entrySet()) {
+            out.append("jvm_gc_pause_seconds_total{gc=\"")
+                    .append(gc.getKey())
+                    .append("\"} ")
+                    .append(BucketHistogram.format(gc.getValue() / 1e3))
+                    .append('\n');
+        }
+
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        gauge(out, "jvm_threads_live", "Live threads.", threads.getThreadCount());
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+            if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                counter(out, "jvm_threads_allocated_bytes_total",
+                        "Bytes allocated by platform threads, including finished ones.", allocatedBytes(hotspot));
+            }
+        }
+    }
+
+    /**
+     * Java 14 and newer count the bytes of finished threads themselves. On
+     * older runtimes the bytes of each thread are kept from one scrape to
+     * the next and added to the finished total once the thread is gone,
+     * which misses only what it allocated after the last scrape.
+     */
+    private synchronized long allocatedBytes(com.sun.management.ThreadMXBean threads) {
+
+        if (TOTAL_THREAD_ALLOCATED_BYTES != null) {
+            try {
+                final long total = (Long) TOTAL_THREAD_ALLOCATED_BYTES.invoke(threads);
+                if (total >= 0) return total;
+            } catch (ReflectiveOperationException e) {
+                // counted below
+            }
+        }
+        final long[] ids = threads.getAllThreadIds();
+        final long[] bytes = threads.getThreadAllocatedBytes(ids);
+        final Map<Long, Long> live = new HashMap<>();
+        long total = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (bytes[i] > 0) {
+                live.put(ids[i], bytes[i]);
+                total += bytes[i];
+            }
+        }
+        for (Map.Entry<Long, Long> thread : threadAllocated.entrySet()) {
+            if (!live.containsKey(thread.getKey())) finishedThreadsAllocated += thread.getValue();
+        }
+        threadAllocated = live;
+        return finishedThreadsAllocated + total;
+    }
+
+    /**
+     * Looked up reflectively because the project compiles for Java 11 while
+     * the container runs a newer JDK.
+     */
+    private static Method totalThreadAllocatedBytes() {
+
+        try {
+            return com.sun.management.ThreadMXBean.class.getMethod("getTotalThreadAllocatedBytes");
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        header(out, name, "gauge", help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, "counter", help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Counters and histograms of one route.
+     */
+    static final class Route {
+
+        private final String template;
+        private final String label;
+        private final LongAdder[] statuses = new LongAdder[5];
+        private final BucketHistogram latency = new BucketHistogram(LATENCY_BOUNDS_NANOS, 1e9);
+        private final BucketHistogram size = new BucketHistogram(SIZE_BOUNDS_BYTES, 1);
+
+        private Route(String template) {
+            this.template = template.replace("\\", "\\\\").replace("\"", "\\\"");
+            this.label = "route=\"" + this.template + "\"";
+            for (int i = 0; i < statuses.length; i++) {
+                statuses[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * @param bytes size of the response body, negative when unknown
+         */
+        void record(int status, long nanos, long bytes) {
+
+            final int statusClass = status / 100 - 1;
+            statuses[statusClass >= 0 && statusClass < statuses.length ? statusClass : 4].increment();
+            latency.record(nanos);
+            if (bytes >= 0) {
+                size.record(bytes);
+            }
+        }
+    }
+}
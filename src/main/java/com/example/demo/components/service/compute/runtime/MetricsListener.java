@@ -0,0 +1,95 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import jakarta.ws.rs.ext.Provider;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.glassfish.jersey.server.ContainerResponse;
+import org.glassfish.jersey.server.model.ResourceMethod;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+import org.glassfish.jersey.uri.UriTemplate;
+
+/**
+ * Records every request handled by Jersey into {@link Metrics}, under the
+ * route template of the resource method that served it. The time is taken
+ * from the moment Jersey sees the request until the response is written.
+ */
+@Provider
+public class MetricsListener implements ApplicationEventListener {
+
+    private static final String UNMATCHED = "unmatched";
+
+    private final Metrics metrics = Metrics.get();
+    private final Map<ResourceMethod, Metrics.Route> routes = new ConcurrentHashMap<>();
+
+    @Override
+    public void onEvent(ApplicationEvent event) {}
+
+    @Override
+    public RequestEventListener onRequest(RequestEvent event) {
+        metrics.requestStarted();
+        return new Timing(System.nanoTime());
+    }
+
+    private Metrics.Route route(RequestEvent event) {
+
+        final ResourceMethod method = event.getUriInfo().getMatchedResourceMethod();
+        if (method == null) {
+            return metrics.route(UNMATCHED);
+        }
+        Metrics.Route route = routes.get(method);
+        if (route == null) {
+            route = metrics.route(template(event.getUriInfo().getMatchedTemplates()));
+            routes.put(method, route);
+        }
+        return route;
+    }
+
+    /**
+     * Matched templates are listed from the innermost to the outermost.
+     */
+    private static String template(List<UriTemplate> templates) {
+
+        final StringBuilder path = new StringBuilder();
+        for (int i = templates.size() - 1; i >= 0; i--) {
+            final String template = templates.get(i).getTemplate();
+            if (template.isEmpty() || "/".equals(template)) continue;
+            if (!template.startsWith("/")) path.append('/');
+            path.append(template);
+        }
+        return path.length() == 0 ? "/" : path.toString();
+    }
+
+    private final class Timing implements RequestEventListener {
+
+        private final long start;
+
+        private Timing(long start) {
+            this.start = start;
+        }
+
+        @Override
+        public void onEvent(RequestEvent event) {
+
+            if (event.getType() != RequestEvent.Type.FINISHED) {
+                return;
+            }
+            final ContainerResponse response = event.getContainerResponse();
+            final int status = response == null ? 500 : response.getStatus();
+            final long nanos = System.nanoTime() - start;
+            final long bytes = response == null ? -1 : response.getLength();
+            route(event).record(status, nanos, bytes);
+            metrics.requestFinished();
+            Log.access(
+                    event.getContainerRequest().getMethod(),
+                    event.getContainerRequest().getRequestUri().getRawPath(),
+                    status,
+                    bytes,
+                    nanos);
+        }
+    }
+}
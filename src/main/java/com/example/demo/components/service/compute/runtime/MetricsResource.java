@@ -0,0 +1,20 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+
+/**
+ * Exposes {@link Metrics} in the Prometheus text format, for a scraper
+ * running as a sidecar of the task.
+ */
+@Path("metrics")
+public class MetricsResource {
+
+    @GET
+    @Produces("text/plain; version=0.0.4; charset=utf-8")
+    public String metrics() {
+        return Metrics.get().scrape();
+    }
+}
@@ -0,0 +1,33 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.ResponseBuilder;
+
+/**
+ * Builds JAX-RS responses out of a {@link PrecompressedPage}.
+ */
+final class PageResponses {
+
+    private PageResponses() {}
+
+    /**
+     * Picks the encoding of the page the client accepts and answers with
+     * its bytes, or with a 304 when If-None-Match matches its ETag.
+     */
+    static ResponseBuilder of(PrecompressedPage page, String acceptEncoding, Request request, String cacheControl) {
+
+        final PrecompressedPage.Variant variant = page.select(acceptEncoding);
+        final EntityTag tag = new EntityTag(variant.getTag());
+
+        ResponseBuilder response = request.evaluatePreconditions(tag);
+        if (response == null) {
+            response = Response.ok(variant.getBody()).encoding(variant.getEncoding()).tag(tag);
+        }
+        return response.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .header(HttpHeaders.CACHE_CONTROL, cacheControl);
+    }
+}
@@ -0,0 +1,110 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Page split once into static byte segments and named slots written as
+ * ${name}. Rendering copies the segments and the slot values into a single
+ * array of the exact size, without building strings.
+ *
+ * <pre>
+ * PageTemplate.compile("&lt;h1&gt;${color}&lt;/h1&gt;").render(values);
+ * </pre>
+ */
+final class PageTemplate {
+
+    private final byte[][] segments;
+    private final String[] slots;
+
+    private PageTemplate(byte[][] segments, String[] slots) {
+        this.segments = segments;
+        this.slots = slots;
+    }
+
+    static PageTemplate compile(String template) {
+
+        final List<byte[]> segments = new ArrayList<>();
+        final List<String> slots = new ArrayList<>();
+        int start = 0;
+        for (int open; (open = template.indexOf("${", start)) >= 0; ) {
+            final int close = template.indexOf('}', open + 2);
+            if (close < 0) {
+                break;
+            }
+            segments.add(template.substring(start, open).getBytes(StandardCharsets.UTF_8));
+            slots.add(template.substring(open + 2, close));
+            start = close + 1;
+        }
+        segments.add(template.substring(start).getBytes(StandardCharsets.UTF_8));
+        return new PageTemplate(segments.toArray(new byte[0][]), slots.toArray(new String[0]));
+    }
+
+    /**
+     * @return the names of the slots, in the order they appear
+     */
+    String[] getSlots() {
+        return slots.clone();
+    }
+
+    /**
+     * Fills every slot with its value, HTML-escaped. Slots without a value
+     * are left empty.
+     */
+    byte[] render(Map<String, String> values) {
+
+        final byte[][] filled = new byte[slots.length][];
+        int length = 0;
+        for (int i = 0; i < slots.length; i++) {
+            final String value = values.get(slots[i]);
+            filled[i] = value == null ? new byte[0] : escape(value).getBytes(StandardCharsets.UTF_8);
+            length += filled[i].length;
+        }
+        for (byte[] segment : segments) {
+            length += segment.length;
+        }
+
+        final byte[] page = new byte[length];
+        int position = 0;
+        for (int i = 0; i < segments.length; i++) {
+            System.arraycopy(segments[i], 0, page, position, segments[i].length);
+            position += segments[i].length;
+            if (i < filled.length) {
+                System.arraycopy(filled[i], 0, page, position, filled[i].length);
+                position += filled[i].length;
+            }
+        }
+        return page;
+    }
+
+    private static String escape(String value) {
+
+        final StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '<':
+                    escaped.append("&lt;");
+                    break;
+                case '>':
+                    escaped.append("&gt;");
+                    break;
+                case '&':
+                    escaped.append("&amp;");
+                    break;
+                case '"':
+                    escaped.append("&quot;");
+                    break;
+                case '\'':
+                    escaped.append("&#39;");
+                    break;
+                default:
+                    escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
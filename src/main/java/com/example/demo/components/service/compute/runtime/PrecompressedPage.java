@@ -0,0 +1,204 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Immutable, precompressed copy of a static page. The identity, gzip and
+ * deflate encodings are computed once and shared by every request. Each
+ * encoding carries a strong ETag derived from a hash of the page content.
+ *
+ * Brotli is not offered because the JDK ships no Brotli encoder.
+ */
+public final class PrecompressedPage {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    private final Variant identity;
+    private final Variant gzip;
+    private final Variant deflate;
+
+    private PrecompressedPage(Variant identity, Variant gzip, Variant deflate) {
+        this.identity = identity;
+        this.gzip = gzip;
+        this.deflate = deflate;
+    }
+
+    /**
+     * Builds every encoding of the given content. Compressed encodings that
+     * turn out larger than the original are dropped.
+     */
+    public static PrecompressedPage of(byte[] content) {
+
+        String hash = hash(content);
+        Variant identity = new Variant(null, content, hash);
+        Variant gzip = smallerOrNull(new Variant(GZIP, gzip(content), hash + "-" + GZIP), identity);
+        Variant deflate = smallerOrNull(new Variant(DEFLATE, deflate(content), hash + "-" + DEFLATE), identity);
+        return new PrecompressedPage(identity, gzip, deflate);
+    }
+
+    public Variant identity() {
+        return identity;
+    }
+
+    /**
+     * Picks the smallest acceptable encoding for the given Accept-Encoding
+     * header. Falls back to identity when the header is missing, when no
+     * compressed encoding is acceptable or when none was worth keeping.
+     */
+    public Variant select(String acceptEncoding) {
+
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return identity;
+        }
+        float gzipQ = -1f;
+        float deflateQ = -1f;
+        float anyQ = 0f;
+        int start = 0;
+        int length = acceptEncoding.length();
+        while (start < length) {
+            int end = acceptEncoding.indexOf(',', start);
+            if (end < 0) end = length;
+            int paramStart = acceptEncoding.indexOf(';', start);
+            int nameEnd = paramStart >= 0 && paramStart < end ? paramStart : end;
+            float q = nameEnd < end ? quality(acceptEncoding, nameEnd + 1, end) : 1f;
+            if (matches(acceptEncoding, start, nameEnd, GZIP) || matches(acceptEncoding, start, nameEnd, "x-gzip")) {
+                gzipQ = q;
+            } else if (matches(acceptEncoding, start, nameEnd, DEFLATE)) {
+                deflateQ = q;
+            } else if (matches(acceptEncoding, start, nameEnd, "*")) {
+                anyQ = q;
+            }
+            start = end + 1;
+        }
+        // encodings not listed explicitly inherit the quality of "*"
+        if (gzipQ < 0f) gzipQ = anyQ;
+        if (deflateQ < 0f) deflateQ = anyQ;
+
+        if (gzip != null && gzipQ > 0f && gzipQ >= deflateQ) {
+            return gzip;
+        }
+        if (deflate != null && deflateQ > 0f) {
+            return deflate;
+        }
+        if (gzip != null && gzipQ > 0f) {
+            return gzip;
+        }
+        return identity;
+    }
+
+    private static boolean matches(String header, int start, int end, String token) {
+
+        while (start < end && header.charAt(start) == ' ') start++;
+        while (end > start && header.charAt(end - 1) == ' ') end--;
+        return end - start == token.length() && header.regionMatches(true, start, token, 0, token.length());
+    }
+
+    private static float quality(String header, int start, int end) {
+
+        int q = header.indexOf("q=", start);
+        if (q < 0 || q >= end) {
+            return 1f;
+        }
+        try {
+            return Float.parseFloat(header.substring(q + 2, end).trim());
+        } catch (NumberFormatException e) {
+            return 0f;
+        }
+    }
+
+    private static Variant smallerOrNull(Variant compressed, Variant identity) {
+        return compressed.getLength() < identity.getLength() ? compressed : null;
+    }
+
+    private static byte[] gzip(byte[] content) {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2);
+        try (OutputStream gz = new GZIPOutputStream(out) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gz.write(content);
+        } catch (IOException ioe) {
+            throw new IllegalStateException("Cannot gzip page", ioe);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] content) {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (OutputStream df = new DeflaterOutputStream(out, deflater)) {
+            df.write(content);
+        } catch (IOException ioe) {
+            throw new IllegalStateException("Cannot deflate page", ioe);
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    private static String hash(byte[] content) {
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder hex = new StringBuilder(32);
+            for (int i = 0; i < 16; i++) {
+                hex.append(Character.forDigit((digest[i] >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(digest[i] & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * One encoding of the page. The body array is shared and must never be
+     * modified by callers.
+     */
+    public static final class Variant {
+
+        private final String encoding;
+        private final byte[] body;
+        private final String tag;
+
+        private Variant(String encoding, byte[] body, String tag) {
+            this.encoding = encoding;
+            this.body = body;
+            this.tag = tag;
+        }
+
+        /**
+         * @return the Content-Encoding of this variant, or null for identity
+         */
+        public String getEncoding() {
+            return encoding;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public int getLength() {
+            return body.length;
+        }
+
+        /**
+         * @return the unquoted value of the strong ETag of this variant
+         */
+        public String getTag() {
+            return tag;
+        }
+    }
+}
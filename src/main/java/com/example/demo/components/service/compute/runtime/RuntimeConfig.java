@@ -0,0 +1,44 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+/**
+ * Settings of the runtime. Each setting is read from a system property and,
+ * when the property is absent, from the environment variable with the same
+ * name in upper case and with dots replaced by underscores. As an example,
+ * runtime.static.handler can also be set as RUNTIME_STATIC_HANDLER in the
+ * task definition.
+ */
+final class RuntimeConfig {
+
+    private RuntimeConfig() {}
+
+    static String get(String name, String defaultValue) {
+
+        String value = System.getProperty(name);
+        if (value == null) {
+            value = System.getenv(name.toUpperCase().replace('.', '_'));
+        }
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    static int getInt(String name, int defaultValue) {
+
+        final String value = get(name, null);
+        if (null != value) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                Log.warn("Value of " + name + " property"
+                        + " is not a valid integer [" + value + "]."
+                        + " Reverting to default [" + defaultValue + "].");
+            }
+        }
+        return defaultValue;
+    }
+
+    static boolean getBoolean(String name, boolean defaultValue) {
+
+        final String value = get(name, null);
+        return null == value ? defaultValue : Boolean.parseBoolean(value);
+    }
+}
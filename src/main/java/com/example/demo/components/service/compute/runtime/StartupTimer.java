@@ -0,0 +1,56 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records how long each startup phase took, from the start of the JVM until
+ * the service is ready, and logs them on one line:
+ *
+ * <pre>
+ * Startup: jvm=310ms jersey=402ms listener=35ms first-request=120ms warm-up=88ms total=955ms
+ * </pre>
+ */
+final class StartupTimer {
+
+    private final long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private long last;
+
+    /**
+     * Starts timing. The time since the JVM started is recorded as the jvm
+     * phase.
+     */
+    StartupTimer() {
+        last = System.currentTimeMillis();
+        phases.put("jvm", last - jvmStart);
+    }
+
+    /**
+     * Ends the current phase, which started when the previous one ended.
+     */
+    void mark(String phase) {
+        final long now = System.currentTimeMillis();
+        phases.put(phase, now - last);
+        last = now;
+    }
+
+    /**
+     * @return milliseconds since the JVM started
+     */
+    long total() {
+        return last - jvmStart;
+    }
+
+    @Override
+    public String toString() {
+
+        final StringBuilder line = new StringBuilder("Startup:");
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            line.append(' ').append(phase.getKey()).append('=').append(phase.getValue()).append("ms");
+        }
+        return line.append(" total=").append(total()).append("ms").toString();
+    }
+}
@@ -0,0 +1,159 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import org.glassfish.grizzly.Buffer;
+import org.glassfish.grizzly.http.Method;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+import org.glassfish.grizzly.http.util.HttpStatus;
+import org.glassfish.grizzly.memory.Buffers;
+import org.glassfish.grizzly.memory.MemoryManager;
+
+/**
+ * Grizzly handler that answers GET and HEAD requests for static assets
+ * straight from direct memory, without going through Jersey. Every other
+ * request is handed to the next handler, usually the Jersey container.
+ *
+ * Each encoding of an asset is copied once into a direct buffer that is
+ * never written again. Requests write a view of that buffer to the
+ * connection, so serving an asset neither copies nor allocates the body.
+ * Requests are recorded in {@link Metrics} under the route of the asset.
+ */
+final class StaticAssetHandler extends HttpHandler {
+
+    private final HttpHandler next;
+    private final Map<String, Asset> assets = new HashMap<>();
+
+    StaticAssetHandler(HttpHandler next) {
+        this.next = next;
+    }
+
+    /**
+     * Registers an asset under an exact request path. Must be called before
+     * the server starts.
+     *
+     * @param route route template the asset is reported under in the metrics
+     */
+    StaticAssetHandler addAsset(
+            String path, String route, String contentType, String cacheControl, PrecompressedPage page) {
+        assets.put(path, new Asset(Metrics.get().route(route), contentType, cacheControl, page));
+        return this;
+    }
+
+    @Override
+    public void service(Request request, Response response) throws Exception {
+
+        final Asset asset = assets.get(request.getRequestURI());
+        final Method method = request.getMethod();
+        if (asset == null || (!Method.GET.equals(method) && !Method.HEAD.equals(method))) {
+            next.service(request, response);
+            return;
+        }
+
+        final long start = System.nanoTime();
+        Metrics.get().requestStarted();
+        try {
+            final long bytes = serve(asset, method, request, response);
+            final long nanos = System.nanoTime() - start;
+            asset.metrics.record(response.getStatus(), nanos, bytes);
+            Log.access(method.getMethodString(), request.getRequestURI(), response.getStatus(), bytes, nanos);
+        } finally {
+            Metrics.get().requestFinished();
+        }
+    }
+
+    /**
+     * @return the number of body bytes written
+     */
+    private long serve(Asset asset, Method method, Request request, Response response) throws Exception {
+
+        final PrecompressedPage.Variant variant = asset.page.select(request.getHeader("Accept-Encoding"));
+        final String tag = asset.tags.get(variant);
+        response.setHeader("Vary", "Accept-Encoding");
+        response.setHeader("ETag", tag);
+        response.setHeader("Cache-Control", asset.cacheControl);
+
+        if (matches(request.getHeader("If-None-Match"), tag)) {
+            response.setStatus(HttpStatus.NOT_MODIFIED_304);
+            return 0;
+        }
+
+        response.setContentType(asset.contentType);
+        response.setContentLength(variant.getLength());
+        if (variant.getEncoding() != null) {
+            response.setHeader("Content-Encoding", variant.getEncoding());
+        }
+        if (Method.HEAD.equals(method)) {
+            return 0;
+        }
+        final Buffer body = Buffers.wrap(
+                MemoryManager.DEFAULT_MEMORY_MANAGER,
+                asset.bodies.get(variant).duplicate());
+        body.allowBufferDispose(false);
+        response.getNIOOutputStream().write(body);
+        return variant.getLength();
+    }
+
+    @Override
+    public void start() {
+        next.start();
+    }
+
+    @Override
+    public void destroy() {
+        next.destroy();
+    }
+
+    /**
+     * Weak comparison of If-None-Match against a quoted ETag, as required
+     * for GET and HEAD requests by RFC 7232.
+     */
+    static boolean matches(String ifNoneMatch, String tag) {
+
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if ("*".equals(candidate) || tag.equals(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Asset {
+
+        private final Metrics.Route metrics;
+        private final String contentType;
+        private final String cacheControl;
+        private final PrecompressedPage page;
+        private final Map<PrecompressedPage.Variant, ByteBuffer> bodies = new HashMap<>();
+        private final Map<PrecompressedPage.Variant, String> tags = new HashMap<>();
+
+        private Asset(Metrics.Route metrics, String contentType, String cacheControl, PrecompressedPage page) {
+
+            this.metrics = metrics;
+            this.contentType = contentType;
+            this.cacheControl = cacheControl;
+            this.page = page;
+            for (String acceptEncoding : new String[] {null, PrecompressedPage.GZIP, PrecompressedPage.DEFLATE}) {
+                PrecompressedPage.Variant variant = page.select(acceptEncoding);
+                if (!bodies.containsKey(variant)) {
+                    ByteBuffer direct = ByteBuffer.allocateDirect(variant.getLength());
+                    direct.put(variant.getBody());
+                    direct.flip();
+                    bodies.put(variant, direct);
+                    tags.put(variant, "\"" + variant.getTag() + "\"");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fingerprinted assets extracted from the pages at build time (see
+ * com.example.demo.toolchain.assets.AssetPipeline). They are listed in
+ * assets/manifest.txt next to example.html and loaded once from the
+ * classpath. An asset name changes whenever its content changes, so assets
+ * are cached by clients for a year while pages are revalidated often.
+ */
+final class StaticAssets {
+
+    static final String CACHE_IMMUTABLE = "public, max-age=31536000, immutable";
+    static final String CACHE_PAGE = "public, max-age=60";
+
+    private static final String BASE =
+            StaticAssets.class.getPackage().getName().replace('.', '/') + "/assets/";
+
+    private StaticAssets() {}
+
+    static Set<String> names() {
+        return Holder.ASSETS.keySet();
+    }
+
+    /**
+     * @return the asset with the given name, or null if there is none
+     */
+    static PrecompressedPage get(String name) {
+        return Holder.ASSETS.get(name);
+    }
+
+    static String contentType(String name) {
+
+        final String extension = name.substring(name.lastIndexOf('.') + 1);
+        switch (extension) {
+            case "png":
+                return "image/png";
+            case "jpg":
+                return "image/jpeg";
+            case "gif":
+                return "image/gif";
+            case "svg":
+                return "image/svg+xml";
+            case "webp":
+                return "image/webp";
+            case "ico":
+                return "image/x-icon";
+            case "css":
+                return "text/css";
+            case "js":
+                return "text/javascript";
+            default:
+                return "application/octet-stream";
+        }
+    }
+
+    private static Map<String, PrecompressedPage> load() {
+
+        final Map<String, PrecompressedPage> assets = new HashMap<>();
+        final ClassLoader loader = StaticAssets.class.getClassLoader();
+        final InputStream manifest = loader.getResourceAsStream(BASE + "manifest.txt");
+        if (manifest == null) {
+            Log.warn("StaticAssets::No asset manifest found at " + BASE);
+            return assets;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(manifest, StandardCharsets.UTF_8))) {
+            for (String name; (name = reader.readLine()) != null; ) {
+                name = name.trim();
+                if (name.isEmpty()) continue;
+                try (InputStream in = loader.getResourceAsStream(BASE + name)) {
+                    if (in == null) {
+                        Log.warn("StaticAssets::Asset " + name + " listed in the manifest is missing");
+                        continue;
+                    }
+                    assets.put(name, PrecompressedPage.of(readAll(in)));
+                }
+            }
+        } catch (IOException ioe) {
+            Log.error("StaticAssets::Cannot read assets. IOException:" + ioe.getMessage(), ioe);
+        }
+        return Collections.unmodifiableMap(assets);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        for (int read; (read = in.read(buffer)) > 0; ) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Loads the assets the first time they are needed, once.
+     */
+    private static final class Holder {
+        private static final Map<String, PrecompressedPage> ASSETS = load();
+    }
+}
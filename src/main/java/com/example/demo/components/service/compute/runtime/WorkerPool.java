@@ -0,0 +1,277 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.threadpool.AbstractThreadPool;
+import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
+import org.glassfish.grizzly.threadpool.ThreadPoolProbe;
+
+/**
+ * Executor that runs the requests accepted by the Grizzly listeners. The
+ * mode is selected with runtime.executor:
+ *
+ * grizzly (default) keeps the worker pool Grizzly creates on its own and
+ * counts its threads and tasks with a probe.
+ *
+ * virtual runs every request on a new virtual thread. Needs JDK 21 or newer
+ * and falls back to bounded on older runtimes.
+ *
+ * bounded runs requests on runtime.executor.threads platform threads with
+ * at most runtime.executor.queue requests waiting. Requests beyond that are
+ * rejected and their connection is closed.
+ */
+final class WorkerPool {
+
+    static final String EXECUTOR = "runtime.executor";
+    static final String THREADS = "runtime.executor.threads";
+    static final String QUEUE = "runtime.executor.queue";
+
+    static final String GRIZZLY = "grizzly";
+    static final String VIRTUAL = "virtual";
+    static final String BOUNDED = "bounded";
+
+    private final String mode;
+    private final ExecutorService executor;
+    private final ThreadPoolExecutor bounded;
+    private final AtomicInteger active;
+    private final PoolProbe probe;
+
+    private WorkerPool(
+            String mode, ExecutorService executor, ThreadPoolExecutor bounded, AtomicInteger active, PoolProbe probe) {
+        this.mode = mode;
+        this.executor = executor;
+        this.bounded = bounded;
+        this.active = active;
+        this.probe = probe;
+    }
+
+    static WorkerPool fromConfig() {
+
+        final String mode = RuntimeConfig.get(EXECUTOR, GRIZZLY).toLowerCase();
+        if (VIRTUAL.equals(mode)) {
+            final ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+            if (virtual != null) {
+                final AtomicInteger active = new AtomicInteger();
+                return new WorkerPool(VIRTUAL, new CountingExecutor(virtual, active), null, active, null);
+            }
+            Log.warn("Virtual threads need Java 21 or newer. Running version "
+                    + System.getProperty("java.version") + ". Falling back to " + BOUNDED + " executor.");
+        } else if (!BOUNDED.equals(mode)) {
+            if (!GRIZZLY.equals(mode)) {
+                Log.warn("Unknown " + EXECUTOR + " [" + mode + "]. Reverting to default [" + GRIZZLY + "].");
+            }
+            return new WorkerPool(GRIZZLY, null, null, null, new PoolProbe());
+        }
+        final int threads = RuntimeConfig.getInt(THREADS, 64);
+        final int queue = RuntimeConfig.getInt(QUEUE, 1024);
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                threads,
+                threads,
+                60,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queue),
+                new NamedThreadFactory("runtime-worker-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        return new WorkerPool(BOUNDED, pool, pool, null, null);
+    }
+
+    /**
+     * Installs the executor on every listener of the server, or the probe on
+     * the configuration Grizzly builds its own pool from. Must be called
+     * before the server starts.
+     */
+    void apply(HttpServer server) {
+
+        for (NetworkListener listener : server.getListeners()) {
+            if (executor != null) {
+                listener.getTransport().setWorkerThreadPool(executor);
+            } else {
+                final ThreadPoolConfig config = listener.getTransport().getWorkerThreadPoolConfig();
+                if (config != null) config.getInitialMonitoringConfig().addProbes(probe);
+            }
+        }
+        Log.info("Worker executor: " + mode
+                + (bounded != null
+                        ? " (threads=" + bounded.getMaximumPoolSize() + ", queue="
+                                + bounded.getQueue().remainingCapacity() + ")"
+                        : ""));
+    }
+
+    String getMode() {
+        return mode;
+    }
+
+    /**
+     * @return threads currently owned by the pool, -1 when unknown
+     */
+    int getPoolSize() {
+        if (bounded != null) return bounded.getPoolSize();
+        if (active != null) return active.get();
+        if (probe != null) return probe.threads.get();
+        return -1;
+    }
+
+    /**
+     * @return requests currently being executed, -1 when unknown
+     */
+    int getActiveCount() {
+        if (bounded != null) return bounded.getActiveCount();
+        if (active != null) return active.get();
+        if (probe != null) return probe.active.get();
+        return -1;
+    }
+
+    /**
+     * @return requests waiting for a thread, -1 when unknown
+     */
+    int getQueueDepth() {
+        if (bounded != null) return bounded.getQueue().size();
+        if (active != null) return 0;
+        if (probe != null) return probe.queued.get();
+        return -1;
+    }
+
+    /**
+     * Looked up reflectively because the project compiles for Java 11 while
+     * the container runs a newer JDK.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    static final class NamedThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * Keeps count of the tasks running on an executor that has no
+     * introspection of its own, such as the virtual thread executor.
+     */
+    private static final class CountingExecutor extends AbstractExecutorService {
+
+        private final ExecutorService delegate;
+        private final AtomicInteger active;
+
+        private CountingExecutor(ExecutorService delegate, AtomicInteger active) {
+            this.delegate = delegate;
+            this.active = active;
+        }
+
+        @Override
+        public void execute(final Runnable command) {
+            active.incrementAndGet();
+            try {
+                delegate.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            command.run();
+                        } finally {
+                            active.decrementAndGet();
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                active.decrementAndGet();
+                throw e;
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+
+    /**
+     * Counts the threads and tasks of the pools Grizzly creates. A task is
+     * queued until a worker takes it and active until it completes.
+     */
+    private static final class PoolProbe extends ThreadPoolProbe.Adapter {
+
+        private final AtomicInteger threads = new AtomicInteger();
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicInteger queued = new AtomicInteger();
+
+        @Override
+        public void onThreadAllocateEvent(AbstractThreadPool threadPool, Thread thread) {
+            threads.incrementAndGet();
+        }
+
+        @Override
+        public void onThreadReleaseEvent(AbstractThreadPool threadPool, Thread thread) {
+            threads.decrementAndGet();
+        }
+
+        @Override
+        public void onTaskQueueEvent(AbstractThreadPool threadPool, Runnable task) {
+            queued.incrementAndGet();
+        }
+
+        @Override
+        public void onTaskDequeueEvent(AbstractThreadPool threadPool, Runnable task) {
+            queued.decrementAndGet();
+            active.incrementAndGet();
+        }
+
+        @Override
+        public void onTaskCancelEvent(AbstractThreadPool threadPool, Runnable task) {
+            queued.decrementAndGet();
+        }
+
+        @Override
+        public void onTaskCompleteEvent(AbstractThreadPool threadPool, Runnable task) {
+            active.decrementAndGet();
+        }
+    }
+}
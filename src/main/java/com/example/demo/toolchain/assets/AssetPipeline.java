@@ -0,0 +1,122 @@
+/* (C)2023 */
+package com.example.demo.toolchain.assets;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Build step that moves the images embedded in HTML pages as base64 data
+ * URIs into separate files, named after a hash of their content, and points
+ * the pages to them. Because a new image always gets a new name, the files
+ * can be cached by browsers forever while the pages stay small.
+ *
+ * It runs during the process-classes phase (see pom.xml) on the copies of
+ * the pages inside target/classes, so the sources keep the inline images.
+ * Each argument is a directory holding HTML pages. Images are written to an
+ * assets directory next to the pages, together with a manifest.txt file
+ * listing them, and referenced as /assets/name.
+ */
+public class AssetPipeline {
+
+    public static final String ASSETS_DIR = "assets";
+    public static final String MANIFEST = "manifest.txt";
+
+    private static final Pattern DATA_URI =
+            Pattern.compile("data:[a-z]+/([a-z0-9.+-]+);base64,\\s*([A-Za-z0-9+/=\\s]+)");
+
+    public static void main(String args[]) throws IOException {
+
+        for (String dir : args) {
+            process(Paths.get(dir));
+        }
+    }
+
+    static void process(Path dir) throws IOException {
+
+        if (!Files.isDirectory(dir)) {
+            System.out.println("AssetPipeline::Skipping " + dir + ". Not a directory.");
+            return;
+        }
+        final Path assets = Files.createDirectories(dir.resolve(ASSETS_DIR));
+
+        try (DirectoryStream<Path> pages = Files.newDirectoryStream(dir, "*.html")) {
+            for (Path page : pages) {
+                final String html = new String(Files.readAllBytes(page), StandardCharsets.UTF_8);
+                final String rewritten = extract(html, assets);
+                if (!rewritten.equals(html)) {
+                    Files.write(page, rewritten.getBytes(StandardCharsets.UTF_8));
+                    System.out.println("AssetPipeline::" + page.getFileName() + " " + html.length() + " -> "
+                            + rewritten.length() + " bytes");
+                }
+            }
+        }
+        writeManifest(assets);
+    }
+
+    private static String extract(String html, Path assets) throws IOException {
+
+        final Matcher matcher = DATA_URI.matcher(html);
+        final StringBuffer out = new StringBuffer();
+        while (matcher.find()) {
+            final byte[] content = Base64.getMimeDecoder().decode(matcher.group(2).trim());
+            final String name = hash(content) + "." + extension(matcher.group(1));
+            final Path file = assets.resolve(name);
+            if (!Files.exists(file)) {
+                Files.write(file, content);
+            }
+            matcher.appendReplacement(out, Matcher.quoteReplacement("/" + ASSETS_DIR + "/" + name));
+        }
+        matcher.appendTail(out);
+        return out.toString();
+    }
+
+    private static void writeManifest(Path assets) throws IOException {
+
+        final List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(assets)) {
+            for (Path file : files) {
+                final String name = file.getFileName().toString();
+                if (!MANIFEST.equals(name)) {
+                    names.add(name);
+                }
+            }
+        }
+        Collections.sort(names);
+        Files.write(assets.resolve(MANIFEST), names, StandardCharsets.UTF_8);
+    }
+
+    private static String extension(String subtype) {
+
+        if ("jpeg".equals(subtype)) return "jpg";
+        if ("svg+xml".equals(subtype)) return "svg";
+        if ("x-icon".equals(subtype) || "vnd.microsoft.icon".equals(subtype)) return "ico";
+        return subtype.replaceAll("[^a-z0-9]", "");
+    }
+
+    private static String hash(byte[] content) {
+
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            final StringBuilder hex = new StringBuilder(16);
+            for (int i = 0; i < 8; i++) {
+                hex.append(Character.forDigit((digest[i] >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(digest[i] & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,403 @@
+/* (C)2023 */
+package com.example.demo.toolchain.codedeploy;
+
+import com.example.demo.components.service.Service;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import software.amazon.awscdk.CfnResource;
+import software.amazon.awscdk.Stack;
+import software.amazon.awscdk.Token;
+import software.amazon.awscdk.services.ecs.CfnTaskDefinition;
+import software.amazon.awscdk.services.ecs.FargateTaskDefinition;
+import software.amazon.awscdk.services.iam.CfnRole;
+import software.amazon.awscdk.services.logs.CfnLogGroup;
+import software.constructs.IConstruct;
+import software.constructs.IValidation;
+
+/**
+ * The files the CodeDeploy ECS deploy action reads: taskdef.json,
+ * appspec.yaml and imageDetail.json. The green task definition is rendered
+ * from the blue one the Service stack synthesizes, so both task sets get the
+ * same CPU, memory, container limits, environment, log configuration and
+ * runtime platform; only the image differs.
+ *
+ * References in the synthesized task definition are resolved at synth time:
+ * pseudo parameters from the stack environment, roles and log groups from
+ * their explicit names. The stack must therefore have a concrete account and
+ * region, as pipeline stages do.
+ */
+public final class BlueGreenFiles {
+
+    /**
+     * Placeholder the deploy action replaces with the image of imageDetail.json.
+     */
+    public static final String IMAGE_PLACEHOLDER = "<IMAGE1_NAME>";
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final Set<String> USER_DATA = Set.of("options", "dockerLabels");
+    private static final Pattern SUBSTITUTION = Pattern.compile("\\$\\{([^}]+)}");
+
+    private final Stack stack;
+    private final FargateTaskDefinition blue;
+    private final String containerName;
+    private final ObjectNode taskDefinition;
+    private final String appSpec;
+    private final String imageDetail;
+
+    private BlueGreenFiles(Service service) {
+
+        this.stack = service;
+        this.blue = service.getTaskDefinition();
+        this.containerName = service.getContainerName();
+        this.taskDefinition = describe(blue);
+        for (JsonNode container : taskDefinition.withArray("containerDefinitions")) {
+            if (containerName.equals(container.path("name").asText())) {
+                ((ObjectNode) container).put("image", IMAGE_PLACEHOLDER);
+            }
+        }
+        this.appSpec =
+                appSpec(containerName, containerPort(taskDefinition, containerName), service.getLifecycleHooks());
+        this.imageDetail = JSON.createObjectNode()
+                .put("ImageURI", resolveText(service.getGreenImage().getImageUri()))
+                .toString();
+    }
+
+    /**
+     * Renders the files of a service; the appspec runs the lifecycle hooks
+     * the service registered.
+     */
+    public static BlueGreenFiles render(Service service) {
+        return new BlueGreenFiles(service);
+    }
+
+    public String getTaskDefinition() {
+        try {
+            return JSON.writerWithDefaultPrettyPrinter().writeValueAsString(taskDefinition);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public String getAppSpec() {
+        return appSpec;
+    }
+
+    public String getImageDetail() {
+        return imageDetail;
+    }
+
+    /**
+     * @return shell commands writing the files into the given directory
+     */
+    public List<String> commands(String directory) {
+        return Arrays.asList(
+                "mkdir -p " + directory,
+                write(getTaskDefinition(), directory + "/taskdef.json"),
+                write(appSpec, directory + "/appspec.yaml"),
+                write(imageDetail, directory + "/imageDetail.json"),
+                "cat " + directory + "/taskdef.json " + directory + "/appspec.yaml " + directory + "/imageDetail.json");
+    }
+
+    /**
+     * @param commands the commands of the step that writes the files, as
+     * returned by {@link #commands(String)}
+     * @return a validation failing synth when the taskdef.json those
+     * commands write no longer has the shape of the blue task definition,
+     * for example because a container or an option was added to blue after
+     * the files were rendered, or the file was edited in the step
+     */
+    public IValidation shapeValidation(List<String> commands) {
+        return () -> {
+            final JsonNode green;
+            try {
+                green = JSON.readTree(writtenFile(commands, "taskdef.json"));
+            } catch (JsonProcessingException | IllegalArgumentException e) {
+                return List.of("Cannot read the taskdef.json written by the deploy step: " + e.getMessage());
+            }
+            return compareShapes(describe(blue), green);
+        };
+    }
+
+    /**
+     * @return the content a command of {@link #commands(String)} writes
+     * into the file of that name
+     */
+    static String writtenFile(List<String> commands, String name) {
+
+        final String prefix = "printf '%s\\n' '";
+        for (String command : commands) {
+            final int redirect = command.lastIndexOf("' > ");
+            if (command.startsWith(prefix) && redirect > 0 && command.endsWith("/" + name)) {
+                return command.substring(prefix.length(), redirect).replace("'\"'\"'", "'");
+            }
+        }
+        throw new IllegalArgumentException("No command writes " + name);
+    }
+
+    /**
+     * @return one line per field in which the task definitions differ,
+     * ignoring container images
+     */
+    public static List<String> compareShapes(JsonNode blue, JsonNode green) {
+
+        final List<String> differences = new ArrayList<>();
+        final ObjectNode blueShape = shape(blue);
+        final ObjectNode greenShape = shape(green);
+        final List<String> fields = new ArrayList<>();
+        blueShape.fieldNames().forEachRemaining(fields::add);
+        greenShape.fieldNames().forEachRemaining(name -> {
+            if (!fields.contains(name)) fields.add(name);
+        });
+        for (String field : fields) {
+            final JsonNode blueValue = blueShape.path(field);
+            final JsonNode greenValue = greenShape.path(field);
+            if (!blueValue.equals(greenValue)) {
+                differences.add("green task definition differs from blue in " + field + ": blue " + blueValue
+                        + ", green " + greenValue);
+            }
+        }
+        return differences;
+    }
+
+    private static ObjectNode shape(JsonNode taskDefinition) {
+
+        final ObjectNode shape = taskDefinition.deepCopy();
+        for (JsonNode container : shape.withArray("containerDefinitions")) {
+            ((ObjectNode) container).remove("image");
+        }
+        return shape;
+    }
+
+    /**
+     * Renders a synthesized task definition as the input of the ECS
+     * RegisterTaskDefinition API.
+     */
+    private ObjectNode describe(FargateTaskDefinition definition) {
+
+        final CfnTaskDefinition cfn = (CfnTaskDefinition) definition.getNode().getDefaultChild();
+        final ObjectNode rendered = JSON.createObjectNode();
+        put(rendered, "family", cfn.getFamily());
+        put(rendered, "taskRoleArn", cfn.getTaskRoleArn());
+        put(rendered, "executionRoleArn", cfn.getExecutionRoleArn());
+        put(rendered, "networkMode", cfn.getNetworkMode());
+        put(rendered, "containerDefinitions", cfn.getContainerDefinitions());
+        put(rendered, "volumes", cfn.getVolumes());
+        put(rendered, "requiresCompatibilities", cfn.getRequiresCompatibilities());
+        put(rendered, "cpu", cfn.getCpu());
+        put(rendered, "memory", cfn.getMemory());
+        put(rendered, "runtimePlatform", cfn.getRuntimePlatform());
+        put(rendered, "ephemeralStorage", cfn.getEphemeralStorage());
+        return rendered;
+    }
+
+    private void put(ObjectNode target, String field, Object value) {
+
+        if (value == null) return;
+        final JsonNode resolved = camelCase(resolve(JSON.valueToTree(stack.resolve(value))));
+        if (!resolved.isNull() && !(resolved.isContainerNode() && resolved.size() == 0)) {
+            target.set(field, resolved);
+        }
+    }
+
+    private String resolveText(Object value) {
+
+        final JsonNode resolved = resolve(JSON.valueToTree(stack.resolve(value)));
+        if (!resolved.isTextual()) {
+            throw new IllegalStateException("Cannot render " + resolved + " as text");
+        }
+        return resolved.asText();
+    }
+
+    /**
+     * Replaces the CloudFormation intrinsics the task definition uses with
+     * their values.
+     */
+    private JsonNode resolve(JsonNode node) {
+
+        if (node.isArray()) {
+            final ArrayNode resolved = JSON.createArrayNode();
+            node.forEach(item -> resolved.add(resolve(item)));
+            return resolved;
+        }
+        if (!node.isObject()) {
+            return node;
+        }
+        if (node.size() == 1) {
+            final String function = node.fieldNames().next();
+            final JsonNode argument = node.get(function);
+            switch (function) {
+                case "Ref":
+                    return TextNode.valueOf(ref(argument.asText()));
+                case "Fn::GetAtt":
+                    return TextNode.valueOf(getAtt(argument.get(0).asText(), argument.get(1).asText()));
+                case "Fn::Join":
+                    final StringBuilder joined = new StringBuilder();
+                    final JsonNode parts = resolve(argument.get(1));
+                    for (int i = 0; i < parts.size(); i++) {
+                        if (i > 0) joined.append(argument.get(0).asText());
+                        joined.append(parts.get(i).asText());
+                    }
+                    return TextNode.valueOf(joined.toString());
+                case "Fn::Sub":
+                    return TextNode.valueOf(substitute(argument.asText()));
+                default:
+                    if (function.startsWith("Fn::")) {
+                        throw new IllegalStateException("Cannot resolve " + function + " in " + node);
+                    }
+            }
+        }
+        final ObjectNode resolved = JSON.createObjectNode();
+        node.fields().forEachRemaining(field -> resolved.set(field.getKey(), resolve(field.getValue())));
+        return resolved;
+    }
+
+    private String substitute(String template) {
+
+        final Matcher matcher = SUBSTITUTION.matcher(template);
+        final StringBuffer out = new StringBuffer();
+        while (matcher.find()) {
+            final String name = matcher.group(1);
+            final int dot = name.indexOf('.');
+            final String value = dot < 0 ? ref(name) : getAtt(name.substring(0, dot), name.substring(dot + 1));
+            matcher.appendReplacement(out, Matcher.quoteReplacement(value));
+        }
+        return matcher.appendTail(out).toString();
+    }
+
+    private String ref(String name) {
+
+        switch (name) {
+            case "AWS::AccountId":
+                return concrete(stack.getAccount(), "account");
+            case "AWS::Region":
+                return concrete(stack.getRegion(), "region");
+            case "AWS::Partition":
+                return partition();
+            case "AWS::URLSuffix":
+                return partition().equals("aws-cn") ? "amazonaws.com.cn" : "amazonaws.com";
+            default:
+        }
+        final CfnResource resource = resource(name);
+        if (resource instanceof CfnRole && ((CfnRole) resource).getRoleName() != null) {
+            return resolveText(((CfnRole) resource).getRoleName());
+        }
+        if (resource instanceof CfnLogGroup && ((CfnLogGroup) resource).getLogGroupName() != null) {
+            return resolveText(((CfnLogGroup) resource).getLogGroupName());
+        }
+        throw new IllegalStateException("Cannot resolve Ref to " + name + "; give the resource an explicit name");
+    }
+
+    private String getAtt(String name, String attribute) {
+
+        final CfnResource resource = resource(name);
+        if (resource instanceof CfnRole && "Arn".equals(attribute)) {
+            final CfnRole role = (CfnRole) resource;
+            final String path = role.getPath() != null ? resolveText(role.getPath()) : "/";
+            return "arn:" + partition() + ":iam::" + ref("AWS::AccountId") + ":role" + path + ref(name);
+        }
+        throw new IllegalStateException("Cannot resolve " + name + "." + attribute);
+    }
+
+    private CfnResource resource(String logicalId) {
+
+        for (IConstruct child : stack.getNode().findAll()) {
+            if (child instanceof CfnResource
+                    && logicalId.equals(stack.resolve(stack.getLogicalId((CfnResource) child)))) {
+                return (CfnResource) child;
+            }
+        }
+        throw new IllegalStateException("No resource " + logicalId + " in " + stack.getStackName());
+    }
+
+    private String partition() {
+
+        final String region = ref("AWS::Region");
+        if (region.startsWith("cn-")) return "aws-cn";
+        if (region.startsWith("us-gov-")) return "aws-us-gov";
+        return "aws";
+    }
+
+    private static String concrete(String value, String name) {
+        if (Token.isUnresolved(value)) {
+            throw new IllegalStateException("The stack needs an explicit " + name + " to render the CodeDeploy files");
+        }
+        return value;
+    }
+
+    /**
+     * Turns CloudFormation property names into ECS API field names. Maps of
+     * user data, such as log driver options, keep their keys.
+     */
+    private static JsonNode camelCase(JsonNode node) {
+
+        if (node.isArray()) {
+            final ArrayNode converted = JSON.createArrayNode();
+            node.forEach(item -> converted.add(camelCase(item)));
+            return converted;
+        }
+        if (!node.isObject()) {
+            return node;
+        }
+        final ObjectNode converted = JSON.createObjectNode();
+        final Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            final Map.Entry<String, JsonNode> field = fields.next();
+            final String key = Character.toLowerCase(field.getKey().charAt(0)) + field.getKey().substring(1);
+            converted.set(key, USER_DATA.contains(key) ? field.getValue() : camelCase(field.getValue()));
+        }
+        return converted;
+    }
+
+    private static int containerPort(JsonNode taskDefinition, String containerName) {
+
+        for (JsonNode container : taskDefinition.withArray("containerDefinitions")) {
+            if (containerName.equals(container.path("name").asText())) {
+                return container.path("portMappings").path(0).path("containerPort").asInt(8080);
+            }
+        }
+        throw new IllegalStateException("No container " + containerName + " in the task definition");
+    }
+
+    /**
+     * @param hooks Lambda function CodeDeploy runs, by lifecycle event
+     */
+    static String appSpec(String containerName, int containerPort, Map<String, String> hooks) {
+
+        final StringBuilder yaml = new StringBuilder()
+                .append("version: 0.0\n")
+                .append("Resources:\n")
+                .append("  - TargetService:\n")
+                .append("      Type: AWS::ECS::Service\n")
+                .append("      Properties:\n")
+                .append("        TaskDefinition: <TASK_DEFINITION>\n")
+                .append("        LoadBalancerInfo:\n")
+                .append("          ContainerName: \"").append(containerName).append("\"\n")
+                .append("          ContainerPort: ").append(containerPort).append('\n')
+                .append("        PlatformVersion: \"LATEST\"\n");
+        if (!hooks.isEmpty()) {
+            yaml.append("Hooks:\n");
+            hooks.forEach((event, function) ->
+                    yaml.append("  - ").append(event).append(": \"").append(function).append("\"\n"));
+        }
+        return yaml.toString();
+    }
+
+    /**
+     * @return a command writing the content to the file, quoted for sh
+     */
+    private static String write(String content, String file) {
+        return "printf '%s\\n' '" + content.replace("'", "'\"'\"'") + "' > " + file;
+    }
+}
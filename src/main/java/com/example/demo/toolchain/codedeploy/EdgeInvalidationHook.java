@@ -0,0 +1,127 @@
+/* (C)2023 */
+package com.example.demo.toolchain.codedeploy;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * CodeDeploy AfterAllowTraffic hook. Once production traffic reaches the
+ * green task set, it invalidates the CloudFront distribution in front of
+ * the load balancer, so the edge fetches responses cached from blue again.
+ *
+ * The invalidation does not fail the deployment: green already serves
+ * production traffic, and whatever the edge still holds expires with its
+ * Cache-Control. Errors are logged and the hook reports Succeeded.
+ * Configuration comes from the environment: DISTRIBUTION_ID and PATHS
+ * (comma separated, /* when unset).
+ */
+public class EdgeInvalidationHook {
+
+    // CloudFront is a global service, signed for us-east-1
+    private static final String REGION = "us-east-1";
+
+    private final Map<String, String> env;
+    private final Clock clock;
+    private final HttpClient client =
+            HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+    public EdgeInvalidationHook() {
+        this(System.getenv(), Clock.systemUTC());
+    }
+
+    EdgeInvalidationHook(Map<String, String> env, Clock clock) {
+        this.env = env;
+        this.clock = clock;
+    }
+
+    /**
+     * @param event the CodeDeploy hook event, with DeploymentId and
+     *     LifecycleEventHookExecutionId
+     * @return the status reported to CodeDeploy
+     */
+    public String handleRequest(Map<String, Object> event) throws IOException, InterruptedException {
+
+        try {
+            final String id = invalidate(String.valueOf(event.get("DeploymentId")));
+            System.out.println("Created invalidation " + id);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+        LifecycleHooks.report(client, clock, env, event, LifecycleHooks.SUCCEEDED);
+        return LifecycleHooks.SUCCEEDED;
+    }
+
+    /**
+     * Creates the invalidation. The deployment ID is its caller reference,
+     * so a retried hook does not invalidate twice.
+     *
+     * @return location of the invalidation
+     */
+    String invalidate(String deploymentId) throws IOException, InterruptedException {
+
+        final String distributionId = LifecycleHooks.require(env, "DISTRIBUTION_ID");
+        final Map<String, String> headers = new TreeMap<>();
+        headers.put("content-type", "application/xml");
+
+        final HttpResponse<String> response = client.send(
+                LifecycleHooks.sign(
+                        clock,
+                        env,
+                        "POST",
+                        URI.create(
+                                "https://cloudfront.amazonaws.com/2020-05-31/distribution/" + distributionId
+                                        + "/invalidation"),
+                        "cloudfront",
+                        REGION,
+                        headers,
+                        invalidationBatch(paths(), deploymentId)),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 201) {
+            throw new IOException("CloudFront answered " + response.statusCode() + ": " + response.body());
+        }
+        return response.headers().firstValue("Location").orElse("");
+    }
+
+    List<String> paths() {
+
+        final List<String> paths = new ArrayList<>();
+        final String value = env.get("PATHS");
+        if (value != null) {
+            for (String path : value.split(",")) {
+                if (!path.trim().isEmpty()) paths.add(path.trim());
+            }
+        }
+        if (paths.isEmpty()) paths.add("/*");
+        return paths;
+    }
+
+    /**
+     * @return body of the CreateInvalidation request
+     */
+    static String invalidationBatch(List<String> paths, String callerReference) {
+
+        final StringBuilder xml = new StringBuilder()
+                .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+                .append("<InvalidationBatch xmlns=\"http://cloudfront.amazonaws.com/doc/2020-05-31/\">")
+                .append("<Paths><Quantity>")
+                .append(paths.size())
+                .append("</Quantity><Items>");
+        for (String path : paths) xml.append("<Path>").append(escape(path)).append("</Path>");
+        return xml.append("</Items></Paths><CallerReference>")
+                .append(escape(callerReference))
+                .append("</CallerReference></InvalidationBatch>")
+                .toString();
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
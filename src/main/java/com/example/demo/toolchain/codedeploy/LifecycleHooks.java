@@ -0,0 +1,170 @@
+/* (C)2023 */
+package com.example.demo.toolchain.codedeploy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * AWS calls of the CodeDeploy lifecycle hook functions. Requests are signed
+ * here with Signature Version 4 and the credentials Lambda puts in the
+ * environment, so the functions need neither the Lambda runtime library
+ * nor the AWS SDK. The signing is checked against the vectors of the AWS
+ * Signature Version 4 test suite (see LifecycleHooksTest).
+ */
+public final class LifecycleHooks {
+
+    public static final String SUCCEEDED = "Succeeded";
+    public static final String FAILED = "Failed";
+
+    private static final String TARGET = "CodeDeploy_20141006.PutLifecycleEventHookExecutionStatus";
+    private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private LifecycleHooks() {}
+
+    /**
+     * Reports the outcome of a hook to CodeDeploy with
+     * PutLifecycleEventHookExecutionStatus.
+     *
+     * @param event the CodeDeploy hook event, with DeploymentId and
+     *     LifecycleEventHookExecutionId
+     */
+    public static void report(
+            HttpClient client, Clock clock, Map<String, String> env, Map<String, Object> event, String status)
+            throws IOException, InterruptedException {
+
+        final String region = require(env, "AWS_REGION");
+        final Map<String, String> headers = new TreeMap<>();
+        headers.put("content-type", "application/x-amz-json-1.1");
+        headers.put("x-amz-target", TARGET);
+
+        final HttpResponse<String> response = client.send(
+                sign(
+                        clock,
+                        env,
+                        "POST",
+                        URI.create("https://codedeploy." + region + ".amazonaws.com/"),
+                        "codedeploy",
+                        region,
+                        headers,
+                        statusBody(event, status)),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("CodeDeploy answered " + response.statusCode() + ": " + response.body());
+        }
+    }
+
+    /**
+     * @return body of the PutLifecycleEventHookExecutionStatus request
+     */
+    static String statusBody(Map<String, Object> event, String status) {
+        return JSON.createObjectNode()
+                .put("deploymentId", String.valueOf(event.get("DeploymentId")))
+                .put("lifecycleEventHookExecutionId", String.valueOf(event.get("LifecycleEventHookExecutionId")))
+                .put("status", status)
+                .toString();
+    }
+
+    /**
+     * @param clock time the request is signed at
+     * @param uri request URI, without a query string
+     * @param headers lower case header names; host, x-amz-date and the
+     *     session token are added
+     * @return the request, signed for the service and region
+     */
+    public static HttpRequest sign(
+            Clock clock,
+            Map<String, String> env,
+            String method,
+            URI uri,
+            String service,
+            String region,
+            Map<String, String> headers,
+            String body) {
+
+        if (uri.getRawQuery() != null) {
+            throw new IllegalArgumentException("Query strings are not signed: " + uri);
+        }
+        final String amzDate = ZonedDateTime.now(clock.withZone(ZoneOffset.UTC)).format(AMZ_DATE);
+        final String date = amzDate.substring(0, 8);
+        final String token = env.get("AWS_SESSION_TOKEN");
+
+        final Map<String, String> signed = new TreeMap<>(headers);
+        signed.put("host", uri.getHost());
+        signed.put("x-amz-date", amzDate);
+        if (token != null) signed.put("x-amz-security-token", token);
+
+        final StringBuilder canonicalHeaders = new StringBuilder();
+        signed.forEach((name, value) -> canonicalHeaders.append(name).append(':').append(value).append('\n'));
+        final String signedHeaders = String.join(";", signed.keySet());
+        final String path = uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        final String canonicalRequest = method + "\n" + path + "\n\n" + canonicalHeaders + "\n"
+                + signedHeaders + "\n" + hex(sha256(body));
+        final String scope = date + "/" + region + "/" + service + "/aws4_request";
+        final String stringToSign =
+                "AWS4-HMAC-SHA256\n" + amzDate + "\n" + scope + "\n" + hex(sha256(canonicalRequest));
+
+        byte[] key = hmac(("AWS4" + require(env, "AWS_SECRET_ACCESS_KEY")).getBytes(StandardCharsets.UTF_8), date);
+        key = hmac(key, region);
+        key = hmac(key, service);
+        key = hmac(key, "aws4_request");
+        final String signature = hex(hmac(key, stringToSign));
+
+        final HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofSeconds(10))
+                .header("Authorization", "AWS4-HMAC-SHA256 Credential=" + require(env, "AWS_ACCESS_KEY_ID") + "/"
+                        + scope + ", SignedHeaders=" + signedHeaders + ", Signature=" + signature)
+                .method(method, HttpRequest.BodyPublishers.ofString(body));
+        // the client sets host itself
+        signed.forEach((name, value) -> {
+            if (!name.equals("host")) request.header(name, value);
+        });
+        return request.build();
+    }
+
+    static String require(Map<String, String> env, String name) {
+        final String value = env.get(name);
+        if (value == null || value.isEmpty()) throw new IllegalStateException(name + " is not set");
+        return value;
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String value) {
+        try {
+            final Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(value.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        final StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        return hex.toString();
+    }
+}
@@ -0,0 +1,275 @@
+/* (C)2023 */
+package com.example.demo.toolchain.image;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reports the size of a runtime image and how many of its layers another
+ * build of the image already has. A task pulls only the layers its host
+ * does not have yet, so the layers that change on every build (the
+ * application jar and its class data archive) should be small and come
+ * last, after the JRE and the dependencies.
+ *
+ * Usage: ImageReport image [previous-image]
+ *
+ * Both images must be in the local Docker engine; they are read with
+ * docker save. Sizes are uncompressed layer sizes.
+ */
+public class ImageReport {
+
+    private static final int BLOCK = 512;
+    /** Entries below this size, such as manifest.json and the image config, are kept in memory. */
+    private static final long METADATA_LIMIT = 1024 * 1024;
+    private static final int STEP_WIDTH = 70;
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    static final class Layer {
+
+        final String diffId;
+        final long size;
+        final String step;
+
+        Layer(String diffId, long size, String step) {
+            this.diffId = diffId;
+            this.size = size;
+            this.step = step;
+        }
+    }
+
+    private final String image;
+    private final List<Layer> layers;
+
+    ImageReport(String image, List<Layer> layers) {
+        this.image = image;
+        this.layers = Collections.unmodifiableList(layers);
+    }
+
+    public static void main(String args[]) throws IOException, InterruptedException {
+
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: ImageReport image [previous-image]");
+            System.exit(2);
+        }
+        final ImageReport current = inspect(args[0]);
+        System.out.print(current.toText(args.length > 1 ? inspect(args[1]) : null));
+    }
+
+    /**
+     * Reads the layers of an image of the local Docker engine.
+     */
+    public static ImageReport inspect(String image) throws IOException, InterruptedException {
+
+        final Process process = new ProcessBuilder("docker", "save", image)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        final ImageReport report;
+        try (InputStream in = process.getInputStream()) {
+            report = read(image, in);
+            // docker save may pad the archive after its end
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        if (process.waitFor() != 0) {
+            throw new IOException("docker save " + image + " exited with " + process.exitValue());
+        }
+        return report;
+    }
+
+    /**
+     * Reads the layers of an image from the tar archive written by docker
+     * save, in either the legacy or the OCI layout. Both list the layers in
+     * manifest.json, in the order of the diff ids of the image config.
+     */
+    static ImageReport read(String image, InputStream tar) throws IOException {
+
+        final Map<String, Long> sizes = new HashMap<>();
+        final Map<String, byte[]> metadata = new HashMap<>();
+        final byte[] header = new byte[BLOCK];
+        while (readBlock(tar, header) && header[0] != 0) {
+            final String name = name(header);
+            final long size = size(header);
+            final byte type = header[156];
+            if (type == '0' || type == 0) {
+                sizes.put(name, size);
+            }
+            if (size < METADATA_LIMIT) {
+                metadata.put(name, readBytes(tar, (int) size));
+            } else {
+                skip(tar, size);
+            }
+            skip(tar, (BLOCK - size % BLOCK) % BLOCK);
+        }
+
+        final byte[] manifestJson = metadata.get("manifest.json");
+        if (manifestJson == null) {
+            throw new IOException("No manifest.json in the image archive of " + image);
+        }
+        final JsonNode manifest = JSON.readTree(manifestJson).path(0);
+        final JsonNode config = JSON.readTree(metadata.get(manifest.path("Config").asText()));
+        final JsonNode diffIds = config.path("rootfs").path("diff_ids");
+
+        final List<String> steps = new ArrayList<>();
+        for (JsonNode entry : config.path("history")) {
+            if (!entry.path("empty_layer").asBoolean(false)) {
+                steps.add(step(entry.path("created_by").asText("")));
+            }
+        }
+
+        final List<Layer> layers = new ArrayList<>();
+        final JsonNode files = manifest.path("Layers");
+        for (int i = 0; i < files.size(); i++) {
+            final Long size = sizes.get(files.get(i).asText());
+            layers.add(new Layer(
+                    diffIds.path(i).asText(), size != null ? size : 0, i < steps.size() ? steps.get(i) : ""));
+        }
+        return new ImageReport(image, layers);
+    }
+
+    List<Layer> getLayers() {
+        return layers;
+    }
+
+    public long getSize() {
+        return layers.stream().mapToLong(layer -> layer.size).sum();
+    }
+
+    /**
+     * @return bytes of the layers the previous image does not have, what a
+     * host running the previous image pulls
+     */
+    public long getPullSize(ImageReport previous) {
+
+        final Set<String> cached = previous != null ? previous.diffIds() : Collections.emptySet();
+        return layers.stream()
+                .filter(layer -> !cached.contains(layer.diffId))
+                .mapToLong(layer -> layer.size)
+                .sum();
+    }
+
+    public String toText(ImageReport previous) {
+
+        final Set<String> cached = previous != null ? previous.diffIds() : Collections.emptySet();
+        final StringBuilder text = new StringBuilder();
+        text.append(String.format("Image %s: %d layers, %s%n", image, layers.size(), mebibytes(getSize())));
+        text.append(String.format("  %12s  %-6s  %s%n", "size", "reused", "step"));
+        int reused = 0;
+        for (Layer layer : layers) {
+            final boolean hit = cached.contains(layer.diffId);
+            reused += hit ? 1 : 0;
+            text.append(String.format("  %12s  %-6s  %s%n", mebibytes(layer.size), hit ? "yes" : "no", layer.step));
+        }
+        if (previous != null) {
+            text.append(String.format(
+                    "Reused from %s: %d of %d layers, %s; to pull: %s%n",
+                    previous.image,
+                    reused,
+                    layers.size(),
+                    mebibytes(getSize() - getPullSize(previous)),
+                    mebibytes(getPullSize(previous))));
+        }
+        return text.toString();
+    }
+
+    private Set<String> diffIds() {
+
+        final Set<String> ids = new HashSet<>();
+        layers.forEach(layer -> ids.add(layer.diffId));
+        return ids;
+    }
+
+    private static String mebibytes(long bytes) {
+        return String.format("%.1f MiB", bytes / (1024.0 * 1024.0));
+    }
+
+    /**
+     * @return the Dockerfile instruction of a history entry, without the
+     * shell prefix of the legacy builder
+     */
+    private static String step(String createdBy) {
+
+        String step = createdBy.replace("/bin/sh -c #(nop) ", "").replace("/bin/sh -c ", "RUN ");
+        step = step.replaceAll("\\s+", " ").trim();
+        return step.length() > STEP_WIDTH ? step.substring(0, STEP_WIDTH - 3) + "..." : step;
+    }
+
+    private static String name(byte[] header) {
+
+        final String name = text(header, 0, 100);
+        // ustar keeps the start of long names in the prefix field
+        final String prefix = new String(header, 257, 6, StandardCharsets.US_ASCII).startsWith("ustar")
+                ? text(header, 345, 155)
+                : "";
+        return prefix.isEmpty() ? name : prefix + "/" + name;
+    }
+
+    private static long size(byte[] header) {
+
+        if ((header[124] & 0x80) != 0) {
+            // base-256 encoding of sizes that do not fit in 11 octal digits
+            long size = 0;
+            for (int i = 125; i < 136; i++) {
+                size = (size << 8) | (header[i] & 0xff);
+            }
+            return size;
+        }
+        final String octal = text(header, 124, 12).trim();
+        return octal.isEmpty() ? 0 : Long.parseLong(octal, 8);
+    }
+
+    private static String text(byte[] header, int offset, int length) {
+
+        int end = offset;
+        while (end < offset + length && header[end] != 0) end++;
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static boolean readBlock(InputStream in, byte[] block) throws IOException {
+
+        int read = 0;
+        while (read < block.length) {
+            final int n = in.read(block, read, block.length - read);
+            if (n < 0) {
+                if (read == 0) return false;
+                throw new EOFException("Truncated tar header");
+            }
+            read += n;
+        }
+        return true;
+    }
+
+    private static byte[] readBytes(InputStream in, int length) throws IOException {
+
+        final byte[] bytes = in.readNBytes(length);
+        if (bytes.length < length) {
+            throw new EOFException("Truncated tar entry");
+        }
+        return bytes;
+    }
+
+    private static void skip(InputStream in, long length) throws IOException {
+
+        long remaining = length;
+        while (remaining > 0) {
+            final long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0) throw new EOFException("Truncated tar entry");
+                remaining--;
+            } else {
+                remaining -= skipped;
+            }
+        }
+    }
+}
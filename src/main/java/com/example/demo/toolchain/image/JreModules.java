@@ -0,0 +1,86 @@
+/* (C)2023 */
+package com.example.demo.toolchain.image;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.spi.ToolProvider;
+
+/**
+ * Build step that lists the JDK modules the runtime image needs, as found
+ * by jdeps in the application jar and its libraries, into the modules.txt
+ * file the jlink stage of the Dockerfile reads. The stage copies only this
+ * file, so a build whose classes use the same modules as the previous one
+ * reuses its JRE layer instead of linking a new one.
+ *
+ * It runs during the package phase (see pom.xml), after the runtime jar is
+ * built. The first argument is the file to write; the others are jars, or
+ * directories whose jars are read.
+ */
+public class JreModules {
+
+    /** Java release of the image (see Dockerfile), for the versioned classes of multi-release jars. */
+    private static final String RELEASE = "21";
+
+    public static void main(String args[]) throws IOException {
+
+        if (args.length < 2) {
+            System.err.println("Usage: JreModules output jar-or-directory...");
+            System.exit(2);
+        }
+        final List<Path> jars = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            jars.addAll(jars(Paths.get(args[i])));
+        }
+        final String modules = modules(jars);
+        Files.write(Paths.get(args[0]), (modules + "\n").getBytes(StandardCharsets.UTF_8));
+        System.out.println("JreModules::" + modules);
+    }
+
+    /**
+     * @return the modules the classes need, sorted and separated by commas
+     * as jlink --add-modules takes them
+     */
+    static String modules(List<Path> classes) {
+
+        final ToolProvider jdeps = ToolProvider.findFirst("jdeps")
+                .orElseThrow(() -> new IllegalStateException("jdeps is not available; build with a JDK"));
+        final List<String> args = new ArrayList<>(
+                Arrays.asList("--ignore-missing-deps", "--multi-release", RELEASE, "--print-module-deps"));
+        classes.forEach(path -> args.add(path.toString()));
+
+        final StringWriter out = new StringWriter();
+        final StringWriter err = new StringWriter();
+        final int status = jdeps.run(new PrintWriter(out), new PrintWriter(err), args.toArray(new String[0]));
+        if (status != 0) {
+            throw new IllegalStateException("jdeps exited with " + status + ": " + err + out);
+        }
+        return String.join(",", new TreeSet<>(Arrays.asList(out.toString().trim().split(","))));
+    }
+
+    /**
+     * @return the file itself, or the jars of a directory
+     */
+    static List<Path> jars(Path path) throws IOException {
+
+        final List<Path> jars = new ArrayList<>();
+        if (!Files.isDirectory(path)) {
+            jars.add(path);
+            return jars;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(path, "*.jar")) {
+            files.forEach(jars::add);
+        }
+        jars.sort(null);
+        return jars;
+    }
+}
@@ -32,7 +32,8 @@ class CodeDeployStep extends Step implements ICodePipelineActionFactory {
         Artifact artifact = options.getArtifacts().toCodePipeline(fileSet);
 
         stage.addAction(CodeDeployEcsDeployAction.Builder.create()
-                .actionName("Deploy")
+                // unique within the pipeline stage, which a wave shares between several deployments
+                .actionName(options.getActionName())
                 .appSpecTemplateInput(artifact)
                 .taskDefinitionTemplateInput(artifact)
                 .runOrder(options.getRunOrder())
@@ -2,8 +2,10 @@
 package com.example.demo.toolchain.infrastructure;
 
 import com.example.demo.Constants;
+import com.example.demo.components.service.Architecture;
 import com.example.demo.components.service.Service;
-
+import com.example.demo.components.service.ServiceOptions;
+import com.example.demo.toolchain.codedeploy.BlueGreenFiles;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -16,12 +18,14 @@ import software.amazon.awscdk.Environment;
 import software.amazon.awscdk.Stack;
 import software.amazon.awscdk.StackProps;
 import software.amazon.awscdk.Stage;
+import software.amazon.awscdk.pipelines.CodeBuildOptions;
 import software.amazon.awscdk.pipelines.CodeCommitSourceOptions;
 import software.amazon.awscdk.pipelines.CodePipeline;
 import software.amazon.awscdk.pipelines.CodePipelineSource;
 import software.amazon.awscdk.pipelines.ShellStep;
 import software.amazon.awscdk.pipelines.StageDeployment;
-import software.amazon.awscdk.pipelines.Step;
+import software.amazon.awscdk.pipelines.Wave;
+import software.amazon.awscdk.services.codebuild.BuildSpec;
 import software.amazon.awscdk.services.codecommit.Repository;
 import software.amazon.awscdk.services.codedeploy.EcsApplication;
 import software.amazon.awscdk.services.codedeploy.EcsDeploymentGroup;
@@ -38,13 +42,21 @@ public class ContinuousDeployment extends Stack {
 
     private CodePipeline pipeline = null;
 
-    private ContinuousDeployment(Construct scope, String id, String gitRepoURL, String gitBranch, StackProps props) {
+    /**
+     * Registers QEMU with the kernel of the asset publishing builds, so they
+     * can build ARM64 images on the x86_64 CodeBuild hosts.
+     */
+    private static final String INSTALL_ARM64_EMULATION = "docker run --privileged --rm "
+            + "public.ecr.aws/eks-distro-build-tooling/binfmt-misc:qemu-v7.0.0 --install arm64";
+
+    private ContinuousDeployment(
+            Construct scope, String id, String gitRepoURL, String gitBranch, StackProps props, boolean arm64) {
 
         super(scope, id, props);
-        pipeline = createPipeline(gitRepoURL, gitBranch);
+        pipeline = createPipeline(gitRepoURL, gitBranch, arm64);
     }
 
-    private CodePipeline createPipeline(String repoURL, String branch) {
+    private CodePipeline createPipeline(String repoURL, String branch, boolean arm64) {
 
         CodePipelineSource source = CodePipelineSource.codeCommit(
                 Repository.fromRepositoryName(this, "CodeRepository", repoURL),
@@ -62,6 +74,18 @@ public class ContinuousDeployment extends Stack {
                         .installCommands(Arrays.asList("npm install"))
                         .commands(Arrays.asList("mvn -B clean package", "npx cdk synth"))
                         .build())
+                .assetPublishingCodeBuildDefaults(
+                        arm64
+                                ? CodeBuildOptions.builder()
+                                        .partialBuildSpec(BuildSpec.fromObject(Map.of(
+                                                "phases",
+                                                Map.of(
+                                                        "install",
+                                                        Map.of(
+                                                                "commands",
+                                                                Arrays.asList(INSTALL_ARM64_EMULATION))))))
+                                        .build()
+                                : null)
                 .build();
     }
 
@@ -69,51 +93,69 @@ public class ContinuousDeployment extends Stack {
             final String stageName,
             final IEcsDeploymentConfig ecsDeploymentConfig,
             final Environment env,
-            final Boolean ADD_APPROVAL) {
+            final Boolean ADD_APPROVAL,
+            final ServiceOptions options,
+            final Wave wave) {
 
         // The stage
         Stage stage = Stage.Builder.create(pipeline, stageName).env(env).build();
 
         // My stack
-        new Service(
+        final Service service = new Service(
                 stage,
                 Constants.APP_NAME + "-" + stageName,
                 ecsDeploymentConfig,
                 StackProps.builder()
                         .stackName(Constants.APP_NAME + "-" + stageName)
                         .description(Constants.APP_NAME + "-" + stageName)
-                        .build());
+                        .build(),
+                options);
 
-        StageDeployment stageDeployment = pipeline.addStage(stage);
+        // stages of a wave deploy in parallel, in one pipeline stage
+        StageDeployment stageDeployment = wave != null ? wave.addStage(stage) : pipeline.addStage(stage);
 
-        // Configure AWS CodeDeploy
-        Step configureCodeDeployStep = ShellStep.Builder.create("ConfigureBlueGreenDeploy")
+        // Configure AWS CodeDeploy: the green task definition is rendered from the synthesized blue one
+        final BlueGreenFiles files = BlueGreenFiles.render(service);
+        ShellStep configureCodeDeployStep = ShellStep.Builder.create("ConfigureBlueGreenDeploy")
+                // CodeBuild actions need an input artifact; the files themselves are part of the commands
                 .input(pipeline.getCloudAssemblyFileSet())
                 .primaryOutputDirectory("codedeploy")
-                .commands(Arrays.asList(new String[] {
-                    "chmod a+x ./codedeploy/codedeploy_configuration.sh",
-                    "./codedeploy/codedeploy_configuration.sh",
-                    String.format(
-                            "./codedeploy/codedeploy_configuration.sh %s %s %s %s %s",
-                            env.getAccount(),
-                            env.getRegion(),
-                            Constants.APP_NAME,
-                            stageName,
-                            ((Construct) pipeline).getNode().getId())
-                }))
+                .commands(files.commands("codedeploy"))
                 .build();
+        // synth fails when the taskdef.json the step writes no longer matches blue
+        service.getNode().addValidation(files.shapeValidation(configureCodeDeployStep.getCommands()));
 
         stageDeployment.addPre(configureCodeDeployStep);
 
         // Deploy using AWS CodeDeploy
         stageDeployment.addPost(new CodeDeployStep(
-                "codeDeploypreprod",
+                "CodeDeploy",
                 configureCodeDeployStep.getPrimaryOutput(),
                 referenceCodeDeployDeploymentGroup(env, stageName, ecsDeploymentConfig),
                 stageName));
         return this;
     }
 
+    /**
+     * Adds a wave whose stages deploy at the same time. Each stage keeps its
+     * own CodeDeploy configuration and deployment; inside the pipeline stage
+     * of the wave, their actions are prefixed with the stage name.
+     */
+    private ContinuousDeployment addWave(final String waveName, final List<Builder.StageConfig> stages) {
+
+        final Wave wave = pipeline.addWave(waveName);
+        for (Builder.StageConfig stageConfig : stages) {
+            addStage(
+                    stageConfig.getStageName(),
+                    stageConfig.getEcsDeployConfig(),
+                    stageConfig.getEnv(),
+                    stageConfig.getApproval(),
+                    stageConfig.getOptions(),
+                    wave);
+        }
+        return this;
+    }
+
     /**
      * Self-mutating pipelines create a stage named UpdatePipeline.
      * AWS CodeDeploy uses configuration files to work properly and, depending on the use case (cross-account),
@@ -165,7 +207,7 @@ public class ContinuousDeployment extends Stack {
 
         IEcsApplication codeDeployApp = EcsApplication.fromEcsApplicationArn(
                 this,
-                Constants.APP_NAME + "EcsCodeDeployApp",
+                Constants.APP_NAME + "EcsCodeDeployApp" + stageName,
                 Arn.format(ArnComponents.builder()
                         .arnFormat(ArnFormat.COLON_RESOURCE_NAME)
                         .partition("aws")
@@ -178,7 +220,7 @@ public class ContinuousDeployment extends Stack {
 
         IEcsDeploymentGroup deploymentGroup = EcsDeploymentGroup.fromEcsDeploymentGroupAttributes(
                 this,
-                Constants.APP_NAME + "-EcsCodeDeployDG",
+                Constants.APP_NAME + "-EcsCodeDeployDG" + stageName,
                 EcsDeploymentGroupAttributes.builder()
                         .deploymentGroupName(Constants.APP_NAME + "-" + stageName)
                         .application(codeDeployApp)
@@ -198,7 +240,7 @@ public class ContinuousDeployment extends Stack {
         private String id;
         private String gitRepoURL;
         private String gitBranch;
-        private List<StageConfig> stages = new ArrayList<>();
+        private List<WaveConfig> waves = new ArrayList<>();
 
         private software.amazon.awscdk.StackProps props;
 
@@ -215,30 +257,76 @@ public class ContinuousDeployment extends Stack {
         }
 
         public Builder addStage(String name, IEcsDeploymentConfig deployConfig, Environment env) {
-            this.stages.add(new StageConfig(name, deployConfig, env));
+            return addStage(name, deployConfig, env, ServiceOptions.defaults());
+        }
+
+        /**
+         * Adds a stage whose Service stack is configured with the given
+         * options, such as the target group health check.
+         */
+        public Builder addStage(
+                String name, IEcsDeploymentConfig deployConfig, Environment env, ServiceOptions options) {
+            this.waves.add(new WaveConfig(null, Arrays.asList(new StageConfig(name, deployConfig, env, options))));
+            return this;
+        }
+
+        /**
+         * Adds a wave of stages deployed in parallel, for example one per
+         * region. Waves and stages deploy in the order they are added.
+         */
+        public Builder addWave(String name, StageConfig... stages) {
+            this.waves.add(new WaveConfig(name, Arrays.asList(stages)));
             return this;
         }
 
+        /**
+         * @return a stage of a wave (see {@link #addWave})
+         */
+        public static StageConfig stage(String name, IEcsDeploymentConfig deployConfig, Environment env) {
+            return stage(name, deployConfig, env, ServiceOptions.defaults());
+        }
+
+        public static StageConfig stage(
+                String name, IEcsDeploymentConfig deployConfig, Environment env, ServiceOptions options) {
+            return new StageConfig(name, deployConfig, env, options);
+        }
+
         public ContinuousDeployment build() {
 
             Map<String, Environment> stageNameEnvironment = new HashMap<>();
 
             ContinuousDeployment pipeline = new ContinuousDeployment(
-                    this.scope, this.id, this.gitRepoURL, this.gitBranch, this.props != null ? this.props : null);
+                    this.scope,
+                    this.id,
+                    this.gitRepoURL,
+                    this.gitBranch,
+                    this.props != null ? this.props : null,
+                    waves.stream()
+                            .flatMap(wave -> wave.stages.stream())
+                            .anyMatch(stage -> stage.getOptions().getArchitecture() == Architecture.ARM64));
             String pipelineAccount = pipeline.getAccount();
 
-            for (StageConfig stageConfig : stages) {
-
-                pipeline.addStage(
-                        stageConfig.getStageName(),
-                        stageConfig.getEcsDeployConfig(),
-                        stageConfig.getEnv(),
-                        stageConfig.getApproval());
+            for (WaveConfig waveConfig : waves) {
+
+                if (waveConfig.name != null) {
+                    pipeline.addWave(waveConfig.name, waveConfig.stages);
+                } else {
+                    final StageConfig stageConfig = waveConfig.stages.get(0);
+                    pipeline.addStage(
+                            stageConfig.getStageName(),
+                            stageConfig.getEcsDeployConfig(),
+                            stageConfig.getEnv(),
+                            stageConfig.getApproval(),
+                            stageConfig.getOptions(),
+                            null);
+                }
 
-                if (pipeline.isSelfMutationEnabled()
-                        && !pipelineAccount.equals(stageConfig.getEnv().getAccount())) {
+                for (StageConfig stageConfig : waveConfig.stages) {
+                    if (pipeline.isSelfMutationEnabled()
+                            && !pipelineAccount.equals(stageConfig.getEnv().getAccount())) {
 
-                    stageNameEnvironment.put(stageConfig.getStageName(), stageConfig.getEnv());
+                        stageNameEnvironment.put(stageConfig.getStageName(), stageConfig.getEnv());
+                    }
                 }
             }
             if (!stageNameEnvironment.isEmpty()) {
@@ -247,17 +335,34 @@ public class ContinuousDeployment extends Stack {
             return pipeline;
         }
 
-        private static final class StageConfig {
+        /**
+         * Stages deployed together; a stage added on its own has no name.
+         */
+        private static final class WaveConfig {
+
+            final String name;
+            final List<StageConfig> stages;
+
+            private WaveConfig(String name, List<StageConfig> stages) {
+                this.name = name;
+                this.stages = stages;
+            }
+        }
+
+        public static final class StageConfig {
 
             String name;
             IEcsDeploymentConfig ecsDeploymentConfig;
             Environment env;
             Boolean approval = Boolean.FALSE;
+            ServiceOptions options;
 
-            private StageConfig(String name, IEcsDeploymentConfig ecsDeploymentConfig, Environment env) {
+            private StageConfig(
+                    String name, IEcsDeploymentConfig ecsDeploymentConfig, Environment env, ServiceOptions options) {
                 this.name = name;
                 this.ecsDeploymentConfig = ecsDeploymentConfig;
                 this.env = env;
+                this.options = options;
             }
 
             public String getStageName() {
@@ -275,6 +380,10 @@ public class ContinuousDeployment extends Stack {
             public Boolean getApproval() {
                 return approval;
             }
+
+            public ServiceOptions getOptions() {
+                return options;
+            }
         }
 
         /**
@@ -0,0 +1,69 @@
+/* (C)2023 */
+package com.example.demo.toolchain.loadtest;
+
+import com.example.demo.components.service.compute.runtime.Main;
+import java.net.URI;
+import java.time.Duration;
+import org.glassfish.grizzly.http.server.HttpServer;
+
+/**
+ * Compares the blocking and asynchronous endpoints of AsyncExampleResource
+ * under the same open-model load. The service runs in-process with a small
+ * bounded worker pool, so the blocking endpoint can serve at most
+ * threads * 1000 / delay requests per second while the asynchronous one is
+ * limited by the offered rate:
+ *
+ * mvn compile exec:java -Dexec.mainClass=com.example.demo.toolchain.loadtest.AsyncLoadTest \
+ *   -Dexec.args="--rate=400 --delay=200 --threads=16 --duration=20"
+ */
+public class AsyncLoadTest {
+
+    public static void main(String args[]) throws Exception {
+
+        int rate = 400;
+        int delay = 200;
+        int threads = 16;
+        int seconds = 20;
+        int port = 18101;
+        for (String arg : args) {
+            final String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--rate=")) rate = Integer.parseInt(value);
+            else if (arg.startsWith("--delay=")) delay = Integer.parseInt(value);
+            else if (arg.startsWith("--threads=")) threads = Integer.parseInt(value);
+            else if (arg.startsWith("--duration=")) seconds = Integer.parseInt(value);
+            else if (arg.startsWith("--port=")) port = Integer.parseInt(value);
+            else throw new IllegalArgumentException("Unknown option " + arg);
+        }
+
+        System.setProperty("runtime.executor", "bounded");
+        System.setProperty("runtime.executor.threads", String.valueOf(threads));
+        System.setProperty("runtime.async.timeout.millis", String.valueOf(Math.max(2000, delay * 10)));
+        final URI base = URI.create("http://localhost:" + port + "/");
+        final HttpServer server = new Main().startServer(base);
+        try {
+            final StringBuilder summary =
+                    new StringBuilder("\nendpoint          throughput/s   p50 ms   p99 ms   errors\n");
+            for (String endpoint : new String[] {"async/blocking", "async", "async/suspended"}) {
+                final LoadReport report = LoadGenerator.Builder.create()
+                        .rate(rate)
+                        .duration(Duration.ofSeconds(seconds))
+                        .warmup(Duration.ofSeconds(5))
+                        .maxOutstanding(rate * 10)
+                        .path(endpoint + "?delay=" + delay)
+                        .build()
+                        .run(base);
+                System.out.println(report.toText());
+                summary.append(String.format(
+                        "%-17s %12.1f %8.1f %8.1f %8d%n",
+                        endpoint,
+                        report.getThroughput(),
+                        report.getLatencyMicros(50) / 1000.0,
+                        report.getLatencyMicros(99) / 1000.0,
+                        report.getErrors()));
+            }
+            System.out.println(summary);
+        } finally {
+            server.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/* (C)2023 */
+package com.example.demo.toolchain.loadtest;
+
+import com.example.demo.toolchain.codedeploy.LifecycleHooks;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * CodeDeploy AfterAllowTestTraffic hook. Once the test listener routes to
+ * the green task set, it runs {@link LatencyComparator} against the
+ * production listener (blue) and the test listener (green) and reports
+ * Succeeded or Failed back to CodeDeploy; a failure stops the deployment
+ * before any production traffic reaches green.
+ *
+ * Runs as a Java Lambda function created by Service when a LatencyCheck is
+ * configured. The handler is a plain method taking the event as a map, and
+ * the CodeDeploy call is signed by {@link LifecycleHooks}, so the function
+ * needs neither the Lambda runtime library nor the AWS SDK. Configuration
+ * comes from the environment: BASELINE_URL, CANDIDATE_URL, RATE, DURATION_SECONDS,
+ * WARMUP_SECONDS, PATHS (comma separated), MAX_P50_RATIO, MAX_P99_RATIO,
+ * MAX_THROUGHPUT_DROP, MAX_ERROR_RATE and MIN_LATENCY_DELTA_MILLIS.
+ */
+public class ComparatorHook {
+
+    private final Map<String, String> env;
+    private final Clock clock;
+    private final HttpClient client =
+            HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+    public ComparatorHook() {
+        this(System.getenv(), Clock.systemUTC());
+    }
+
+    ComparatorHook(Map<String, String> env, Clock clock) {
+        this.env = env;
+        this.clock = clock;
+    }
+
+    /**
+     * @param event the CodeDeploy hook event, with DeploymentId and
+     *     LifecycleEventHookExecutionId
+     * @return the status reported to CodeDeploy
+     */
+    public String handleRequest(Map<String, Object> event) throws IOException, InterruptedException {
+
+        String status;
+        try {
+            final Comparison comparison = comparator().build().run();
+            System.out.println(comparison.toText());
+            System.out.println(comparison.toJson());
+            status = comparison.isPassed() ? LifecycleHooks.SUCCEEDED : LifecycleHooks.FAILED;
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            status = LifecycleHooks.FAILED;
+        }
+        LifecycleHooks.report(client, clock, env, event, status);
+        return status;
+    }
+
+    LatencyComparator.Builder comparator() {
+
+        final LatencyComparator.Builder builder = LatencyComparator.Builder.create()
+                .baseline(URI.create(require("BASELINE_URL")))
+                .candidate(URI.create(require("CANDIDATE_URL")));
+        if (env.containsKey("RATE")) builder.rate(Integer.parseInt(env.get("RATE")));
+        if (env.containsKey("DURATION_SECONDS")) {
+            builder.duration(Duration.ofSeconds(Long.parseLong(env.get("DURATION_SECONDS"))));
+        }
+        if (env.containsKey("WARMUP_SECONDS")) {
+            builder.warmup(Duration.ofSeconds(Long.parseLong(env.get("WARMUP_SECONDS"))));
+        }
+        if (env.containsKey("PATHS")) {
+            for (String path : env.get("PATHS").split(",")) builder.path(path.trim());
+        }
+        if (env.containsKey("MAX_P50_RATIO")) builder.maxP50Ratio(Double.parseDouble(env.get("MAX_P50_RATIO")));
+        if (env.containsKey("MAX_P99_RATIO")) builder.maxP99Ratio(Double.parseDouble(env.get("MAX_P99_RATIO")));
+        if (env.containsKey("MAX_THROUGHPUT_DROP")) {
+            builder.maxThroughputDrop(Double.parseDouble(env.get("MAX_THROUGHPUT_DROP")));
+        }
+        if (env.containsKey("MAX_ERROR_RATE")) builder.maxErrorRate(Double.parseDouble(env.get("MAX_ERROR_RATE")));
+        if (env.containsKey("MIN_LATENCY_DELTA_MILLIS")) {
+            builder.minLatencyDeltaMillis(Double.parseDouble(env.get("MIN_LATENCY_DELTA_MILLIS")));
+        }
+        return builder;
+    }
+
+    private String require(String name) {
+        final String value = env.get(name);
+        if (value == null || value.isEmpty()) throw new IllegalStateException(name + " is not set");
+        return value;
+    }
+}
@@ -0,0 +1,140 @@
+/* (C)2023 */
+package com.example.demo.toolchain.loadtest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Outcome of a {@link LatencyComparator} run: the reports of the baseline
+ * (blue) and candidate (green) targets and the budgets the candidate broke.
+ */
+public class Comparison {
+
+    private final LoadReport baseline;
+    private final LoadReport candidate;
+    private final List<String> failures;
+
+    Comparison(LoadReport baseline, LoadReport candidate, LatencyComparator.Budget budget) {
+        this.baseline = baseline;
+        this.candidate = candidate;
+        this.failures = Collections.unmodifiableList(evaluate(baseline, candidate, budget));
+    }
+
+    public LoadReport getBaseline() {
+        return baseline;
+    }
+
+    public LoadReport getCandidate() {
+        return candidate;
+    }
+
+    public boolean isPassed() {
+        return failures.isEmpty();
+    }
+
+    /**
+     * @return one line per broken budget, empty when the candidate passed
+     */
+    public List<String> getFailures() {
+        return failures;
+    }
+
+    public String toText() {
+
+        final StringBuilder text = new StringBuilder();
+        text.append("Baseline\n").append(baseline.toText()).append('\n');
+        text.append("Candidate\n").append(candidate.toText()).append('\n');
+        text.append(String.format(
+                Locale.ROOT,
+                "             %12s %12s%n"
+                        + "p50 ms       %12.3f %12.3f%n"
+                        + "p99 ms       %12.3f %12.3f%n"
+                        + "req/s        %12.1f %12.1f%n"
+                        + "errors %%     %12.2f %12.2f%n",
+                "baseline",
+                "candidate",
+                baseline.getLatencyMicros(50) / 1e3,
+                candidate.getLatencyMicros(50) / 1e3,
+                baseline.getLatencyMicros(99) / 1e3,
+                candidate.getLatencyMicros(99) / 1e3,
+                baseline.getThroughput(),
+                candidate.getThroughput(),
+                baseline.getErrorRate() * 100,
+                candidate.getErrorRate() * 100));
+        text.append(isPassed() ? "PASSED" : "FAILED");
+        for (String failure : failures) {
+            text.append("\n  ").append(failure);
+        }
+        return text.append('\n').toString();
+    }
+
+    public String toJson() {
+
+        final StringBuilder json = new StringBuilder("{\"passed\":").append(isPassed()).append(",\"failures\":[");
+        for (int i = 0; i < failures.size(); i++) {
+            if (i > 0) json.append(',');
+            json.append('"').append(failures.get(i).replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+        return json.append("],\"baseline\":")
+                .append(baseline.toJson())
+                .append(",\"candidate\":")
+                .append(candidate.toJson())
+                .append('}')
+                .toString();
+    }
+
+    static List<String> evaluate(LoadReport baseline, LoadReport candidate, LatencyComparator.Budget budget) {
+
+        final List<String> failures = new ArrayList<>();
+        checkLatency(failures, "p50", 50, baseline, candidate, budget.maxP50Ratio, budget.minLatencyDeltaMillis);
+        checkLatency(failures, "p99", 99, baseline, candidate, budget.maxP99Ratio, budget.minLatencyDeltaMillis);
+
+        final double minThroughput = baseline.getThroughput() * (1 - budget.maxThroughputDrop);
+        if (candidate.getThroughput() < minThroughput) {
+            failures.add(String.format(
+                    Locale.ROOT,
+                    "throughput %.1f req/s is below %.1f req/s (baseline %.1f req/s - %.0f%%)",
+                    candidate.getThroughput(),
+                    minThroughput,
+                    baseline.getThroughput(),
+                    budget.maxThroughputDrop * 100));
+        }
+        if (candidate.getErrorRate() > budget.maxErrorRate) {
+            failures.add(String.format(
+                    Locale.ROOT,
+                    "error rate %.2f%% is above %.2f%%",
+                    candidate.getErrorRate() * 100,
+                    budget.maxErrorRate * 100));
+        }
+        return failures;
+    }
+
+    /**
+     * A latency fails when it is both above ratio times the baseline and
+     * more than the minimum delta slower, so sub-millisecond noise does not
+     * fail a deployment.
+     */
+    private static void checkLatency(
+            List<String> failures,
+            String name,
+            double percentile,
+            LoadReport baseline,
+            LoadReport candidate,
+            double maxRatio,
+            double minDeltaMillis) {
+
+        final double base = baseline.getLatencyMicros(percentile) / 1e3;
+        final double value = candidate.getLatencyMicros(percentile) / 1e3;
+        if (value > base * maxRatio && value - base > minDeltaMillis) {
+            failures.add(String.format(
+                    Locale.ROOT,
+                    "%s latency %.3f ms is above %.2fx baseline %.3f ms",
+                    name,
+                    value,
+                    maxRatio,
+                    base));
+        }
+    }
+}
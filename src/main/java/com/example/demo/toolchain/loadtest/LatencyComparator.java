@@ -0,0 +1,297 @@
+/* (C)2023 */
+package com.example.demo.toolchain.loadtest;
+
+import com.example.demo.components.service.compute.runtime.Main;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.glassfish.grizzly.http.server.HttpServer;
+
+/**
+ * Sends the same open-model request mix to a baseline and a candidate at
+ * the same time and compares their latency distributions, throughput and
+ * error rates against regression budgets. In a blue/green deployment the
+ * baseline is the production listener (blue) and the candidate the test
+ * listener (green); {@link ComparatorHook} runs it as the CodeDeploy
+ * AfterAllowTestTraffic hook.
+ *
+ * With --local the whole flow runs offline: two services are started
+ * in-process and {@link WeightedRouter}s stand in for the load balancer
+ * listeners, the production one splitting traffic by --green-weight and the
+ * test one sending everything to green. --green-delay adds latency to green
+ * to see a regression fail the check:
+ *
+ * mvn compile exec:java -Dexec.mainClass=com.example.demo.toolchain.loadtest.LatencyComparator \
+ *   -Dexec.args="--local --green-delay=20 --rate=200 --duration=20"
+ *
+ * Options: --baseline and --candidate (base URLs), --rate, --duration and
+ * --warmup (seconds), --path (repeatable), --max-p50-ratio,
+ * --max-p99-ratio, --max-throughput-drop, --max-error-rate,
+ * --min-latency-delta (ms), --json (report file). Exits with 1 when the
+ * candidate breaks a budget.
+ */
+public class LatencyComparator {
+
+    private final URI baseline;
+    private final URI candidate;
+    private final LoadGenerator.Builder load;
+    private final Budget budget;
+
+    private LatencyComparator(Builder builder) {
+        this.baseline = builder.baseline;
+        this.candidate = builder.candidate;
+        this.load = builder.load;
+        this.budget = builder.budget;
+    }
+
+    /**
+     * Loads both targets in parallel, so both see the same conditions, and
+     * blocks until both runs are over.
+     */
+    public Comparison run() throws InterruptedException {
+
+        final CompletableFuture<LoadReport> blue = CompletableFuture.supplyAsync(() -> load(baseline));
+        final CompletableFuture<LoadReport> green = CompletableFuture.supplyAsync(() -> load(candidate));
+        try {
+            return new Comparison(blue.get(), green.get(), budget);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Load run failed", e.getCause());
+        }
+    }
+
+    private LoadReport load(URI target) {
+        try {
+            return load.build().run(target);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static void main(String args[]) throws Exception {
+
+        final Builder builder = Builder.create();
+        boolean local = false;
+        int greenWeight = 0;
+        int greenDelay = 0;
+        String json = null;
+        for (String arg : args) {
+            final int eq = arg.indexOf('=');
+            final String name = eq < 0 ? arg : arg.substring(0, eq);
+            final String value = eq < 0 ? "" : arg.substring(eq + 1);
+            switch (name) {
+                case "--baseline":
+                    builder.baseline(URI.create(value));
+                    break;
+                case "--candidate":
+                    builder.candidate(URI.create(value));
+                    break;
+                case "--rate":
+                    builder.rate(Integer.parseInt(value));
+                    break;
+                case "--duration":
+                    builder.duration(Duration.ofSeconds(Long.parseLong(value)));
+                    break;
+                case "--warmup":
+                    builder.warmup(Duration.ofSeconds(Long.parseLong(value)));
+                    break;
+                case "--path":
+                    builder.path(value);
+                    break;
+                case "--max-p50-ratio":
+                    builder.maxP50Ratio(Double.parseDouble(value));
+                    break;
+                case "--max-p99-ratio":
+                    builder.maxP99Ratio(Double.parseDouble(value));
+                    break;
+                case "--max-throughput-drop":
+                    builder.maxThroughputDrop(Double.parseDouble(value));
+                    break;
+                case "--max-error-rate":
+                    builder.maxErrorRate(Double.parseDouble(value));
+                    break;
+                case "--min-latency-delta":
+                    builder.minLatencyDeltaMillis(Double.parseDouble(value));
+                    break;
+                case "--local":
+                    local = true;
+                    break;
+                case "--green-weight":
+                    greenWeight = Integer.parseInt(value);
+                    break;
+                case "--green-delay":
+                    greenDelay = Integer.parseInt(value);
+                    break;
+                case "--json":
+                    json = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+
+        final List<HttpServer> servers = new ArrayList<>();
+        final List<WeightedRouter> routers = new ArrayList<>();
+        try {
+            if (local) {
+                final URI blue = URI.create("http://localhost:18110/");
+                final URI green = URI.create("http://localhost:18111/");
+                servers.add(new Main().startServer(blue));
+                servers.add(new Main().startServer(green));
+                routers.add(WeightedRouter.Builder.create(18112)
+                        .backend("blue", blue, 100 - greenWeight, Duration.ZERO)
+                        .backend("green", green, greenWeight, Duration.ofMillis(greenDelay))
+                        .build()
+                        .start());
+                routers.add(WeightedRouter.Builder.create(18113)
+                        .backend("green", green, 100, Duration.ofMillis(greenDelay))
+                        .build()
+                        .start());
+                builder.baseline(routers.get(0).getURI()).candidate(routers.get(1).getURI());
+            }
+            final Comparison comparison = builder.build().run();
+            System.out.println(comparison.toText());
+            if (json != null) {
+                Files.write(Paths.get(json), comparison.toJson().getBytes(StandardCharsets.UTF_8));
+            }
+            if (!comparison.isPassed()) {
+                System.exit(1);
+            }
+        } finally {
+            for (WeightedRouter router : routers) router.stop();
+            for (HttpServer server : servers) server.shutdownNow();
+        }
+    }
+
+    /**
+     * Regressions of the candidate the comparison tolerates.
+     */
+    static final class Budget {
+
+        double maxP50Ratio = 1.2;
+        double maxP99Ratio = 1.5;
+        double maxThroughputDrop = 0.1;
+        double maxErrorRate = 0.01;
+        double minLatencyDeltaMillis = 5;
+    }
+
+    public static final class Builder {
+
+        private URI baseline;
+        private URI candidate;
+        private final LoadGenerator.Builder load =
+                LoadGenerator.Builder.create().rate(50).duration(Duration.ofSeconds(60)).warmup(Duration.ofSeconds(10));
+        private final Budget budget = new Budget();
+
+        private Builder() {}
+
+        public static Builder create() {
+            return new Builder();
+        }
+
+        /**
+         * @param baseline base URL of the version in production (blue)
+         */
+        public Builder baseline(URI baseline) {
+            this.baseline = baseline;
+            return this;
+        }
+
+        /**
+         * @param candidate base URL of the version being deployed (green)
+         */
+        public Builder candidate(URI candidate) {
+            this.candidate = candidate;
+            return this;
+        }
+
+        /**
+         * @param rate requests per second sent to each target, 50 by default
+         */
+        public Builder rate(int rate) {
+            load.rate(rate);
+            return this;
+        }
+
+        /**
+         * Measured time, 60 seconds by default.
+         */
+        public Builder duration(Duration duration) {
+            load.duration(duration);
+            return this;
+        }
+
+        /**
+         * Load applied before measuring, 10 seconds by default.
+         */
+        public Builder warmup(Duration warmup) {
+            load.warmup(warmup);
+            return this;
+        }
+
+        /**
+         * Adds a path to the request mix sent to both targets.
+         */
+        public Builder path(String path) {
+            load.path(path);
+            return this;
+        }
+
+        /**
+         * Candidate p50 may be at most this many times the baseline p50,
+         * 1.2 by default.
+         */
+        public Builder maxP50Ratio(double ratio) {
+            budget.maxP50Ratio = ratio;
+            return this;
+        }
+
+        /**
+         * Candidate p99 may be at most this many times the baseline p99,
+         * 1.5 by default.
+         */
+        public Builder maxP99Ratio(double ratio) {
+            budget.maxP99Ratio = ratio;
+            return this;
+        }
+
+        /**
+         * Share of the baseline throughput the candidate may lose, 0.1 by
+         * default.
+         */
+        public Builder maxThroughputDrop(double drop) {
+            budget.maxThroughputDrop = drop;
+            return this;
+        }
+
+        /**
+         * Share of candidate requests that may fail, 0.01 by default.
+         */
+        public Builder maxErrorRate(double rate) {
+            budget.maxErrorRate = rate;
+            return this;
+        }
+
+        /**
+         * Latency differences up to this many milliseconds never fail the
+         * comparison, 5 by default.
+         */
+        public Builder minLatencyDeltaMillis(double millis) {
+            budget.minLatencyDeltaMillis = millis;
+            return this;
+        }
+
+        public LatencyComparator build() {
+            if (baseline == null || candidate == null) {
+                throw new IllegalArgumentException("baseline and candidate are required");
+            }
+            return new LatencyComparator(this);
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/* (C)2023 */
+package com.example.demo.toolchain.loadtest;
+
+import com.example.demo.components.service.compute.runtime.Main;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.glassfish.grizzly.http.server.HttpServer;
+
+/**
+ * Open-model HTTP load generator. Requests are started at a fixed rate
+ * whether or not earlier ones have completed, cycling through a list of
+ * paths, and each latency is measured from the time the request was due to
+ * start. A server that stalls therefore shows its full delay in the
+ * percentiles instead of slowing the load down.
+ *
+ * Without a --url the generator boots the service in-process with
+ * Main.startServer() on localhost, so runs need no network access:
+ *
+ * mvn compile exec:java -Dexec.mainClass=com.example.demo.toolchain.loadtest.LoadGenerator \
+ *   -Dexec.args="--rate=1000 --duration=30 --header=Accept-Encoding:gzip --json=target/load.json"
+ *
+ * Options: --url, --rate (requests/s), --duration and --warmup (seconds),
+ * --max-outstanding, --path (repeatable), --header=Name:Value (repeatable),
+ * --http2, --port (for the in-process server) and --json (report file).
+ */
+public class LoadGenerator {
+
+    private final int rate;
+    private final Duration duration;
+    private final Duration warmup;
+    private final int maxOutstanding;
+    private final List<String> paths;
+    private final Map<String, String> headers;
+    private final HttpClient.Version version;
+
+    private LoadGenerator(Builder builder) {
+        this.rate = builder.rate;
+        this.duration = builder.duration;
+        this.warmup = builder.warmup;
+        this.maxOutstanding = builder.maxOutstanding;
+        this.paths = builder.paths.isEmpty() ? Arrays.asList("") : new ArrayList<>(builder.paths);
+        this.headers = new LinkedHashMap<>(builder.headers);
+        this.version = builder.version;
+    }
+
+    /**
+     * Drives load against the given base URI and blocks until the run is
+     * over and every outstanding response has arrived or timed out.
+     */
+    public LoadReport run(URI base) throws InterruptedException {
+
+        final ExecutorService callbacks = Executors.newFixedThreadPool(4, r -> {
+            Thread thread = new Thread(r, "load-generator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final HttpClient client = HttpClient.newBuilder()
+                .version(version)
+                .executor(callbacks)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+
+        final HttpRequest[] requests = new HttpRequest[paths.size()];
+        for (int i = 0; i < requests.length; i++) {
+            HttpRequest.Builder request = HttpRequest.newBuilder(base.resolve(paths.get(i)))
+                    .timeout(Duration.ofSeconds(30))
+                    .GET();
+            headers.forEach(request::header);
+            requests[i] = request.build();
+        }
+
+        final Recorder recorder = new Recorder(3);
+        final LongAdder sent = new LongAdder();
+        final LongAdder completed = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final Semaphore outstanding = new Semaphore(maxOutstanding);
+
+        final long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        final long start = System.nanoTime();
+        final long measureFrom = start + warmup.toNanos();
+        final long end = measureFrom + duration.toNanos();
+
+        for (long i = 0; ; i++) {
+            final long intended = start + i * interval;
+            if (intended >= end) break;
+            for (long now = System.nanoTime(); now < intended; now = System.nanoTime()) {
+                LockSupport.parkNanos(intended - now);
+            }
+            final boolean measured = intended >= measureFrom;
+            // when too many requests are outstanding the schedule slips, but
+            // latency is still counted from the intended start
+            outstanding.acquire();
+            if (measured) sent.increment();
+            client.sendAsync(requests[(int) (i % requests.length)], info -> new CountingSubscriber())
+                    .whenComplete((response, failure) -> {
+                        final long latency = System.nanoTime() - intended;
+                        // released once recorded, so the report taken after
+                        // the last permit comes back includes every response
+                        try {
+                            if (!measured) return;
+                            if (failure != null || response.statusCode() >= 400) {
+                                errors.increment();
+                            } else {
+                                recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(latency));
+                                bytes.add(response.body());
+                                completed.increment();
+                            }
+                        } finally {
+                            outstanding.release();
+                        }
+                    });
+        }
+        if (!outstanding.tryAcquire(maxOutstanding, 60, TimeUnit.SECONDS)) {
+            System.out.println("LoadGenerator::Some requests did not complete within 60 seconds");
+        }
+        callbacks.shutdownNow();
+
+        final Histogram latencies = recorder.getIntervalHistogram();
+        return new LoadReport(
+                base.toString(),
+                rate,
+                duration.toNanos(),
+                sent.sum(),
+                completed.sum(),
+                errors.sum(),
+                bytes.sum(),
+                latencies);
+    }
+
+    public static void main(String args[]) throws Exception {
+
+        final Builder builder = Builder.create();
+        String url = null;
+        String json = null;
+        int port = 18100;
+        for (String arg : args) {
+            final int eq = arg.indexOf('=');
+            final String name = eq < 0 ? arg : arg.substring(0, eq);
+            final String value = eq < 0 ? "" : arg.substring(eq + 1);
+            switch (name) {
+                case "--url":
+                    url = value;
+                    break;
+                case "--rate":
+                    builder.rate(Integer.parseInt(value));
+                    break;
+                case "--duration":
+                    builder.duration(Duration.ofSeconds(Long.parseLong(value)));
+                    break;
+                case "--warmup":
+                    builder.warmup(Duration.ofSeconds(Long.parseLong(value)));
+                    break;
+                case "--max-outstanding":
+                    builder.maxOutstanding(Integer.parseInt(value));
+                    break;
+                case "--path":
+                    builder.path(value);
+                    break;
+                case "--header":
+                    builder.header(value.substring(0, value.indexOf(':')).trim(), value.substring(value.indexOf(':') + 1).trim());
+                    break;
+                case "--http2":
+                    builder.http2(true);
+                    break;
+                case "--port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "--json":
+                    json = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+
+        HttpServer server = null;
+        if (url == null) {
+            url = "http://localhost:" + port + "/";
+            server = new Main().startServer(URI.create(url));
+        }
+        try {
+            final LoadReport report = builder.build().run(URI.create(url));
+            System.out.println(report.toText());
+            System.out.println(report.toJson());
+            if (json != null) {
+                Files.write(Paths.get(json), report.toJson().getBytes(StandardCharsets.UTF_8));
+            }
+        } finally {
+            if (server != null) server.shutdownNow();
+        }
+    }
+
+    /**
+     * Counts the bytes of a response body without keeping them.
+     */
+    private static final class CountingSubscriber implements HttpResponse.BodySubscriber<Long> {
+
+        private final CompletableFuture<Long> body = new CompletableFuture<>();
+        private long count = 0;
+
+        @Override
+        public CompletionStage<Long> getBody() {
+            return body;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            for (ByteBuffer buffer : buffers) count += buffer.remaining();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            body.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            body.complete(count);
+        }
+    }
+
+    public static final class Builder {
+
+        private int rate = 500;
+        private Duration duration = Duration.ofSeconds(30);
+        private Duration warmup = Duration.ofSeconds(5);
+        private int maxOutstanding = 1024;
+        private final List<String> paths = new ArrayList<>();
+        private final Map<String, String> headers = new LinkedHashMap<>();
+        private HttpClient.Version version = HttpClient.Version.HTTP_1_1;
+
+        private Builder() {}
+
+        public static Builder create() {
+            return new Builder();
+        }
+
+        /**
+         * @param rate requests started per second
+         */
+        public Builder rate(int rate) {
+            this.rate = rate;
+            return this;
+        }
+
+        public Builder duration(Duration duration) {
+            this.duration = duration;
+            return this;
+        }
+
+        /**
+         * Load applied before measuring starts, so the server and the JIT are warm.
+         */
+        public Builder warmup(Duration warmup) {
+            this.warmup = warmup;
+            return this;
+        }
+
+        /**
+         * Requests in flight at most. Bounds client memory if the server stops answering.
+         */
+        public Builder maxOutstanding(int maxOutstanding) {
+            this.maxOutstanding = maxOutstanding;
+            return this;
+        }
+
+        /**
+         * Adds a path to the request mix. Paths are requested in turn.
+         */
+        public Builder path(String path) {
+            this.paths.add(path.startsWith("/") ? path.substring(1) : path);
+            return this;
+        }
+
+        public Builder header(String name, String value) {
+            this.headers.put(name, value);
+            return this;
+        }
+
+        public Builder http2(boolean http2) {
+            this.version = http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1;
+            return this;
+        }
+
+        public LoadGenerator build() {
+            if (rate <= 0) throw new IllegalArgumentException("rate must be positive");
+            return new LoadGenerator(this);
+        }
+    }
+}
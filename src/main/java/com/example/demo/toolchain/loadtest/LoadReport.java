@@ -0,0 +1,141 @@
+/* (C)2023 */
+package com.example.demo.toolchain.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Outcome of a {@link LoadGenerator} run. Latencies are kept in an
+ * HdrHistogram in microseconds, measured from the time each request was
+ * scheduled to start, so they already include any time spent waiting behind
+ * slow responses (coordinated omission correction).
+ */
+public class LoadReport {
+
+    private final String target;
+    private final int rate;
+    private final long durationNanos;
+    private final long sent;
+    private final long completed;
+    private final long errors;
+    private final long bytes;
+    private final Histogram latencies;
+
+    LoadReport(
+            String target,
+            int rate,
+            long durationNanos,
+            long sent,
+            long completed,
+            long errors,
+            long bytes,
+            Histogram latencies) {
+        this.target = target;
+        this.rate = rate;
+        this.durationNanos = durationNanos;
+        this.sent = sent;
+        this.completed = completed;
+        this.errors = errors;
+        this.bytes = bytes;
+        this.latencies = latencies;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return share of the requests sent that failed, between 0 and 1
+     */
+    public double getErrorRate() {
+        return sent == 0 ? 0 : (double) errors / sent;
+    }
+
+    /**
+     * @return successful responses per second
+     */
+    public double getThroughput() {
+        return completed / (durationNanos / 1e9);
+    }
+
+    /**
+     * @return the latency at the given percentile (0-100), in microseconds
+     */
+    public long getLatencyMicros(double percentile) {
+        return latencies.getValueAtPercentile(percentile);
+    }
+
+    public Histogram getLatencies() {
+        return latencies;
+    }
+
+    public String toText() {
+
+        final StringBuilder text = new StringBuilder();
+        text.append(String.format(
+                Locale.ROOT,
+                "Target:      %s%n"
+                        + "Rate:        %d req/s for %.1f s%n"
+                        + "Requests:    %d sent, %d completed, %d errors (%.2f%%)%n"
+                        + "Throughput:  %.1f req/s, %.1f KiB/s%n"
+                        + "Latency ms:  p50=%.3f p90=%.3f p99=%.3f p99.9=%.3f max=%.3f mean=%.3f%n",
+                target,
+                rate,
+                durationNanos / 1e9,
+                sent,
+                completed,
+                errors,
+                getErrorRate() * 100,
+                getThroughput(),
+                bytes / 1024.0 / (durationNanos / 1e9),
+                getLatencyMicros(50) / 1e3,
+                getLatencyMicros(90) / 1e3,
+                getLatencyMicros(99) / 1e3,
+                getLatencyMicros(99.9) / 1e3,
+                latencies.getMaxValue() / 1e3,
+                latencies.getMean() / 1e3));
+
+        final ByteArrayOutputStream distribution = new ByteArrayOutputStream();
+        try (PrintStream out = new PrintStream(distribution, true, StandardCharsets.UTF_8)) {
+            // values are recorded in microseconds and printed in milliseconds
+            latencies.outputPercentileDistribution(out, 5, 1000.0);
+        }
+        return text.append(new String(distribution.toByteArray(), StandardCharsets.UTF_8)).toString();
+    }
+
+    public String toJson() {
+
+        return String.format(
+                Locale.ROOT,
+                "{\"target\":\"%s\",\"rate\":%d,\"durationSeconds\":%.3f,\"sent\":%d,\"completed\":%d,"
+                        + "\"errors\":%d,\"errorRate\":%.6f,\"throughput\":%.3f,\"bytes\":%d,"
+                        + "\"latencyMillis\":{\"p50\":%.3f,\"p90\":%.3f,\"p99\":%.3f,\"p999\":%.3f,"
+                        + "\"max\":%.3f,\"mean\":%.3f}}",
+                target.replace("\\", "\\\\").replace("\"", "\\\""),
+                rate,
+                durationNanos / 1e9,
+                sent,
+                completed,
+                errors,
+                getErrorRate(),
+                getThroughput(),
+                bytes,
+                getLatencyMicros(50) / 1e3,
+                getLatencyMicros(90) / 1e3,
+                getLatencyMicros(99) / 1e3,
+                getLatencyMicros(99.9) / 1e3,
+                latencies.getMaxValue() / 1e3,
+                latencies.getMean() / 1e3);
+    }
+}
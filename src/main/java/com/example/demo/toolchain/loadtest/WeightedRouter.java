@@ -0,0 +1,192 @@
+/* (C)2023 */
+package com.example.demo.toolchain.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+
+/**
+ * Minimal stand-in for a load balancer listener, used to rehearse blue/green
+ * deployments locally. Each request is forwarded to one of the backends,
+ * picked at random in proportion to its weight, and the response is copied
+ * back with an X-Routed-To header naming the backend. A backend can be given
+ * a fixed delay to simulate a slower version.
+ */
+public class WeightedRouter {
+
+    private static final Set<String> HOP_BY_HOP = new HashSet<>(Arrays.asList(
+            "connection",
+            "expect",
+            "content-length",
+            "host",
+            "keep-alive",
+            "proxy-connection",
+            "te",
+            "trailer",
+            "transfer-encoding",
+            "upgrade"));
+
+    private final int port;
+    private final List<Backend> backends;
+    private final int totalWeight;
+    private final HttpClient client =
+            HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private HttpServer server;
+
+    private WeightedRouter(Builder builder) {
+        this.port = builder.port;
+        this.backends = new ArrayList<>(builder.backends);
+        this.totalWeight = backends.stream().mapToInt(backend -> backend.weight).sum();
+    }
+
+    public URI getURI() {
+        return URI.create("http://localhost:" + port + "/");
+    }
+
+    public WeightedRouter start() throws IOException {
+
+        server = new HttpServer();
+        server.addListener(new NetworkListener("router", "localhost", port));
+        server.getServerConfiguration().addHttpHandler(new HttpHandler() {
+            @Override
+            public void service(Request request, Response response) throws Exception {
+                forward(request, response);
+            }
+        });
+        server.start();
+        return this;
+    }
+
+    public void stop() {
+        if (server != null) server.shutdownNow();
+    }
+
+    private Backend pick() {
+
+        int ticket = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Backend backend : backends) {
+            ticket -= backend.weight;
+            if (ticket < 0) return backend;
+        }
+        return backends.get(backends.size() - 1);
+    }
+
+    private void forward(Request request, Response response) throws IOException {
+
+        final Backend backend = pick();
+        final String query = request.getQueryString();
+        final String path = request.getRequestURI().substring(1) + (query == null ? "" : "?" + query);
+        final HttpRequest.Builder forwarded = HttpRequest.newBuilder(backend.uri.resolve(path))
+                .timeout(Duration.ofSeconds(30))
+                .method(request.getMethod().getMethodString(), bodyOf(request));
+        for (String name : request.getHeaderNames()) {
+            if (!HOP_BY_HOP.contains(name.toLowerCase())) {
+                for (String value : request.getHeaders(name)) forwarded.header(name, value);
+            }
+        }
+
+        response.suspend();
+        CompletableFuture.runAsync(
+                        () -> {},
+                        CompletableFuture.delayedExecutor(backend.delay.toNanos(), TimeUnit.NANOSECONDS))
+                .thenCompose(ignored -> client.sendAsync(forwarded.build(), HttpResponse.BodyHandlers.ofByteArray()))
+                .whenComplete((answer, failure) -> {
+                    try {
+                        if (failure != null) {
+                            response.setStatus(502);
+                        } else {
+                            response.setStatus(answer.statusCode());
+                            answer.headers().map().forEach((name, values) -> {
+                                if (!HOP_BY_HOP.contains(name.toLowerCase())) {
+                                    for (String value : values) response.addHeader(name, value);
+                                }
+                            });
+                            response.setHeader("X-Routed-To", backend.name);
+                            response.setContentLength(answer.body().length);
+                            response.getOutputStream().write(answer.body());
+                        }
+                    } catch (IOException e) {
+                        response.setStatus(502);
+                    } finally {
+                        response.resume();
+                    }
+                });
+    }
+
+    private static HttpRequest.BodyPublisher bodyOf(Request request) throws IOException {
+
+        if (request.getContentLength() <= 0) {
+            return HttpRequest.BodyPublishers.noBody();
+        }
+        try (InputStream in = request.getInputStream()) {
+            return HttpRequest.BodyPublishers.ofByteArray(in.readAllBytes());
+        }
+    }
+
+    private static final class Backend {
+
+        private final String name;
+        private final URI uri;
+        private final int weight;
+        private final Duration delay;
+
+        private Backend(String name, URI uri, int weight, Duration delay) {
+            this.name = name;
+            this.uri = uri;
+            this.weight = weight;
+            this.delay = delay;
+        }
+    }
+
+    public static final class Builder {
+
+        private final int port;
+        private final List<Backend> backends = new ArrayList<>();
+
+        private Builder(int port) {
+            this.port = port;
+        }
+
+        /**
+         * @param port local port the router listens on
+         */
+        public static Builder create(int port) {
+            return new Builder(port);
+        }
+
+        /**
+         * @param weight share of the requests the backend receives, relative
+         *     to the other backends; 0 sends it nothing
+         * @param delay added before each request is forwarded to the backend
+         */
+        public Builder backend(String name, URI uri, int weight, Duration delay) {
+            if (weight < 0) throw new IllegalArgumentException("weight must not be negative");
+            backends.add(new Backend(name, uri, weight, delay));
+            return this;
+        }
+
+        public WeightedRouter build() {
+            if (backends.stream().mapToInt(backend -> backend.weight).sum() <= 0) {
+                throw new IllegalArgumentException("at least one backend needs a positive weight");
+            }
+            return new WeightedRouter(this);
+        }
+    }
+}
@@ -0,0 +1,501 @@
+/* (C)2023 */
+package com.example.demo.components.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import software.amazon.awscdk.App;
+import software.amazon.awscdk.Duration;
+import software.amazon.awscdk.StackProps;
+import software.amazon.awscdk.assertions.Match;
+import software.amazon.awscdk.assertions.Template;
+import software.amazon.awscdk.services.codedeploy.EcsDeploymentConfig;
+import software.amazon.awscdk.services.elasticloadbalancingv2.HealthCheck;
+
+/**
+ * Checks the synthesized Service template. Runs after the Maven resources
+ * phase, which puts the Dockerfiles of both images under target, and the
+ * compile phase, which puts the code of the hook functions under
+ * target/hooks.
+ */
+public class ServiceTest {
+
+    private static Template synth(ServiceOptions options) {
+        return Template.fromStack(service(options));
+    }
+
+    private static Service service(ServiceOptions options) {
+        return new Service(new App(), "Test", EcsDeploymentConfig.ALL_AT_ONCE, StackProps.builder().build(), options);
+    }
+
+    @Test
+    public void rollsBackOnAlarmsAndFailedDeployments() {
+
+        final Template template = synth(ServiceOptions.defaults());
+        // latency, 5xx and unhealthy hosts for both target groups
+        template.resourceCountIs("AWS::CloudWatch::Alarm", 6);
+        template.hasResourceProperties(
+                "AWS::CodeDeploy::DeploymentGroup",
+                Map.of(
+                        "AutoRollbackConfiguration",
+                        Map.of(
+                                "Enabled",
+                                true,
+                                "Events",
+                                Match.arrayWith(Arrays.asList("DEPLOYMENT_FAILURE", "DEPLOYMENT_STOP_ON_ALARM"))),
+                        "AlarmConfiguration",
+                        Match.objectLike(Map.of("Enabled", true, "Alarms", Match.anyValue()))));
+    }
+
+    @Test
+    public void alarmsUseTheDefaultThresholds() {
+
+        final Template template = synth(ServiceOptions.defaults());
+        template.hasResourceProperties(
+                "AWS::CloudWatch::Alarm",
+                Match.objectLike(Map.of(
+                        "MetricName", "TargetResponseTime",
+                        "ExtendedStatistic", "p99",
+                        "Threshold", 0.5,
+                        "EvaluationPeriods", 2,
+                        "TreatMissingData", "notBreaching")));
+        template.hasResourceProperties(
+                "AWS::CloudWatch::Alarm",
+                Match.objectLike(Map.of(
+                        "MetricName", "HTTPCode_Target_5XX_Count", "Statistic", "Sum", "Threshold", 10)));
+        template.hasResourceProperties(
+                "AWS::CloudWatch::Alarm",
+                Match.objectLike(Map.of(
+                        "MetricName", "UnHealthyHostCount", "Statistic", "Maximum", "Threshold", 0)));
+    }
+
+    @Test
+    public void stagesSetTheirOwnThresholds() {
+
+        final Template template = synth(ServiceOptions.builder()
+                .rollbackAlarms(RollbackAlarms.builder()
+                        .maxP99Latency(Duration.millis(250))
+                        .max5xx(1)
+                        .evaluationPeriods(3)
+                        .build())
+                .build());
+        template.resourcePropertiesCountIs(
+                "AWS::CloudWatch::Alarm",
+                Match.objectLike(Map.of("MetricName", "TargetResponseTime", "Threshold", 0.25, "EvaluationPeriods", 3)),
+                2);
+        template.resourcePropertiesCountIs(
+                "AWS::CloudWatch::Alarm",
+                Match.objectLike(Map.of("MetricName", "HTTPCode_Target_5XX_Count", "Threshold", 1)),
+                2);
+        template.resourcePropertiesCountIs(
+                "AWS::CodeDeploy::DeploymentGroup",
+                Match.objectLike(Collections.singletonMap("AutoRollbackConfiguration", Match.anyValue())),
+                1);
+    }
+
+    @Test
+    public void rejectsNegativeThresholds() {
+        assertThrows(IllegalArgumentException.class, () -> RollbackAlarms.builder().max5xx(-1).build());
+    }
+
+    @Test
+    public void scalesOnRequestsAndCpuByDefault() {
+
+        final Template template = synth(ServiceOptions.defaults());
+        template.hasResourceProperties(
+                "AWS::ApplicationAutoScaling::ScalableTarget",
+                Map.of("MinCapacity", 2, "MaxCapacity", 10, "ScalableDimension", "ecs:service:DesiredCount"));
+        // one request count policy per target group, as production traffic moves between them
+        template.resourcePropertiesCountIs(
+                "AWS::ApplicationAutoScaling::ScalingPolicy",
+                Map.of(
+                        "TargetTrackingScalingPolicyConfiguration",
+                        Map.of(
+                                "PredefinedMetricSpecification",
+                                Map.of("PredefinedMetricType", "ALBRequestCountPerTarget"),
+                                "TargetValue",
+                                1000,
+                                "ScaleInCooldown",
+                                300,
+                                "ScaleOutCooldown",
+                                60)),
+                2);
+        template.hasResourceProperties(
+                "AWS::ApplicationAutoScaling::ScalingPolicy",
+                Map.of(
+                        "TargetTrackingScalingPolicyConfiguration",
+                        Map.of(
+                                "PredefinedMetricSpecification",
+                                Map.of("PredefinedMetricType", "ECSServiceAverageCPUUtilization"),
+                                "TargetValue",
+                                70)));
+        template.resourceCountIs("AWS::ApplicationAutoScaling::ScalingPolicy", 3);
+        // auto scaling owns the desired count, so stack updates must not reset it
+        template.hasResourceProperties(
+                "AWS::ECS::Service", Collections.singletonMap("DesiredCount", Match.absent()));
+    }
+
+    @Test
+    public void stagesSetTheirOwnScaling() {
+
+        final Template template = synth(ServiceOptions.builder()
+                .scaling(Scaling.builder()
+                        .minCapacity(3)
+                        .maxCapacity(30)
+                        .requestsPerTarget(0)
+                        .memoryUtilization(80)
+                        .scheduled("WeekdayPeak", "cron(0 8 ? * MON-FRI *)", 10, 30)
+                        .build())
+                .build());
+        template.hasResourceProperties(
+                "AWS::ApplicationAutoScaling::ScalableTarget",
+                Map.of(
+                        "MinCapacity",
+                        3,
+                        "MaxCapacity",
+                        30,
+                        "ScheduledActions",
+                        Match.arrayWith(Arrays.asList(Map.of(
+                                "ScheduledActionName",
+                                "WeekdayPeak",
+                                "Schedule",
+                                "cron(0 8 ? * MON-FRI *)",
+                                "ScalableTargetAction",
+                                Map.of("MinCapacity", 10, "MaxCapacity", 30))))));
+        template.resourcePropertiesCountIs(
+                "AWS::ApplicationAutoScaling::ScalingPolicy",
+                Map.of(
+                        "TargetTrackingScalingPolicyConfiguration",
+                        Map.of(
+                                "PredefinedMetricSpecification",
+                                Map.of("PredefinedMetricType", "ALBRequestCountPerTarget"))),
+                0);
+        template.hasResourceProperties(
+                "AWS::ApplicationAutoScaling::ScalingPolicy",
+                Map.of(
+                        "TargetTrackingScalingPolicyConfiguration",
+                        Map.of(
+                                "PredefinedMetricSpecification",
+                                Map.of("PredefinedMetricType", "ECSServiceAverageMemoryUtilization"),
+                                "TargetValue",
+                                80)));
+    }
+
+    @Test
+    public void rejectsAnEmptyCapacityRange() {
+        assertThrows(IllegalArgumentException.class, () -> Scaling.builder().minCapacity(5).maxCapacity(4).build());
+    }
+
+    @Test
+    public void taskFollowsTheSizingProfile() {
+
+        final Sizing sizing = Sizing.builder().cpu(2048).memoryMiB(4096).build();
+        final Template template = synth(ServiceOptions.builder().sizing(sizing).build());
+        template.hasResourceProperties(
+                "AWS::ECS::TaskDefinition",
+                Map.of(
+                        "Cpu",
+                        "2048",
+                        "Memory",
+                        "4096",
+                        "ContainerDefinitions",
+                        Match.arrayWith(Arrays.asList(Map.of(
+                                "Memory",
+                                4096,
+                                "Environment",
+                                Match.arrayWith(Arrays.asList(Map.of(
+                                        "Name",
+                                        Sizing.JAVA_OPTS,
+                                        "Value",
+                                        String.join(" ", sizing.getJvmOptions())))))))));
+    }
+
+    @Test
+    public void runsOnTheStageArchitecture() {
+
+        synth(ServiceOptions.builder().architecture(Architecture.ARM64).build())
+                .hasResourceProperties(
+                        "AWS::ECS::TaskDefinition",
+                        Map.of(
+                                "RuntimePlatform",
+                                Map.of("CpuArchitecture", "ARM64", "OperatingSystemFamily", "LINUX")));
+        synth(ServiceOptions.defaults())
+                .hasResourceProperties(
+                        "AWS::ECS::TaskDefinition",
+                        Map.of("RuntimePlatform", Map.of("CpuArchitecture", "X86_64")));
+    }
+
+    @Test
+    public void blueAndGreenShareTheTargetGroupSettings() {
+
+        final Template template = synth(ServiceOptions.builder()
+                .drainTime(Duration.seconds(20))
+                .healthCheck(HealthCheck.builder().interval(Duration.seconds(5)).build())
+                .loadBalancing(LoadBalancing.builder()
+                        .leastOutstandingRequests(true)
+                        .idleTimeout(Duration.seconds(30))
+                        .build())
+                .build());
+        template.resourcePropertiesCountIs(
+                "AWS::ElasticLoadBalancingV2::TargetGroup",
+                Map.of(
+                        "HealthCheckIntervalSeconds",
+                        5,
+                        "HealthCheckPath",
+                        ServiceOptions.HEALTH_CHECK_PATH,
+                        "HealthyThresholdCount",
+                        2,
+                        "TargetGroupAttributes",
+                        Match.arrayWith(Arrays.asList(
+                                Map.of("Key", "deregistration_delay.timeout_seconds", "Value", "20"),
+                                Map.of(
+                                        "Key",
+                                        "load_balancing.algorithm.type",
+                                        "Value",
+                                        "least_outstanding_requests")))),
+                2);
+        template.hasResourceProperties(
+                "AWS::ElasticLoadBalancingV2::LoadBalancer",
+                Map.of(
+                        "LoadBalancerAttributes",
+                        Match.arrayWith(
+                                Arrays.asList(Map.of("Key", "idle_timeout.timeout_seconds", "Value", "30")))));
+        // the runtime keeps idle connections open longer than the load balancer, drains within the stop
+        // timeout (6 seconds serving while not ready, 9 for in-flight requests, 5 to stop) and does not shed load
+        final Map<String, String> env = Map.of(
+                ServiceOptions.DRAIN_SECONDS, "6",
+                ServiceOptions.DRAIN_TIMEOUT_SECONDS, "9",
+                LoadBalancing.KEEPALIVE_IDLE_SECONDS, "45",
+                ServiceOptions.ADMISSION, "false");
+        env.forEach((name, value) -> template.hasResourceProperties(
+                "AWS::ECS::TaskDefinition",
+                Map.of(
+                        "ContainerDefinitions",
+                        Match.arrayWith(Arrays.asList(Match.objectLike(Map.of(
+                                "StopTimeout",
+                                20,
+                                "Environment",
+                                Match.arrayWith(Arrays.asList(Map.of("Name", name, "Value", value))))))))));
+    }
+
+    @Test
+    public void defaultDrainMatchesTheRuntimeDefaults() {
+
+        final ServiceOptions options = ServiceOptions.defaults();
+        assertEquals(10, options.getDrainSeconds());
+        assertEquals(15, options.getDrainTimeoutSeconds());
+    }
+
+    @Test
+    public void rejectsADrainTimeTheRuntimeCannotDrainIn() {
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> ServiceOptions.builder().drainTime(Duration.seconds(5)).build());
+    }
+
+    @Test
+    public void slowStartRampsUpNewTargets() {
+
+        final Template template = synth(ServiceOptions.builder()
+                .loadBalancing(LoadBalancing.builder().slowStart(Duration.seconds(90)).build())
+                .build());
+        template.resourcePropertiesCountIs(
+                "AWS::ElasticLoadBalancingV2::TargetGroup",
+                Map.of(
+                        "TargetGroupAttributes",
+                        Match.arrayWith(Arrays.asList(
+                                Map.of("Key", "load_balancing.algorithm.type", "Value", "round_robin"),
+                                Map.of("Key", "slow_start.duration_seconds", "Value", "90")))),
+                2);
+    }
+
+    @Test
+    public void rejectsSlowStartWithLeastOutstandingRequests() {
+
+        assertThrows(IllegalArgumentException.class, () -> LoadBalancing.builder()
+                .slowStart(Duration.seconds(60))
+                .leastOutstandingRequests(true)
+                .build());
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> LoadBalancing.builder().slowStart(Duration.seconds(10)).build());
+    }
+
+    @Test
+    public void edgeCacheFrontsOnlyTheProductionListener() {
+
+        final Service service = service(ServiceOptions.builder()
+                .edgeCache(EdgeCache.builder().invalidationPaths().build())
+                .build());
+        final Template template = Template.fromStack(service);
+        template.hasResourceProperties(
+                "AWS::CloudFront::Distribution",
+                Map.of(
+                        "DistributionConfig",
+                        Match.objectLike(Map.of(
+                                "PriceClass",
+                                "PriceClass_100",
+                                "Origins",
+                                Arrays.asList(Match.objectLike(Map.of(
+                                        "CustomOriginConfig",
+                                        Match.objectLike(Map.of(
+                                                "HTTPPort", 80, "OriginProtocolPolicy", "http-only"))))),
+                                "DefaultCacheBehavior",
+                                Match.objectLike(Map.of(
+                                        "Compress", true, "ViewerProtocolPolicy", "redirect-to-https"))))));
+        template.hasResourceProperties(
+                "AWS::CloudFront::CachePolicy",
+                Map.of(
+                        "CachePolicyConfig",
+                        Match.objectLike(Map.of(
+                                "DefaultTTL",
+                                0,
+                                "ParametersInCacheKeyAndForwardedToOrigin",
+                                Match.objectLike(Map.of(
+                                        "EnableAcceptEncodingGzip",
+                                        true,
+                                        "EnableAcceptEncodingBrotli",
+                                        true,
+                                        "QueryStringsConfig",
+                                        Map.of("QueryStringBehavior", "all")))))));
+        // no invalidation paths, no hook
+        assertTrue(service.getLifecycleHooks().isEmpty());
+    }
+
+    @Test
+    public void edgeCacheIsOffByDefault() {
+        synth(ServiceOptions.defaults()).resourceCountIs("AWS::CloudFront::Distribution", 0);
+    }
+
+    @Test
+    public void rejectsRelativeInvalidationPaths() {
+        assertThrows(IllegalArgumentException.class, () -> EdgeCache.builder().invalidationPaths("index.html").build());
+    }
+
+    @Test
+    public void latencyCheckRunsAsTheAfterAllowTestTrafficHook() {
+
+        final Service service = service(ServiceOptions.builder()
+                .latencyCheck(LatencyCheck.builder().rate(80).path("/health/ready").build())
+                .build());
+        final Template template = Template.fromStack(service);
+        template.hasResourceProperties(
+                "AWS::Lambda::Function",
+                Map.of(
+                        "FunctionName",
+                        "CodeDeployHook_Test",
+                        "Handler",
+                        "com.example.demo.toolchain.loadtest.ComparatorHook::handleRequest",
+                        "Runtime",
+                        "java17",
+                        // 60 seconds measured, 10 warming up, 90 to finish and report
+                        "Timeout",
+                        160,
+                        "Environment",
+                        Map.of(
+                                "Variables",
+                                Match.objectLike(Map.of(
+                                        "RATE", "80",
+                                        "PATHS", "/health/ready",
+                                        "BASELINE_URL", Match.anyValue(),
+                                        "CANDIDATE_URL", Match.anyValue())))));
+        template.hasResourceProperties(
+                "AWS::IAM::Policy", statement("codedeploy:PutLifecycleEventHookExecutionStatus"));
+        assertEquals(Map.of("AfterAllowTestTraffic", "CodeDeployHook_Test"), service.getLifecycleHooks());
+    }
+
+    @Test
+    public void edgeInvalidationRunsAsTheAfterAllowTrafficHook() {
+
+        final Service service = service(ServiceOptions.builder()
+                .latencyCheck(LatencyCheck.builder().build())
+                .edgeCache(EdgeCache.defaults())
+                .build());
+        final Template template = Template.fromStack(service);
+        template.hasResourceProperties(
+                "AWS::Lambda::Function",
+                Map.of(
+                        "FunctionName",
+                        "CodeDeployHook_Test-Edge",
+                        "Handler",
+                        "com.example.demo.toolchain.codedeploy.EdgeInvalidationHook::handleRequest",
+                        "Timeout",
+                        60,
+                        "Environment",
+                        Map.of(
+                                "Variables",
+                                Map.of(
+                                        "PATHS",
+                                        "/*",
+                                        "DISTRIBUTION_ID",
+                                        Map.of("Ref", Match.stringLikeRegexp("EdgeCacheTest.*"))))));
+        template.hasResourceProperties("AWS::IAM::Policy", statement("cloudfront:CreateInvalidation"));
+        // the events run in this order, after the test listener and then the production listener move to green
+        assertEquals(
+                List.of("AfterAllowTestTraffic", "AfterAllowTraffic"),
+                List.copyOf(service.getLifecycleHooks().keySet()));
+        assertEquals("CodeDeployHook_Test-Edge", service.getLifecycleHooks().get("AfterAllowTraffic"));
+    }
+
+    @Test
+    public void hooksShipOnlyTheirOwnClassesAndLibraries() throws IOException {
+
+        final List<String> edge = files("target/hooks/edge");
+        assertTrue(edge.contains("com/example/demo/toolchain/codedeploy/EdgeInvalidationHook.class"), edge::toString);
+        for (String file : edge) {
+            assertTrue(
+                    file.matches("com/example/demo/toolchain/codedeploy/(EdgeInvalidationHook|LifecycleHooks).*")
+                            || file.matches("lib/jackson-.*\\.jar"),
+                    file);
+        }
+
+        final List<String> latency = files("target/hooks/latency");
+        assertTrue(latency.contains("com/example/demo/toolchain/loadtest/ComparatorHook.class"), latency::toString);
+        assertTrue(latency.contains("com/example/demo/toolchain/codedeploy/LifecycleHooks.class"), latency::toString);
+        assertTrue(latency.stream().anyMatch(file -> file.matches("lib/HdrHistogram-.*\\.jar")), latency::toString);
+        for (String file : latency) {
+            assertTrue(
+                    file.matches("com/example/demo/toolchain/(codedeploy/LifecycleHooks|loadtest/).*\\.class")
+                            || file.matches("lib/(jackson-|HdrHistogram-).*\\.jar"),
+                    file);
+        }
+    }
+
+    /**
+     * @return the files under the directory, relative to it
+     */
+    private static List<String> files(String directory) throws IOException {
+
+        final Path root = Paths.get(directory);
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.filter(Files::isRegularFile)
+                    .map(file -> root.relativize(file).toString().replace('\\', '/'))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @return pattern of an IAM policy allowing the action
+     */
+    private static Map<String, Object> statement(String action) {
+        return Map.of(
+                "PolicyDocument",
+                Map.of(
+                        "Statement",
+                        Match.arrayWith(Arrays.asList(
+                                Match.objectLike(Map.of("Action", action, "Effect", "Allow"))))));
+    }
+}
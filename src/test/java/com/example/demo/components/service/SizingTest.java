@@ -0,0 +1,79 @@
+/* (C)2023 */
+package com.example.demo.components.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+public class SizingTest {
+
+    @ParameterizedTest
+    @CsvSource({"256,512", "512,1024", "1024,2048", "1024,8192", "2048,4096", "4096,8192", "8192,16384", "16384,32768"})
+    public void jvmFitsInsideTheContainer(int cpu, int memory) {
+
+        final Sizing sizing = Sizing.builder().cpu(cpu).memoryMiB(memory).build();
+        assertTrue(
+                sizing.getFootprintMiB() <= sizing.getContainerMemoryMiB(),
+                sizing.getFootprintMiB() + " MiB > " + sizing.getContainerMemoryMiB() + " MiB");
+        // the heap the JVM derives from the percentage stays within the budget
+        final double heap = sizing.getContainerMemoryMiB() * Double.parseDouble(sizing.getRamPercentage()) / 100;
+        assertTrue(heap <= sizing.getHeapMiB(), heap + " MiB");
+        assertTrue(heap >= Sizing.MIN_HEAP_MIB, heap + " MiB");
+    }
+
+    @Test
+    public void optionsFollowTheDefaultProfile() {
+
+        final Sizing sizing = Sizing.defaults();
+        assertEquals(1024, sizing.getCpu());
+        assertEquals(2048, sizing.getContainerMemoryMiB());
+        final String options = sizing.getEnvironment().get(Sizing.JAVA_OPTS);
+        assertTrue(options.contains("-XX:ActiveProcessorCount=1"), options);
+        assertTrue(options.contains("-XX:MaxRAMPercentage=" + sizing.getRamPercentage()), options);
+        assertTrue(options.contains("-XX:MaxMetaspaceSize=192m"), options);
+        assertTrue(options.contains("-XX:ReservedCodeCacheSize=96m"), options);
+    }
+
+    @Test
+    public void collectorDependsOnProcessorsAndHeap() {
+
+        assertEquals("-XX:+UseSerialGC", Sizing.builder().cpu(1024).memoryMiB(8192).build().getCollector());
+        assertEquals("-XX:+UseG1GC", Sizing.builder().cpu(2048).memoryMiB(4096).build().getCollector());
+        assertEquals(
+                "-XX:+UseZGC -XX:+ZGenerational",
+                Sizing.builder().cpu(4096).memoryMiB(16384).build().getCollector());
+    }
+
+    @Test
+    public void containerLimitCanBeSmallerThanTheTask() {
+
+        final Sizing sizing = Sizing.builder().containerMemoryMiB(1024).build();
+        assertEquals(2048, sizing.getMemoryMiB());
+        assertTrue(sizing.getFootprintMiB() <= 1024);
+        assertEquals(1024, sizing.getContainerMemoryReservationMiB());
+    }
+
+    @ParameterizedTest
+    @CsvSource({"256,2048", "512,3072", "4096,30720", "8192,20480", "8192,61440", "16384,40960", "16384,122880"})
+    public void acceptsEveryStepFargateRuns(int cpu, int memory) {
+        assertEquals(memory, Sizing.builder().cpu(cpu).memoryMiB(memory).build().getMemoryMiB());
+    }
+
+    @ParameterizedTest
+    @CsvSource({"256,1536", "512,1536", "1024,2560", "2048,5000", "8192,18432", "16384,36864", "16384,131072"})
+    public void rejectsMemoryBetweenFargateSteps(int cpu, int memory) {
+        assertThrows(IllegalArgumentException.class, () -> Sizing.builder().cpu(cpu).memoryMiB(memory).build());
+    }
+
+    @Test
+    public void rejectsSizesFargateDoesNotRun() {
+
+        assertThrows(IllegalArgumentException.class, () -> Sizing.builder().cpu(1000).build());
+        assertThrows(IllegalArgumentException.class, () -> Sizing.builder().cpu(256).memoryMiB(4096).build());
+        assertThrows(IllegalArgumentException.class, () -> Sizing.builder().containerMemoryMiB(256).build());
+    }
+}
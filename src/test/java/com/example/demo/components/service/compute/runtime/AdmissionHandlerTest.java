@@ -0,0 +1,152 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs the handler in a Grizzly server with a limit of one request, in
+ * front of a handler that suspends requests to /slow until the test
+ * resumes them.
+ */
+public class AdmissionHandlerTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private CompletableFuture<Response> suspended = new CompletableFuture<>();
+    private HttpServer server;
+    private AdmissionHandler admission;
+    private URI base;
+
+    @BeforeEach
+    public void start() throws IOException {
+        start(0);
+    }
+
+    private void start(long maxWaitMillis) throws IOException {
+
+        final HttpHandler next = new HttpHandler() {
+            @Override
+            public void service(Request request, Response response) throws Exception {
+                if ("/slow".equals(request.getRequestURI())) {
+                    response.suspend();
+                    suspended.complete(response);
+                    return;
+                }
+                response.getWriter().write("ok");
+            }
+        };
+        admission = new AdmissionHandler(next, new ConcurrencyLimit(1, 1, 1), maxWaitMillis);
+
+        final int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new HttpServer();
+        server.addListener(new NetworkListener("test", "localhost", port));
+        server.getServerConfiguration().addHttpHandler(admission);
+        server.start();
+        base = URI.create("http://localhost:" + port + "/");
+    }
+
+    @AfterEach
+    public void stop() {
+        server.shutdownNow();
+    }
+
+    @Test
+    public void releasesTheSlotWhenTheResponseCompletes() throws Exception {
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(200, get("/"));
+            awaitInFlight(0);
+        }
+        assertEquals(0, admission.getRejected());
+    }
+
+    @Test
+    public void holdsTheSlotUntilASuspendedResponseResumes() throws Exception {
+
+        final CompletableFuture<HttpResponse<Void>> slow = client.sendAsync(
+                HttpRequest.newBuilder(base.resolve("/slow")).build(), HttpResponse.BodyHandlers.discarding());
+        final Response response = suspended.get(5, TimeUnit.SECONDS);
+        assertEquals(1, admission.getInFlight());
+        assertEquals(503, get("/"));
+        assertEquals(1, admission.getRejected());
+
+        response.resume();
+        assertEquals(200, slow.get(5, TimeUnit.SECONDS).statusCode());
+        awaitInFlight(0);
+        assertEquals(200, get("/"));
+    }
+
+    @Test
+    public void healthChecksAndMetricsBypassTheLimit() throws Exception {
+
+        client.sendAsync(
+                HttpRequest.newBuilder(base.resolve("/slow")).build(), HttpResponse.BodyHandlers.discarding());
+        final Response response = suspended.get(5, TimeUnit.SECONDS);
+        assertEquals(200, get("/health/ready"));
+        assertEquals(200, get("/metrics"));
+        assertEquals(0, admission.getRejected());
+        response.resume();
+    }
+
+    @Test
+    public void recordsTheRetryWaitOnlyWhenRequestsRetry() throws Exception {
+
+        client.sendAsync(
+                HttpRequest.newBuilder(base.resolve("/slow")).build(), HttpResponse.BodyHandlers.discarding());
+        Response response = suspended.get(5, TimeUnit.SECONDS);
+        assertEquals(503, get("/"));
+        assertFalse(admission.isRetrying());
+        assertEquals(0, admission.getRetryWait().count());
+        response.resume();
+        stop();
+
+        suspended = new CompletableFuture<>();
+        start(20);
+        client.sendAsync(
+                HttpRequest.newBuilder(base.resolve("/slow")).build(), HttpResponse.BodyHandlers.discarding());
+        response = suspended.get(5, TimeUnit.SECONDS);
+        assertEquals(503, get("/"));
+        assertTrue(admission.isRetrying());
+        assertEquals(1, admission.getRetryWait().count());
+        response.resume();
+    }
+
+    private int get(String path) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(base.resolve(path)).build(), HttpResponse.BodyHandlers.discarding())
+                .statusCode();
+    }
+
+    /**
+     * Waits for the after-service listener, which runs once the response
+     * is written, possibly after the client has read it.
+     */
+    private void awaitInFlight(int expected) throws InterruptedException {
+
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (admission.getInFlight() != expected && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(expected, admission.getInFlight());
+    }
+}
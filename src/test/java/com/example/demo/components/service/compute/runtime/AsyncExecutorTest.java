@@ -0,0 +1,129 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.core.Response;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Drives an executor of one thread and one queued task with work that
+ * blocks on a latch until the test releases it.
+ */
+public class AsyncExecutorTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    public void releaseWork() {
+        release.countDown();
+    }
+
+    @Test
+    public void answersWithTheResultAndReleasesTheRequest() throws Exception {
+
+        final AsyncExecutor async = new AsyncExecutor(1, 1, 5000);
+        final Response response = get(async.supply(() -> "done"));
+        assertEquals(200, response.getStatus());
+        assertEquals("done", response.getEntity());
+        await(async::getSuspended, 0);
+        assertEquals(0, async.getTimeouts());
+    }
+
+    @Test
+    public void answers503AfterTheTimeout() throws Exception {
+
+        final AsyncExecutor async = new AsyncExecutor(1, 1, 50);
+        final CompletableFuture<String> call = new CompletableFuture<>();
+        final CompletionStage<Response> result = async.resume(call);
+        assertEquals(1, async.getSuspended());
+
+        final Response response = get(result);
+        assertEquals(503, response.getStatus());
+        assertEquals("1", response.getHeaderString("Retry-After"));
+        assertEquals(1, async.getTimeouts());
+        await(async::getSuspended, 0);
+
+        // the late result neither answers again nor counts again
+        call.complete("late");
+        assertEquals(503, get(result).getStatus());
+        assertEquals(0, async.getSuspended());
+        assertEquals(1, async.getTimeouts());
+    }
+
+    @Test
+    public void answers503WhenThePoolAndQueueAreFull() throws Exception {
+
+        final AsyncExecutor async = new AsyncExecutor(1, 1, 5000);
+        final CountDownLatch running = new CountDownLatch(1);
+        final CompletionStage<Response> first = async.supply(() -> {
+            running.countDown();
+            return block();
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        final CompletionStage<Response> queued = async.supply(this::block);
+        assertEquals(1, async.getActiveCount());
+        assertEquals(1, async.getQueueDepth());
+
+        final Response rejected = get(async.supply(() -> "never runs"));
+        assertEquals(503, rejected.getStatus());
+        assertEquals(1, async.getRejections());
+        assertEquals(2, async.getSuspended());
+
+        release.countDown();
+        assertEquals(200, get(first).getStatus());
+        assertEquals(200, get(queued).getStatus());
+        await(async::getSuspended, 0);
+        await(async::getActiveCount, 0);
+        assertEquals(0, async.getTimeouts());
+    }
+
+    @Test
+    public void answersWithTheResponseOfAFailedCall() throws Exception {
+
+        final AsyncExecutor async = new AsyncExecutor(1, 1, 5000);
+        final CompletionStage<Response> notFound = async.supply(() -> {
+            throw new NotFoundException();
+        });
+        final CompletionStage<Response> failed = async.supply(() -> {
+            throw new IllegalStateException("expected by the test");
+        });
+        assertEquals(404, get(notFound).getStatus());
+        assertEquals(500, get(failed).getStatus());
+        await(async::getSuspended, 0);
+    }
+
+    private String block() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "released";
+    }
+
+    private static Response get(CompletionStage<Response> stage) throws Exception {
+        return stage.toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Counters are updated by the thread that completes the response,
+     * possibly after the test has read it.
+     */
+    private static void await(IntSupplier value, int expected) throws InterruptedException {
+
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (value.getAsInt() != expected && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(expected, value.getAsInt());
+    }
+}
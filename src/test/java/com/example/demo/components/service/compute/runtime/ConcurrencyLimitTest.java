@@ -0,0 +1,69 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class ConcurrencyLimitTest {
+
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private long now = 0;
+
+    @Test
+    public void rejectsOverTheLimit() {
+
+        final ConcurrencyLimit limit = new ConcurrencyLimit(8, 8, 100);
+        for (int i = 0; i < 8; i++) {
+            assertTrue(limit.tryAcquire());
+        }
+        assertFalse(limit.tryAcquire());
+        limit.release(RTT, now);
+        assertTrue(limit.tryAcquire());
+    }
+
+    @Test
+    public void growsWhileLatencyIsFlatAndShrinksWhenItRises() {
+
+        final ConcurrencyLimit limit = new ConcurrencyLimit(20, 8, 1000);
+        saturate(limit, RTT, 50);
+        final int grown = limit.getLimit();
+        assertTrue(grown > 20, "limit " + grown);
+
+        saturate(limit, RTT * 6, 20);
+        assertTrue(limit.getLimit() < grown / 2, "limit " + limit.getLimit());
+        assertTrue(limit.getLimit() >= 8);
+    }
+
+    @Test
+    public void doesNotGrowWhenUnused() {
+
+        final ConcurrencyLimit limit = new ConcurrencyLimit(20, 8, 1000);
+        for (int i = 0; i < 2000; i++) {
+            limit.tryAcquire();
+            now += RTT * 2;
+            limit.release(RTT, now);
+        }
+        assertEquals(20, limit.getLimit());
+    }
+
+    /**
+     * Fills the limit, then completes every request with the given latency,
+     * once per window.
+     */
+    private void saturate(ConcurrencyLimit limit, long rtt, int windows) {
+
+        for (int w = 0; w < windows; w++) {
+            int admitted = 0;
+            while (limit.tryAcquire()) admitted++;
+            for (int i = 0; i < admitted; i++) {
+                now += TimeUnit.MILLISECONDS.toNanos(100) / admitted + 1;
+                limit.release(rtt, now);
+            }
+        }
+    }
+}
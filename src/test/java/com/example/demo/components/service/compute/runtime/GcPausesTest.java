@@ -0,0 +1,50 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class GcPausesTest {
+
+    @Test
+    public void leavesOutConcurrentCycles() {
+
+        assertTrue(GcPauses.isPause("G1 Young Generation"));
+        assertTrue(GcPauses.isPause("G1 Concurrent GC"));
+        assertTrue(GcPauses.isPause("ZGC Minor Pauses"));
+        assertTrue(GcPauses.isPause("Shenandoah Pauses"));
+        assertFalse(GcPauses.isPause("ZGC Major Cycles"));
+        assertFalse(GcPauses.isPause("Shenandoah Cycles"));
+        assertFalse(GcPauses.isPause("ZGC"));
+    }
+
+    @Test
+    public void sumsPausesByCollector() {
+
+        final GcPauses pauses = new GcPauses();
+        pauses.record("G1 Young Generation", 3);
+        pauses.record("G1 Young Generation", 4);
+        pauses.record("G1 Old Generation", 20);
+        assertEquals(Map.of("G1 Old Generation", 1L, "G1 Young Generation", 2L), pauses.getPauses());
+        assertEquals(Map.of("G1 Old Generation", 20L, "G1 Young Generation", 7L), pauses.getMillis());
+    }
+
+    @Test
+    public void recordsTheCollectionsOfThisJvm() throws InterruptedException {
+
+        final GcPauses pauses = new GcPauses();
+        pauses.register();
+        System.gc();
+        // notifications are delivered on a JVM thread after the collection
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pauses.getPauses().isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(pauses.getPauses().isEmpty());
+    }
+}
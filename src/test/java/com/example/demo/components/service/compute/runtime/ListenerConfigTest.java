@@ -0,0 +1,85 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.example.demo.components.service.LoadBalancing;
+import java.util.Arrays;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.http2.Http2AddOn;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Configures listeners that are never started, from system properties set
+ * by each test.
+ */
+public class ListenerConfigTest {
+
+    @AfterEach
+    public void clearProperties() {
+        System.clearProperty(Main.KEEPALIVE_IDLE_SECONDS);
+        System.clearProperty(Main.KEEPALIVE_MAX_REQUESTS);
+        System.clearProperty(Main.HTTP2);
+        System.clearProperty(Main.HTTP2_MAX_STREAMS);
+    }
+
+    @Test
+    public void keepsIdleConnectionsLongerThanTheLoadBalancer() {
+
+        final NetworkListener listener = configure();
+        assertEquals(Main.DEFAULT_KEEPALIVE_IDLE_SECONDS, listener.getKeepAlive().getIdleTimeoutInSeconds());
+        assertEquals(-1, listener.getKeepAlive().getMaxRequestsCount());
+
+        final LoadBalancing defaults = LoadBalancing.defaults();
+        assertTrue(Main.DEFAULT_KEEPALIVE_IDLE_SECONDS > defaults.getIdleTimeoutSeconds());
+        assertEquals(defaults.getKeepAliveIdleSeconds(), Main.DEFAULT_KEEPALIVE_IDLE_SECONDS);
+    }
+
+    @Test
+    public void readsTheKeepAliveSettings() {
+
+        System.setProperty(Main.KEEPALIVE_IDLE_SECONDS, "135");
+        System.setProperty(Main.KEEPALIVE_MAX_REQUESTS, "1000");
+
+        final NetworkListener listener = configure();
+        assertEquals(135, listener.getKeepAlive().getIdleTimeoutInSeconds());
+        assertEquals(1000, listener.getKeepAlive().getMaxRequestsCount());
+    }
+
+    @Test
+    public void registersHttp2OnlyWhenEnabled() {
+
+        assertFalse(hasHttp2(configure()));
+
+        System.setProperty(Main.HTTP2, "false");
+        assertFalse(hasHttp2(configure()));
+
+        System.setProperty(Main.HTTP2, "true");
+        System.setProperty(Main.HTTP2_MAX_STREAMS, "50");
+        final NetworkListener listener = configure();
+        assertTrue(hasHttp2(listener));
+        assertEquals(
+                50,
+                Arrays.stream(listener.getAddOns())
+                        .filter(Http2AddOn.class::isInstance)
+                        .map(Http2AddOn.class::cast)
+                        .findFirst()
+                        .get()
+                        .getConfiguration()
+                        .getMaxConcurrentStreams());
+    }
+
+    private static NetworkListener configure() {
+
+        final NetworkListener listener = new NetworkListener("test", "localhost", 0);
+        Main.configureListener(listener);
+        return listener;
+    }
+
+    private static boolean hasHttp2(NetworkListener listener) {
+        return Arrays.stream(listener.getAddOns()).anyMatch(Http2AddOn.class::isInstance);
+    }
+}
@@ -0,0 +1,166 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class LogTest {
+
+    private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+
+    @Test
+    public void writesEveryEventPublishedByConcurrentCallers() throws Exception {
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final Log log = new Log(8192, out, 1);
+        final List<Thread> callers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int caller = t;
+            callers.add(new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    log.message(Log.INFO, caller + ":" + i, null);
+                }
+            }));
+        }
+        for (Thread caller : callers) caller.start();
+        for (Thread caller : callers) caller.join();
+        log.await(TIMEOUT);
+
+        final String[] lines = lines(out);
+        final int[] next = new int[callers.size()];
+        for (String line : lines) {
+            final String message = line.substring(line.indexOf("\"message\":\"") + 11, line.lastIndexOf('"'));
+            final int caller = Integer.parseInt(message.substring(0, message.indexOf(':')));
+            assertEquals(next[caller]++, Integer.parseInt(message.substring(message.indexOf(':') + 1)), line);
+        }
+        assertEquals(0, log.getDroppedEvents());
+        assertEquals(4000, lines.length);
+    }
+
+    @Test
+    public void dropsAndCountsEventsWhenTheRingIsFull() throws Exception {
+
+        final BlockingStream out = new BlockingStream();
+        final Log log = new Log(4, out, 1);
+        log.message(Log.INFO, "taken", null);
+        assertTrue(out.writing.await(5, TimeUnit.SECONDS));
+
+        // the writer holds the first event, the ring holds the next four
+        for (int i = 0; i < 7; i++) log.message(Log.INFO, "queued " + i, null);
+        assertEquals(3, log.getDroppedEvents());
+
+        out.release.countDown();
+        log.await(TIMEOUT);
+        final String[] lines = lines(out.written);
+        assertEquals(5, lines.length);
+        assertTrue(lines[4].contains("\"message\":\"queued 3\""), lines[4]);
+        log.message(Log.INFO, "room again", null);
+        log.await(TIMEOUT);
+        assertEquals(6, lines(out.written).length);
+        assertEquals(3, log.getDroppedEvents());
+    }
+
+    @Test
+    public void awaitReturnsOnceTheEventsAreFlushed() {
+
+        final ByteArrayOutputStream target = new ByteArrayOutputStream();
+        final Log log = new Log(16, new BufferedOutputStream(target, 64 * 1024), 1);
+        log.message(Log.WARN, "one", null);
+        log.record("GET", "/a\"b", 200, 12, 1_500_000);
+        log.await(TIMEOUT);
+
+        final String[] lines = lines(target);
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("\"type\":\"app\",\"level\":\"WARN\",\"message\":\"one\""), lines[0]);
+        assertTrue(
+                lines[1].contains(
+                        "\"type\":\"access\",\"method\":\"GET\",\"path\":\"/a\\\"b\",\"status\":200,\"bytes\":12,"
+                                + "\"latency_ms\":1.5"),
+                lines[1]);
+    }
+
+    @Test
+    public void awaitGivesUpAfterTheTimeout() throws Exception {
+
+        final BlockingStream out = new BlockingStream();
+        final Log log = new Log(4, out, 1);
+        log.message(Log.INFO, "stuck", null);
+        assertTrue(out.writing.await(5, TimeUnit.SECONDS));
+
+        final long start = System.nanoTime();
+        log.await(TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        out.release.countDown();
+    }
+
+    @Test
+    public void keepsWritingAfterAnEventFailsToFormat() {
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final Log log = new Log(16, out, 1);
+        log.message(Log.ERROR, "broken", new IllegalStateException() {
+            @Override
+            public void printStackTrace(PrintWriter s) {
+                throw new UnsupportedOperationException();
+            }
+        });
+        log.message(Log.INFO, "after", null);
+        log.await(TIMEOUT);
+
+        final String[] lines = lines(out);
+        assertEquals(2, lines.length);
+        assertTrue(
+                lines[0].contains("\"message\":\"Log event could not be formatted: "
+                        + UnsupportedOperationException.class.getName() + "\""),
+                lines[0]);
+        assertTrue(lines[1].contains("\"message\":\"after\""), lines[1]);
+    }
+
+    private static String[] lines(ByteArrayOutputStream out) {
+        final String text = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        return text.isEmpty() ? new String[0] : text.split("\n");
+    }
+
+    /**
+     * Blocks the first write until released, like stdout backing up.
+     */
+    private static final class BlockingStream extends OutputStream {
+
+        private final CountDownLatch writing = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+        @Override
+        public void write(int b) {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            writing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (written) {
+                written.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {}
+    }
+}
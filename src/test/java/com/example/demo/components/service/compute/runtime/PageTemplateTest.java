@@ -0,0 +1,45 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class PageTemplateTest {
+
+    private final PageTemplate template =
+            PageTemplate.compile("<p style=\"color: ${color}\">version ${version}, task ${task}</p>");
+
+    @Test
+    public void fillsSlotsInOrder() {
+
+        final Map<String, String> values = new HashMap<>();
+        values.put("color", "blue");
+        values.put("version", "1.2");
+        values.put("task", "abc");
+        assertArrayEquals(new String[] {"color", "version", "task"}, template.getSlots());
+        assertEquals("<p style=\"color: blue\">version 1.2, task abc</p>", render(values));
+    }
+
+    @Test
+    public void leavesMissingSlotsEmptyAndEscapesValues() {
+
+        final Map<String, String> values = new HashMap<>();
+        values.put("color", "\"><script>");
+        assertEquals("<p style=\"color: &quot;&gt;&lt;script&gt;\">version , task </p>", render(values));
+    }
+
+    @Test
+    public void keepsTextWithoutSlots() {
+        assertEquals("a $ {b} ${c", new String(
+                PageTemplate.compile("a $ {b} ${c").render(new HashMap<>()), StandardCharsets.UTF_8));
+    }
+
+    private String render(Map<String, String> values) {
+        return new String(template.render(values), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,59 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+
+public class PrecompressedPageTest {
+
+    private static final byte[] CONTENT = new String(new char[200])
+            .replace("\0", "<p>Hello, World! I'm a Service!</p>")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final PrecompressedPage page = PrecompressedPage.of(CONTENT);
+
+    @Test
+    public void selectsIdentityWithoutAcceptEncoding() {
+        assertNull(page.select(null).getEncoding());
+        assertNull(page.select("br").getEncoding());
+        assertArrayEquals(CONTENT, page.select("identity").getBody());
+    }
+
+    @Test
+    public void honoursQualityValues() {
+        assertEquals("gzip", page.select("gzip, deflate, br").getEncoding());
+        assertEquals("deflate", page.select("gzip;q=0, deflate").getEncoding());
+        assertEquals("deflate", page.select("gzip;q=0.2, deflate;q=0.8").getEncoding());
+        assertEquals("gzip", page.select("*").getEncoding());
+        assertNull(page.select("gzip;q=0, *;q=0").getEncoding());
+    }
+
+    @Test
+    public void gzipVariantRoundTrips() throws IOException {
+
+        PrecompressedPage.Variant gzip = page.select("gzip");
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip.getBody()))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int read; (read = in.read(buffer)) > 0; ) out.write(buffer, 0, read);
+            assertArrayEquals(CONTENT, out.toByteArray());
+        }
+    }
+
+    @Test
+    public void tagsAreStableAndDistinctPerEncoding() {
+        assertEquals(page.identity().getTag(), PrecompressedPage.of(CONTENT).identity().getTag());
+        assertNotEquals(page.identity().getTag(), page.select("gzip").getTag());
+        assertNotEquals(page.select("gzip").getTag(), page.select("deflate").getTag());
+    }
+}
@@ -0,0 +1,171 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Serves a compressible page at /page from a Grizzly server, in front of a
+ * handler that answers everything else with 404.
+ */
+public class StaticAssetHandlerTest {
+
+    private static final byte[] CONTENT =
+            "<p>static asset</p>\n".repeat(100).getBytes(StandardCharsets.UTF_8);
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final PrecompressedPage page = PrecompressedPage.of(CONTENT);
+    private HttpServer server;
+    private URI base;
+
+    @BeforeEach
+    public void start() throws IOException {
+
+        final HttpHandler next = new HttpHandler() {
+            @Override
+            public void service(Request request, Response response) throws Exception {
+                response.setStatus(404);
+                response.getWriter().write("next");
+            }
+        };
+        final StaticAssetHandler handler = new StaticAssetHandler(next)
+                .addAsset("/page", "/page", "text/html", StaticAssets.CACHE_PAGE, page);
+
+        final int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new HttpServer();
+        server.addListener(new NetworkListener("test", "localhost", port));
+        server.getServerConfiguration().addHttpHandler(handler);
+        server.start();
+        base = URI.create("http://localhost:" + port + "/");
+    }
+
+    @AfterEach
+    public void stop() {
+        server.shutdownNow();
+    }
+
+    @Test
+    public void choosesTheEncodingFromAcceptEncoding() throws Exception {
+
+        final HttpResponse<byte[]> identity = send("GET", null, null);
+        assertEquals(200, identity.statusCode());
+        assertArrayEquals(CONTENT, identity.body());
+        assertFalse(identity.headers().firstValue("Content-Encoding").isPresent());
+
+        final HttpResponse<byte[]> gzip = send("GET", "gzip, deflate", null);
+        assertEquals("gzip", gzip.headers().firstValue("Content-Encoding").orElse(""));
+        assertArrayEquals(page.select("gzip").getBody(), gzip.body());
+        assertEquals(
+                String.valueOf(page.select("gzip").getLength()),
+                gzip.headers().firstValue("Content-Length").orElse(""));
+
+        final HttpResponse<byte[]> deflate = send("GET", "gzip;q=0, deflate", null);
+        assertEquals("deflate", deflate.headers().firstValue("Content-Encoding").orElse(""));
+        assertArrayEquals(page.select("deflate").getBody(), deflate.body());
+
+        final HttpResponse<byte[]> refused = send("GET", "gzip;q=0, deflate;q=0", null);
+        assertFalse(refused.headers().firstValue("Content-Encoding").isPresent());
+        assertArrayEquals(CONTENT, refused.body());
+    }
+
+    @Test
+    public void sendsTheCacheHeadersOfTheAsset() throws Exception {
+
+        final HttpResponse<byte[]> response = send("GET", "gzip", null);
+        assertEquals("Accept-Encoding", response.headers().firstValue("Vary").orElse(""));
+        assertEquals(StaticAssets.CACHE_PAGE, response.headers().firstValue("Cache-Control").orElse(""));
+        assertEquals("text/html", response.headers().firstValue("Content-Type").orElse("").split(";")[0]);
+        assertEquals(
+                "\"" + page.select("gzip").getTag() + "\"",
+                response.headers().firstValue("ETag").orElse(""));
+    }
+
+    @Test
+    public void answersNotModifiedForAMatchingTag() throws Exception {
+
+        final String tag = send("GET", "gzip", null).headers().firstValue("ETag").orElse("");
+        final HttpResponse<byte[]> notModified = send("GET", "gzip", tag);
+        assertEquals(304, notModified.statusCode());
+        assertEquals(0, notModified.body().length);
+        assertEquals(tag, notModified.headers().firstValue("ETag").orElse(""));
+        assertEquals(StaticAssets.CACHE_PAGE, notModified.headers().firstValue("Cache-Control").orElse(""));
+
+        assertEquals(304, send("GET", "gzip", "\"other\", W/" + tag).statusCode());
+        assertEquals(304, send("GET", "gzip", "*").statusCode());
+        // the identity variant has its own tag
+        assertEquals(200, send("GET", null, tag).statusCode());
+    }
+
+    @Test
+    public void answersHeadWithoutABody() throws Exception {
+
+        final HttpResponse<byte[]> head = send("HEAD", "gzip", null);
+        assertEquals(200, head.statusCode());
+        assertEquals(0, head.body().length);
+        assertEquals(
+                String.valueOf(page.select("gzip").getLength()),
+                head.headers().firstValue("Content-Length").orElse(""));
+        assertEquals("gzip", head.headers().firstValue("Content-Encoding").orElse(""));
+    }
+
+    @Test
+    public void handsOtherRequestsToTheNextHandler() throws Exception {
+
+        assertEquals(404, send("GET", null, null, "missing").statusCode());
+        final HttpResponse<String> post = client.send(
+                HttpRequest.newBuilder(base.resolve("page"))
+                        .POST(HttpRequest.BodyPublishers.noBody())
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(404, post.statusCode());
+        assertEquals("next", post.body());
+    }
+
+    @Test
+    public void matchesTagListsWeakTagsAndAnyTag() {
+
+        assertTrue(StaticAssetHandler.matches("\"a\"", "\"a\""));
+        assertTrue(StaticAssetHandler.matches("\"b\", \"a\"", "\"a\""));
+        assertTrue(StaticAssetHandler.matches("W/\"a\"", "\"a\""));
+        assertTrue(StaticAssetHandler.matches("*", "\"a\""));
+        assertFalse(StaticAssetHandler.matches(null, "\"a\""));
+        assertFalse(StaticAssetHandler.matches("\"b\"", "\"a\""));
+        assertFalse(StaticAssetHandler.matches("a", "\"a\""));
+    }
+
+    private HttpResponse<byte[]> send(String method, String acceptEncoding, String ifNoneMatch)
+            throws IOException, InterruptedException {
+        return send(method, acceptEncoding, ifNoneMatch, "page");
+    }
+
+    private HttpResponse<byte[]> send(String method, String acceptEncoding, String ifNoneMatch, String path)
+            throws IOException, InterruptedException {
+
+        final HttpRequest.Builder request =
+                HttpRequest.newBuilder(base.resolve(path)).method(method, HttpRequest.BodyPublishers.noBody());
+        if (acceptEncoding != null) request.header("Accept-Encoding", acceptEncoding);
+        if (ifNoneMatch != null) request.header("If-None-Match", ifNoneMatch);
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
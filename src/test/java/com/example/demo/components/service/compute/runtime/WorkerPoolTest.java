@@ -0,0 +1,194 @@
+/* (C)2023 */
+package com.example.demo.components.service.compute.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Selects the executor from system properties set by each test and drives
+ * it with tasks that block until the test releases them. Listeners are
+ * only started to count the tasks of the grizzly pool, which Grizzly
+ * creates on start; otherwise the executor is read back from their
+ * transport.
+ */
+public class WorkerPoolTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private HttpServer server;
+
+    @AfterEach
+    public void clearProperties() {
+        release.countDown();
+        if (server != null) server.shutdownNow();
+        System.clearProperty(WorkerPool.EXECUTOR);
+        System.clearProperty(WorkerPool.THREADS);
+        System.clearProperty(WorkerPool.QUEUE);
+    }
+
+    @Test
+    public void keepsTheGrizzlyPoolByDefault() {
+
+        assertEquals(WorkerPool.GRIZZLY, WorkerPool.fromConfig().getMode());
+
+        System.setProperty(WorkerPool.EXECUTOR, "fibers");
+        assertEquals(WorkerPool.GRIZZLY, WorkerPool.fromConfig().getMode());
+
+        System.setProperty(WorkerPool.EXECUTOR, "GRIZZLY");
+        assertEquals(WorkerPool.GRIZZLY, WorkerPool.fromConfig().getMode());
+    }
+
+    @Test
+    public void countsTheTasksOfTheGrizzlyPool() throws Exception {
+
+        final CountDownLatch entered = new CountDownLatch(1);
+        final int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new HttpServer();
+        server.addListener(new NetworkListener("test", "localhost", port));
+        server.getServerConfiguration().addHttpHandler(new HttpHandler() {
+            @Override
+            public void service(Request request, Response response) throws Exception {
+                entered.countDown();
+                block();
+                response.getWriter().write("ok");
+            }
+        });
+        final WorkerPool pool = WorkerPool.fromConfig();
+        pool.apply(server);
+        server.start();
+
+        assertEquals(WorkerPool.GRIZZLY, pool.getMode());
+        final CompletableFuture<HttpResponse<Void>> blocked = HttpClient.newHttpClient()
+                .sendAsync(
+                        HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/")).build(),
+                        HttpResponse.BodyHandlers.discarding());
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        assertEquals(1, pool.getActiveCount());
+        assertEquals(0, pool.getQueueDepth());
+        assertTrue(pool.getPoolSize() >= 1);
+
+        release.countDown();
+        assertEquals(200, blocked.get(5, TimeUnit.SECONDS).statusCode());
+        await(pool::getActiveCount, 0);
+        assertEquals(0, pool.getQueueDepth());
+    }
+
+    @Test
+    public void boundedPoolRejectsTasksBeyondItsQueue() throws Exception {
+
+        System.setProperty(WorkerPool.EXECUTOR, WorkerPool.BOUNDED);
+        System.setProperty(WorkerPool.THREADS, "1");
+        System.setProperty(WorkerPool.QUEUE, "1");
+        final WorkerPool pool = WorkerPool.fromConfig();
+        assertEquals(WorkerPool.BOUNDED, pool.getMode());
+
+        final ExecutorService executor = installedExecutor(pool);
+        try {
+            final CountDownLatch running = new CountDownLatch(1);
+            executor.execute(() -> {
+                running.countDown();
+                block();
+            });
+            assertTrue(running.await(5, TimeUnit.SECONDS));
+            executor.execute(this::block);
+            assertEquals(1, pool.getPoolSize());
+            assertEquals(1, pool.getActiveCount());
+            assertEquals(1, pool.getQueueDepth());
+            assertThrows(RejectedExecutionException.class, () -> executor.execute(this::block));
+
+            release.countDown();
+            await(pool::getQueueDepth, 0);
+            await(pool::getActiveCount, 0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void runsVirtualThreadsOrFallsBackToTheBoundedPool() throws Exception {
+
+        System.setProperty(WorkerPool.EXECUTOR, WorkerPool.VIRTUAL);
+        final WorkerPool pool = WorkerPool.fromConfig();
+        final ExecutorService executor = installedExecutor(pool);
+        try {
+            if (Runtime.version().feature() < 21) {
+                assertEquals(WorkerPool.BOUNDED, pool.getMode());
+                return;
+            }
+            assertEquals(WorkerPool.VIRTUAL, pool.getMode());
+            final CountDownLatch running = new CountDownLatch(2);
+            for (int i = 0; i < 2; i++) {
+                executor.execute(() -> {
+                    running.countDown();
+                    block();
+                });
+            }
+            assertTrue(running.await(5, TimeUnit.SECONDS));
+            assertEquals(2, pool.getActiveCount());
+            assertEquals(0, pool.getQueueDepth());
+
+            release.countDown();
+            await(pool::getActiveCount, 0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the executor the pool installs on the transport of a listener
+     */
+    private static ExecutorService installedExecutor(WorkerPool pool) {
+
+        final HttpServer server = new HttpServer();
+        final NetworkListener listener = new NetworkListener("test", "localhost", 0);
+        server.addListener(listener);
+        pool.apply(server);
+        final ExecutorService executor = listener.getTransport().getWorkerThreadPool();
+        assertNotNull(executor);
+        return executor;
+    }
+
+    private void block() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Counters drop once a task has finished, possibly after the test has
+     * read its response.
+     */
+    private static void await(IntSupplier value, int expected) throws InterruptedException {
+
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (value.getAsInt() != expected && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(expected, value.getAsInt());
+    }
+}
@@ -0,0 +1,126 @@
+/* (C)2023 */
+package com.example.demo.toolchain.assets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs the pipeline over a fixture page with a PNG embedded twice and an
+ * SVG whose base64 is wrapped across lines, as editors and encoders do.
+ */
+public class AssetPipelineTest {
+
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 0, 0, 0, 0};
+    private static final byte[] SVG =
+            "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"1\" height=\"1\"/>".getBytes(StandardCharsets.UTF_8);
+
+    private Path dir;
+
+    @BeforeEach
+    public void createPages() throws IOException {
+
+        dir = Files.createTempDirectory("asset-pipeline");
+        final String png = Base64.getEncoder().encodeToString(PNG);
+        final String svg = Base64.getEncoder().encodeToString(SVG);
+        Files.write(
+                dir.resolve("index.html"),
+                ("<html><body>\n"
+                                + "<img src=\"data:image/png;base64," + png + "\">\n"
+                                + "<img src=\"data:image/svg+xml;base64,\n  " + svg.substring(0, 20) + "\n  "
+                                + svg.substring(20) + "\">\n"
+                                + "<img src=\"data:image/png;base64," + png + "\">\n"
+                                + "</body></html>\n")
+                        .getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("plain.html"), "<p>no images</p>".getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("notes.txt"), "data:image/png;base64,AAAA".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @AfterEach
+    public void deletePages() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void movesDataUrisIntoFilesNamedByTheirHash() throws Exception {
+
+        AssetPipeline.process(dir);
+
+        final String png = hash(PNG) + ".png";
+        final String svg = hash(SVG) + ".svg";
+        assertEquals(
+                "<html><body>\n"
+                        + "<img src=\"/assets/" + png + "\">\n"
+                        + "<img src=\"/assets/" + svg + "\">\n"
+                        + "<img src=\"/assets/" + png + "\">\n"
+                        + "</body></html>\n",
+                read(dir.resolve("index.html")));
+        assertArrayEquals(PNG, Files.readAllBytes(dir.resolve("assets").resolve(png)));
+        assertArrayEquals(SVG, Files.readAllBytes(dir.resolve("assets").resolve(svg)));
+    }
+
+    @Test
+    public void listsTheAssetsInTheManifest() throws Exception {
+
+        AssetPipeline.process(dir);
+
+        final List<String> names = Arrays.asList(hash(PNG) + ".png", hash(SVG) + ".svg");
+        names.sort(null);
+        assertEquals(names, Files.readAllLines(dir.resolve("assets").resolve("manifest.txt")));
+        try (Stream<Path> files = Files.list(dir.resolve("assets"))) {
+            assertEquals(3, files.count());
+        }
+    }
+
+    @Test
+    public void leavesOtherFilesAndProcessedPagesAlone() throws Exception {
+
+        AssetPipeline.process(dir);
+        final String index = read(dir.resolve("index.html"));
+        final List<String> manifest = Files.readAllLines(dir.resolve("assets").resolve("manifest.txt"));
+
+        AssetPipeline.process(dir);
+        assertEquals(index, read(dir.resolve("index.html")));
+        assertEquals(manifest, Files.readAllLines(dir.resolve("assets").resolve("manifest.txt")));
+        assertEquals("<p>no images</p>", read(dir.resolve("plain.html")));
+        assertEquals("data:image/png;base64,AAAA", read(dir.resolve("notes.txt")));
+    }
+
+    @Test
+    public void skipsMissingDirectories() throws Exception {
+
+        AssetPipeline.process(dir.resolve("missing"));
+        assertFalse(Files.exists(dir.resolve("missing")));
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the first 8 bytes of the SHA-256 of the content, in hex
+     */
+    private static String hash(byte[] content) throws Exception {
+
+        final byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+        final StringBuilder hex = new StringBuilder();
+        for (int i = 0; i < 8; i++) hex.append(String.format("%02x", digest[i]));
+        return hex.toString();
+    }
+}
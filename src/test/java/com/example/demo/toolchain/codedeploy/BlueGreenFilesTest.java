@@ -0,0 +1,223 @@
+/* (C)2023 */
+package com.example.demo.toolchain.codedeploy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.example.demo.components.service.Architecture;
+import com.example.demo.components.service.EdgeCache;
+import com.example.demo.components.service.LatencyCheck;
+import com.example.demo.components.service.Service;
+import com.example.demo.components.service.ServiceOptions;
+import com.example.demo.components.service.Sizing;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.Test;
+import software.amazon.awscdk.App;
+import software.amazon.awscdk.Environment;
+import software.amazon.awscdk.StackProps;
+import software.amazon.awscdk.services.codedeploy.EcsDeploymentConfig;
+import software.amazon.awscdk.services.ecs.ContainerDefinitionOptions;
+import software.amazon.awscdk.services.ecs.ContainerImage;
+
+/**
+ * Renders the CodeDeploy files of a Service stack. Runs after the Maven
+ * resources phase, which puts the Dockerfiles of both images under target,
+ * and the compile phase, which puts the code of the hook functions under
+ * target/hooks.
+ */
+public class BlueGreenFilesTest {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final App app = new App();
+
+    private Service service(ServiceOptions options) {
+        return new Service(
+                app,
+                "Service-UAT",
+                EcsDeploymentConfig.ALL_AT_ONCE,
+                StackProps.builder()
+                        .env(Environment.builder()
+                                .account("111111111111")
+                                .region("us-east-1")
+                                .build())
+                        .build(),
+                options);
+    }
+
+    @Test
+    public void greenHasTheShapeOfBlue() throws Exception {
+
+        final Sizing sizing = Sizing.builder().cpu(2048).memoryMiB(4096).build();
+        final BlueGreenFiles files = BlueGreenFiles.render(
+                service(ServiceOptions.builder()
+                        .sizing(sizing)
+                        .architecture(Architecture.ARM64)
+                        .build()));
+
+        final JsonNode taskdef = JSON.readTree(files.getTaskDefinition());
+        assertEquals("2048", taskdef.path("cpu").asText());
+        assertEquals("4096", taskdef.path("memory").asText());
+        assertEquals("ARM64", taskdef.path("runtimePlatform").path("cpuArchitecture").asText());
+        assertEquals("arn:aws:iam::111111111111:role/Service-UAT", taskdef.path("executionRoleArn").asText());
+
+        final JsonNode container = taskdef.path("containerDefinitions").path(0);
+        final JsonNode logOptions = container.path("logConfiguration").path("options");
+        assertEquals("Service-UAT", container.path("name").asText());
+        assertEquals(BlueGreenFiles.IMAGE_PLACEHOLDER, container.path("image").asText());
+        assertEquals(4096, container.path("memory").asInt());
+        assertEquals("/ecs/Service-UAT", logOptions.path("awslogs-group").asText());
+        assertEquals("us-east-1", logOptions.path("awslogs-region").asText());
+        assertTrue(container.path("environment").toString().contains(sizing.getEnvironment().get(Sizing.JAVA_OPTS)));
+
+        assertEquals(
+                "111111111111.dkr.ecr.us-east-1.amazonaws.com",
+                JSON.readTree(files.getImageDetail()).path("ImageURI").asText().split("/")[0]);
+        assertFalse(files.getAppSpec().contains("Hooks"));
+    }
+
+    @Test
+    public void appSpecRunsTheHooks() {
+
+        final Map<String, String> hooks = new LinkedHashMap<>();
+        hooks.put("AfterAllowTestTraffic", "CodeDeployHook_Service-UAT");
+        hooks.put("AfterAllowTraffic", "CodeDeployHook_Service-UAT-Edge");
+        final String appSpec = BlueGreenFiles.appSpec("Service-UAT", 8080, hooks);
+        assertTrue(appSpec.contains("ContainerName: \"Service-UAT\"\n"), appSpec);
+        assertTrue(appSpec.contains("ContainerPort: 8080\n"), appSpec);
+        assertTrue(
+                appSpec.endsWith("Hooks:\n"
+                        + "  - AfterAllowTestTraffic: \"CodeDeployHook_Service-UAT\"\n"
+                        + "  - AfterAllowTraffic: \"CodeDeployHook_Service-UAT-Edge\"\n"),
+                appSpec);
+    }
+
+    @Test
+    public void appSpecRunsTheHooksOfTheService() {
+
+        final String appSpec = BlueGreenFiles.render(service(ServiceOptions.builder()
+                        .latencyCheck(LatencyCheck.builder().build())
+                        .edgeCache(EdgeCache.defaults())
+                        .build()))
+                .getAppSpec();
+        assertTrue(
+                appSpec.endsWith("Hooks:\n"
+                        + "  - AfterAllowTestTraffic: \"CodeDeployHook_Service-UAT\"\n"
+                        + "  - AfterAllowTraffic: \"CodeDeployHook_Service-UAT-Edge\"\n"),
+                appSpec);
+    }
+
+    @Test
+    public void synthPassesWhileBlueAndGreenMatch() {
+
+        final Service service = service(ServiceOptions.defaults());
+        final BlueGreenFiles files = BlueGreenFiles.render(service);
+        service.getNode().addValidation(files.shapeValidation(files.commands("codedeploy")));
+        app.synth();
+    }
+
+    @Test
+    public void synthFailsWhenBlueChangesAfterRendering() {
+
+        final Service service = service(ServiceOptions.defaults());
+        final BlueGreenFiles files = BlueGreenFiles.render(service);
+        service.getNode().addValidation(files.shapeValidation(files.commands("codedeploy")));
+        service.getTaskDefinition()
+                .addContainer(
+                        "Sidecar",
+                        ContainerDefinitionOptions.builder()
+                                .image(ContainerImage.fromRegistry("public.ecr.aws/nginx/nginx:latest"))
+                                .memoryLimitMiB(64)
+                                .build());
+
+        assertThrows(RuntimeException.class, app::synth);
+    }
+
+    @Test
+    public void synthFailsWhenTheWrittenCpuDiffersFromBlue() throws Exception {
+        assertSynthFailsWithGreen(taskdef -> taskdef.put("cpu", "4096"));
+    }
+
+    @Test
+    public void synthFailsWhenTheWrittenMemoryDiffersFromBlue() throws Exception {
+        assertSynthFailsWithGreen(taskdef -> taskdef.put("memory", "8192"));
+    }
+
+    @Test
+    public void synthFailsWhenTheWrittenRuntimePlatformDiffersFromBlue() throws Exception {
+        assertSynthFailsWithGreen(
+                taskdef -> ((ObjectNode) taskdef.get("runtimePlatform")).put("cpuArchitecture", "X86_64"));
+    }
+
+    @Test
+    public void synthFailsWhenTheStepWritesNoTaskDefinition() {
+
+        final Service service = service(ServiceOptions.defaults());
+        final BlueGreenFiles files = BlueGreenFiles.render(service);
+        final List<String> commands = new ArrayList<>(files.commands("codedeploy"));
+        commands.remove(1);
+        service.getNode().addValidation(files.shapeValidation(commands));
+
+        assertThrows(RuntimeException.class, app::synth);
+    }
+
+    /**
+     * Validates the commands of an ARM64 service against a copy in which
+     * the taskdef.json is changed after rendering.
+     */
+    private void assertSynthFailsWithGreen(Consumer<ObjectNode> change) throws Exception {
+
+        final Service service =
+                service(ServiceOptions.builder().architecture(Architecture.ARM64).build());
+        final BlueGreenFiles files = BlueGreenFiles.render(service);
+        final List<String> commands = new ArrayList<>(files.commands("codedeploy"));
+        final ObjectNode green = (ObjectNode) JSON.readTree(BlueGreenFiles.writtenFile(commands, "taskdef.json"));
+        change.accept(green);
+        commands.set(1, "printf '%s\\n' '" + green + "' > codedeploy/taskdef.json");
+        service.getNode().addValidation(files.shapeValidation(commands));
+
+        assertThrows(RuntimeException.class, app::synth);
+    }
+
+    @Test
+    public void comparesEverythingButTheImage() throws Exception {
+
+        final ObjectNode blue = (ObjectNode)
+                JSON.readTree("{\"cpu\":\"1024\",\"containerDefinitions\":[{\"name\":\"app\",\"image\":\"blue\"}]}");
+        final ObjectNode green = blue.deepCopy();
+        ((ObjectNode) green.withArray("containerDefinitions").get(0)).put("image", "green");
+        assertTrue(BlueGreenFiles.compareShapes(blue, green).isEmpty());
+
+        green.put("cpu", "256");
+        assertEquals(1, BlueGreenFiles.compareShapes(blue, green).size());
+    }
+
+    @Test
+    public void quotesTheFilesForTheShell() {
+
+        final BlueGreenFiles files = BlueGreenFiles.render(service(ServiceOptions.defaults()));
+        final List<String> commands = files.commands("codedeploy");
+        final String command = commands.get(1);
+        assertTrue(command.startsWith("printf '%s\\n' '{"), command);
+        assertTrue(command.endsWith("' > codedeploy/taskdef.json"), command);
+        assertEquals(files.getTaskDefinition(), BlueGreenFiles.writtenFile(commands, "taskdef.json"));
+        assertEquals(files.getAppSpec(), BlueGreenFiles.writtenFile(commands, "appspec.yaml"));
+    }
+
+    @Test
+    public void readsBackQuotesInWrittenFiles() {
+
+        final List<String> commands = List.of("printf '%s\\n' 'it'\"'\"'s' > out/notes.txt");
+        assertEquals("it's", BlueGreenFiles.writtenFile(commands, "notes.txt"));
+        assertThrows(IllegalArgumentException.class, () -> BlueGreenFiles.writtenFile(commands, "taskdef.json"));
+    }
+}
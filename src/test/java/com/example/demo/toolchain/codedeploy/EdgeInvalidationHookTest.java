@@ -0,0 +1,65 @@
+/* (C)2023 */
+package com.example.demo.toolchain.codedeploy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class EdgeInvalidationHookTest {
+
+    private static final Map<String, String> CREDENTIALS = Map.of(
+            "AWS_ACCESS_KEY_ID", "AKIDEXAMPLE",
+            "AWS_SECRET_ACCESS_KEY", "secret",
+            "AWS_SESSION_TOKEN", "token");
+
+    @Test
+    public void invalidatesAllPathsByDefault() {
+
+        assertEquals(List.of("/*"), new EdgeInvalidationHook(Map.of(), Clock.systemUTC()).paths());
+        assertEquals(
+                List.of("/", "/index.html"),
+                new EdgeInvalidationHook(Map.of("PATHS", "/, /index.html"), Clock.systemUTC()).paths());
+    }
+
+    @Test
+    public void deploymentIsTheCallerReference() {
+
+        final String batch = EdgeInvalidationHook.invalidationBatch(Arrays.asList("/*", "/a&b"), "d-EXAMPLE");
+        assertTrue(batch.contains("<Paths><Quantity>2</Quantity>"), batch);
+        assertTrue(batch.contains("<Items><Path>/*</Path><Path>/a&amp;b</Path></Items>"), batch);
+        assertTrue(batch.endsWith("<CallerReference>d-EXAMPLE</CallerReference></InvalidationBatch>"), batch);
+    }
+
+    @Test
+    public void signsForCloudFrontInUsEast1() {
+
+        final HttpRequest request = LifecycleHooks.sign(
+                Clock.fixed(Instant.parse("2023-06-01T10:15:30Z"), ZoneOffset.UTC),
+                CREDENTIALS,
+                "POST",
+                URI.create("https://cloudfront.amazonaws.com/2020-05-31/distribution/E1/invalidation"),
+                "cloudfront",
+                "us-east-1",
+                Map.of("content-type", "application/xml"),
+                "<InvalidationBatch/>");
+
+        final String authorization = request.headers().firstValue("Authorization").orElse("");
+        assertTrue(
+                authorization.startsWith(
+                        "AWS4-HMAC-SHA256 Credential=AKIDEXAMPLE/20230601/us-east-1/cloudfront/aws4_request,"),
+                authorization);
+        assertTrue(
+                authorization.contains("SignedHeaders=content-type;host;x-amz-date;x-amz-security-token,"),
+                authorization);
+        assertEquals("token", request.headers().firstValue("x-amz-security-token").orElse(""));
+    }
+}
@@ -0,0 +1,116 @@
+/* (C)2023 */
+package com.example.demo.toolchain.codedeploy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Signs requests of the AWS Signature Version 4 test suite and compares
+ * the Authorization header with the one the suite expects.
+ */
+public class LifecycleHooksTest {
+
+    private static final Clock SUITE_TIME = Clock.fixed(Instant.parse("2015-08-30T12:36:00Z"), ZoneOffset.UTC);
+    private static final URI SUITE_URI = URI.create("https://example.amazonaws.com/");
+    private static final String SUITE_TOKEN = "AQoDYXdzEPT//////////wEXAMPLEtc764bNrC9SAPBSM22wDOk4x4HIZ8j4F"
+            + "ZTwdQWLWsKWHGBuFqwAeMicRXmxfpSPfIeoIYRqTflfKD8YUuwthAx7mSEI/qkPpKPi/kMcGdQrmGdeehM4IC1NtBmUpp2wU"
+            + "E8phUZampKsburEDy0KPkyQDYwT7WZ0wq5VSXDvp75YU9HFvlRd8Tx6q6fE8YQcHNVXAkiY9q6d+xo0rKwT38xVqr7ZD0u0iP"
+            + "PkUL64lIZbqBAz+scqKmlzm8FDrypNC9Yjc8fPOLn9FX9KSYvKTr4rvx3iSIlTJabIQwj2ICCR/oLxBA==";
+    private static final String CREDENTIAL =
+            "AWS4-HMAC-SHA256 Credential=AKIDEXAMPLE/20150830/us-east-1/service/aws4_request";
+
+    @Test
+    public void getVanilla() {
+        assertEquals(
+                CREDENTIAL + ", SignedHeaders=host;x-amz-date,"
+                        + " Signature=5fa00fa31553b73ebf1942676e86291e8372ff2a2260956d9b8aae1d763fbf31",
+                authorization(sign(credentials(null), "GET", Map.of(), "")));
+    }
+
+    @Test
+    public void postVanilla() {
+        assertEquals(
+                CREDENTIAL + ", SignedHeaders=host;x-amz-date,"
+                        + " Signature=5da7c1a2acd57cee7505fc6676e4e544621c30862966e37dddb68e92efbe5d6b",
+                authorization(sign(credentials(null), "POST", Map.of(), "")));
+    }
+
+    @Test
+    public void postXWwwFormUrlencoded() {
+
+        final HttpRequest request = sign(
+                credentials(null),
+                "POST",
+                Map.of("content-type", "application/x-www-form-urlencoded"),
+                "Param1=value1");
+        assertEquals(
+                CREDENTIAL + ", SignedHeaders=content-type;host;x-amz-date,"
+                        + " Signature=ff11897932ad3f4e8b18135d722051e5ac45fc38421b1da7b9d196a0fe09473a",
+                authorization(request));
+        assertEquals("20150830T123600Z", request.headers().firstValue("x-amz-date").orElse(""));
+    }
+
+    @Test
+    public void postStsHeaderBefore() {
+
+        final HttpRequest request = sign(credentials(SUITE_TOKEN), "POST", Map.of(), "");
+        assertEquals(
+                CREDENTIAL + ", SignedHeaders=host;x-amz-date;x-amz-security-token,"
+                        + " Signature=85d96828115b5dc0cfc3bd16ad9e210dd772bbebba041836c64533a82be05ead",
+                authorization(request));
+        assertEquals(SUITE_TOKEN, request.headers().firstValue("x-amz-security-token").orElse(""));
+    }
+
+    @Test
+    public void rejectsQueryStrings() {
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> LifecycleHooks.sign(
+                        SUITE_TIME,
+                        credentials(null),
+                        "GET",
+                        URI.create("https://example.amazonaws.com/?Param1=value1"),
+                        "service",
+                        "us-east-1",
+                        Map.of(),
+                        ""));
+    }
+
+    @Test
+    public void statusBodyIsEscapedJson() {
+
+        final Map<String, Object> event = new HashMap<>();
+        event.put("DeploymentId", "d-\"EXAMPLE\"");
+        event.put("LifecycleEventHookExecutionId", "hook\\1");
+        assertEquals(
+                "{\"deploymentId\":\"d-\\\"EXAMPLE\\\"\",\"lifecycleEventHookExecutionId\":\"hook\\\\1\","
+                        + "\"status\":\"Succeeded\"}",
+                LifecycleHooks.statusBody(event, LifecycleHooks.SUCCEEDED));
+    }
+
+    private static Map<String, String> credentials(String token) {
+
+        final Map<String, String> env = new HashMap<>();
+        env.put("AWS_ACCESS_KEY_ID", "AKIDEXAMPLE");
+        env.put("AWS_SECRET_ACCESS_KEY", "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY");
+        if (token != null) env.put("AWS_SESSION_TOKEN", token);
+        return env;
+    }
+
+    private static HttpRequest sign(Map<String, String> env, String method, Map<String, String> headers, String body) {
+        return LifecycleHooks.sign(SUITE_TIME, env, method, SUITE_URI, "service", "us-east-1", headers, body);
+    }
+
+    private static String authorization(HttpRequest request) {
+        return request.headers().firstValue("Authorization").orElse("");
+    }
+}
@@ -0,0 +1,82 @@
+/* (C)2023 */
+package com.example.demo.toolchain.image;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+public class ImageReportTest {
+
+    @Test
+    public void readsLayersInTheOrderOfTheConfig() throws IOException {
+
+        final ImageReport report = image("service:new", "jre", 3000, "lib", 2000, "app-2", 100);
+        assertEquals(3, report.getLayers().size());
+        assertEquals(5100, report.getSize());
+        assertEquals("sha256:jre", report.getLayers().get(0).diffId);
+        assertEquals(3000, report.getLayers().get(0).size);
+        assertEquals("COPY /jre /opt/jre", report.getLayers().get(0).step);
+        assertEquals("RUN step 3", report.getLayers().get(2).step);
+    }
+
+    @Test
+    public void pullsOnlyTheLayersThePreviousImageLacks() throws IOException {
+
+        final ImageReport previous = image("service:old", "jre", 3000, "lib", 2000, "app-1", 90);
+        final ImageReport current = image("service:new", "jre", 3000, "lib", 2000, "app-2", 100);
+        assertEquals(100, current.getPullSize(previous));
+        assertEquals(5100, current.getPullSize(null));
+
+        final String text = current.toText(previous);
+        assertTrue(text.contains("Reused from service:old: 2 of 3 layers"), text);
+    }
+
+    /**
+     * @return the docker save archive of an image made of the given layers,
+     * as pairs of name and size
+     */
+    private static ImageReport image(String name, Object... layers) throws IOException {
+
+        final ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        final StringBuilder files = new StringBuilder();
+        final StringBuilder diffIds = new StringBuilder();
+        final StringBuilder history =
+                new StringBuilder("{\"created_by\":\"ENV PATH=/opt/jre/bin\",\"empty_layer\":true}");
+        for (int i = 0; i < layers.length; i += 2) {
+            final String layer = (String) layers[i];
+            entry(tar, "blobs/sha256/" + layer, new byte[(Integer) layers[i + 1]]);
+            files.append(i > 0 ? "," : "").append("\"blobs/sha256/").append(layer).append('"');
+            diffIds.append(i > 0 ? "," : "").append("\"sha256:").append(layer).append('"');
+            history.append(",{\"created_by\":\"")
+                    .append(i == 0 ? "COPY /jre /opt/jre" : "/bin/sh -c step " + (i / 2 + 1))
+                    .append("\"}");
+        }
+        final String config = "{\"rootfs\":{\"diff_ids\":[" + diffIds + "]},\"history\":[" + history + "]}";
+        entry(tar, "blobs/sha256/config", utf8(config));
+        entry(tar, "manifest.json", utf8("[{\"Config\":\"blobs/sha256/config\",\"Layers\":[" + files + "]}]"));
+        tar.write(new byte[1024]);
+        return ImageReport.read(name, new ByteArrayInputStream(tar.toByteArray()));
+    }
+
+    private static void entry(ByteArrayOutputStream tar, String name, byte[] content) throws IOException {
+
+        final byte[] header = new byte[512];
+        System.arraycopy(utf8(name), 0, header, 0, name.length());
+        final byte[] size = utf8(String.format("%011o", content.length));
+        System.arraycopy(size, 0, header, 124, size.length);
+        header[156] = '0';
+        System.arraycopy(utf8("ustar"), 0, header, 257, 5);
+        tar.write(header);
+        tar.write(content);
+        tar.write(new byte[(512 - content.length % 512) % 512]);
+    }
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,63 @@
+/* (C)2023 */
+package com.example.demo.toolchain.image;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs jdeps over classes of target/classes, which the compile phase
+ * writes before the tests run.
+ */
+public class JreModulesTest {
+
+    private static final Path CLASSES = Paths.get("target/classes/com/example/demo");
+
+    private Path dir;
+
+    @BeforeEach
+    public void createDirectory() throws IOException {
+        dir = Files.createTempDirectory("jre-modules");
+    }
+
+    @AfterEach
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void listsTheModulesTheClassesUse() {
+
+        assertEquals(
+                "java.base",
+                JreModules.modules(Arrays.asList(CLASSES.resolve("toolchain/assets/AssetPipeline.class"))));
+        // GarbageCollectionNotificationInfo is in jdk.management
+        assertEquals(
+                "java.base,jdk.management",
+                JreModules.modules(Arrays.asList(
+                        CLASSES.resolve("toolchain/assets/AssetPipeline.class"),
+                        CLASSES.resolve("components/service/compute/runtime/GcPauses.class"))));
+    }
+
+    @Test
+    public void readsTheJarsOfADirectory() throws IOException {
+
+        Files.createFile(dir.resolve("b.jar"));
+        Files.createFile(dir.resolve("a.jar"));
+        Files.createFile(dir.resolve("notes.txt"));
+        assertEquals(List.of(dir.resolve("a.jar"), dir.resolve("b.jar")), JreModules.jars(dir));
+        assertEquals(List.of(dir.resolve("notes.txt")), JreModules.jars(dir.resolve("notes.txt")));
+    }
+}
@@ -0,0 +1,73 @@
+/* (C)2023 */
+package com.example.demo.toolchain.infrastructure;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import software.amazon.awscdk.App;
+import software.amazon.awscdk.Environment;
+import software.amazon.awscdk.StackProps;
+import software.amazon.awscdk.assertions.Template;
+import software.amazon.awscdk.services.codedeploy.EcsDeploymentConfig;
+
+/**
+ * Checks the synthesized pipeline. Runs after the Maven resources phase,
+ * which puts the Dockerfiles of both images under target.
+ */
+public class ContinuousDeploymentTest {
+
+    private static Environment env(String account, String region) {
+        return Environment.builder().account(account).region(region).build();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void deploysTheStagesOfAWaveInParallel() {
+
+        final App app = new App();
+        final ContinuousDeployment pipeline = ContinuousDeployment.Builder.create(app, "Pipeline")
+                .stackProperties(StackProps.builder()
+                        .env(env("111111111111", "us-east-1"))
+                        .build())
+                .setGitRepo("service")
+                .setGitBranch("main")
+                .addStage("UAT", EcsDeploymentConfig.ALL_AT_ONCE, env("222222222222", "us-east-1"))
+                .addWave(
+                        "Prod",
+                        ContinuousDeployment.Builder.stage(
+                                "ProdEU", EcsDeploymentConfig.ALL_AT_ONCE, env("333333333333", "eu-west-1")),
+                        ContinuousDeployment.Builder.stage(
+                                "ProdUS", EcsDeploymentConfig.ALL_AT_ONCE, env("444444444444", "us-west-2")))
+                .build();
+
+        final Map<String, Object> resource = Template.fromStack(pipeline)
+                .findResources("AWS::CodePipeline::Pipeline")
+                .values()
+                .iterator()
+                .next();
+        final List<Map<String, Object>> stages =
+                (List<Map<String, Object>>) ((Map<String, Object>) resource.get("Properties")).get("Stages");
+
+        final List<String> deployStages = new ArrayList<>();
+        final Set<String> namespaces = new HashSet<>();
+        for (Map<String, Object> stage : stages) {
+            final Set<String> actionNames = new HashSet<>();
+            for (Map<String, Object> action : (List<Map<String, Object>>) stage.get("Actions")) {
+                assertTrue(actionNames.add((String) action.get("Name")), "duplicate action " + action.get("Name"));
+                final Map<String, Object> type = (Map<String, Object>) action.get("ActionTypeId");
+                if ("CodeDeployToECS".equals(type.get("Provider"))) {
+                    deployStages.add((String) stage.get("Name"));
+                    assertTrue(namespaces.add((String) action.get("Namespace")), "duplicate namespace");
+                }
+            }
+        }
+        // one CodeDeploy action per stage; both production ones share the pipeline stage of the wave
+        assertEquals(List.of("UAT", "Prod", "Prod"), deployStages);
+    }
+}
@@ -0,0 +1,70 @@
+/* (C)2023 */
+package com.example.demo.toolchain.loadtest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+
+public class ComparisonTest {
+
+    private final LatencyComparator.Budget budget = new LatencyComparator.Budget();
+
+    @Test
+    public void passesWhenTheCandidateMatchesTheBaseline() {
+
+        final Comparison comparison = new Comparison(report(1000, 0, 10), report(1000, 0, 10), budget);
+        assertTrue(comparison.isPassed(), comparison.toText());
+        assertTrue(comparison.toJson().startsWith("{\"passed\":true,\"failures\":[]"));
+    }
+
+    @Test
+    public void failsWhenTheCandidateIsSlower() {
+
+        final List<String> failures = Comparison.evaluate(report(1000, 0, 10), report(1000, 0, 30), budget);
+        assertEquals(2, failures.size(), failures.toString());
+        assertTrue(failures.get(0).startsWith("p50 latency"));
+        assertTrue(failures.get(1).startsWith("p99 latency"));
+    }
+
+    @Test
+    public void ignoresSmallAbsoluteDifferences() {
+
+        // three times slower, but by less than the 5 ms minimum delta
+        assertTrue(Comparison.evaluate(report(1000, 0, 1), report(1000, 0, 3), budget).isEmpty());
+    }
+
+    @Test
+    public void failsOnErrorsAndLostThroughput() {
+
+        final List<String> failures = Comparison.evaluate(report(1000, 0, 10), report(800, 200, 10), budget);
+        assertEquals(2, failures.size(), failures.toString());
+        assertTrue(failures.get(0).startsWith("throughput"));
+        assertTrue(failures.get(1).startsWith("error rate"));
+        assertFalse(new Comparison(report(1000, 0, 10), report(800, 200, 10), budget).isPassed());
+    }
+
+    /**
+     * A ten second run where every successful request took the same time.
+     */
+    private static LoadReport report(int completed, int errors, long millis) {
+
+        final Histogram latencies = new Histogram(3);
+        for (int i = 0; i < completed; i++) {
+            latencies.recordValue(TimeUnit.MILLISECONDS.toMicros(millis));
+        }
+        return new LoadReport(
+                "http://localhost/",
+                100,
+                TimeUnit.SECONDS.toNanos(10),
+                completed + errors,
+                completed,
+                errors,
+                completed * 1024L,
+                latencies);
+    }
+}
@@ -0,0 +1,106 @@
+/* (C)2023 */
+package com.example.demo.toolchain.loadtest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs the generator against a local server with a single worker thread
+ * that stalls on the first request, so every request sent during the stall
+ * queues behind it. A closed-model client would wait instead and see one
+ * slow request.
+ */
+public class LoadGeneratorTest {
+
+    private static final long STALL_MILLIS = 1000;
+
+    private final AtomicBoolean stalled = new AtomicBoolean();
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+    private HttpServer server;
+    private URI base;
+
+    @BeforeEach
+    public void start() throws IOException {
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            if (stalled.compareAndSet(false, true)) {
+                try {
+                    Thread.sleep(STALL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            final byte[] body = "ok".getBytes();
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.setExecutor(worker);
+        server.start();
+        base = URI.create("http://localhost:" + server.getAddress().getPort() + "/");
+    }
+
+    @AfterEach
+    public void stop() {
+        server.stop(0);
+        worker.shutdownNow();
+    }
+
+    @Test
+    public void measuresLatencyFromTheIntendedStart() throws InterruptedException {
+
+        // 40 requests, one every 25 ms; the ones due during the stall wait
+        // for the rest of it
+        final LoadReport report = LoadGenerator.Builder.create()
+                .rate(40)
+                .duration(Duration.ofSeconds(1))
+                .warmup(Duration.ZERO)
+                .build()
+                .run(base);
+
+        final Histogram latencies = report.getLatencies();
+        assertEquals(0, report.getErrors(), "errors");
+        assertEquals(40, report.getCompleted());
+        assertEquals(0, report.getErrors());
+        assertEquals(40, latencies.getTotalCount());
+        assertTrue(latencies.getMaxValue() >= TimeUnit.MILLISECONDS.toMicros(STALL_MILLIS), latencies.toString());
+        // due at 0, 25, ..., 500 ms and answered after 1000 ms
+        final long queued =
+                latencies.getCountBetweenValues(TimeUnit.MILLISECONDS.toMicros(500), TimeUnit.SECONDS.toMicros(10));
+        assertTrue(queued >= 21, queued + " queued of " + latencies);
+    }
+
+    @Test
+    public void recordsNothingFromTheWarmup() throws InterruptedException {
+
+        // the stall and its queue are over by the time measuring starts at
+        // 1.5 s; 20 requests are due from then until 2 s
+        final LoadReport report = LoadGenerator.Builder.create()
+                .rate(40)
+                .duration(Duration.ofMillis(500))
+                .warmup(Duration.ofMillis(1500))
+                .build()
+                .run(base);
+
+        final Histogram latencies = report.getLatencies();
+        assertEquals(20, report.getCompleted());
+        assertEquals(20, latencies.getTotalCount());
+        assertTrue(latencies.getMaxValue() < TimeUnit.MILLISECONDS.toMicros(STALL_MILLIS / 2), latencies.toString());
+    }
+}